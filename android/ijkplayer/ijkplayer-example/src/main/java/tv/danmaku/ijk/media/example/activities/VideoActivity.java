@@ -93,12 +93,14 @@ public class VideoActivity extends AppCompatActivity
     private long [] mClientCtx = new long[1];
     private int mWebRTCClientCount = 1;
 
+    private final IjkFrame mFrame = new IjkFrame();
+
     @SuppressLint("HandlerLeak")
     private Handler mHandler = new Handler() {
         @Override
         public void handleMessage(Message msg) {
             super.handleMessage(msg);
-            IjkFrame frame = mVideoView.getFrame();
+            IjkFrame frame = mVideoView.getFrame(mFrame);
             mVideoView.draw(frame, mTextureVideo, mTextureSubVideo, IjkVideoView.Mode.PIP);
             sendEmptyMessageDelayed(MSG_DRAW_OBJECT_TRACKING, 50);
         }
@@ -53,8 +53,10 @@ import tv.danmaku.ijk.media.player.AndroidMediaPlayer;
 import tv.danmaku.ijk.media.player.IMediaPlayer;
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
 import tv.danmaku.ijk.media.player.IjkTimedText;
+import tv.danmaku.ijk.media.player.MediaPlayerProxy;
 import tv.danmaku.ijk.media.player.TextureMediaPlayer;
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource2;
 import tv.danmaku.ijk.media.player.misc.IMediaFormat;
 import tv.danmaku.ijk.media.player.misc.ITrackInfo;
 import tv.danmaku.ijk.media.player.misc.IjkMediaFormat;
@@ -336,8 +338,14 @@ public class IjkVideoView extends FrameLayout implements MediaController.MediaPl
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
                     mSettings.getUsingMediaDataSource() &&
                     (TextUtils.isEmpty(scheme) || scheme.equalsIgnoreCase("file"))) {
-                IMediaDataSource dataSource = new FileMediaDataSource(new File(mUri.toString()));
-                mMediaPlayer.setDataSource(dataSource);
+                MappedFileMediaDataSource dataSource = new MappedFileMediaDataSource(new File(mUri.toString()));
+                IMediaPlayer internalPlayer = mMediaPlayer;
+                if (internalPlayer instanceof MediaPlayerProxy)
+                    internalPlayer = ((MediaPlayerProxy) internalPlayer).getInternalMediaPlayer();
+                if (internalPlayer instanceof IjkMediaPlayer)
+                    ((IjkMediaPlayer) internalPlayer).setDataSource((IMediaDataSource2) dataSource);
+                else
+                    mMediaPlayer.setDataSource((IMediaDataSource) dataSource);
             }  else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
                 mMediaPlayer.setDataSource(mAppContext, mUri, mHeaders);
             } else {
@@ -12,6 +12,7 @@ import java.util.Locale;
 import tv.danmaku.ijk.media.player.IMediaPlayer;
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
 import tv.danmaku.ijk.media.player.MediaPlayerProxy;
+import tv.danmaku.ijk.media.player.PlayerStats;
 import tv.danmaku.ijk.media.example.R;
 
 public class InfoHudViewHolder {
@@ -20,6 +21,7 @@ public class InfoHudViewHolder {
     private IMediaPlayer mMediaPlayer;
     private long mLoadCost = 0;
     private long mSeekCost = 0;
+    private PlayerStats mStats;
 
     public InfoHudViewHolder(Context context, TableLayout tableLayout) {
         mTableLayoutBinder = new TableLayoutBinder(context, tableLayout);
@@ -119,8 +121,8 @@ public class InfoHudViewHolder {
                     if (mp == null)
                         break;
 
-                    int vdec = mp.getVideoDecoder();
-                    switch (vdec) {
+                    PlayerStats stats = mStats = mp.getStatistics(mStats);
+                    switch (stats.videoDecoder) {
                         case IjkMediaPlayer.FFP_PROPV_DECODER_AVCODEC:
                             setRowValue(R.string.vdec, "avcodec");
                             break;
@@ -132,17 +134,17 @@ public class InfoHudViewHolder {
                             break;
                     }
 
-                    float fpsOutput = mp.getVideoOutputFramesPerSecond();
-                    float fpsDecode = mp.getVideoDecodeFramesPerSecond();
+                    float fpsOutput = stats.videoOutputFramesPerSecond;
+                    float fpsDecode = stats.videoDecodeFramesPerSecond;
                     setRowValue(R.string.fps, String.format(Locale.US, "%.2f / %.2f", fpsDecode, fpsOutput));
 
-                    long videoCachedDuration = mp.getVideoCachedDuration();
-                    long audioCachedDuration = mp.getAudioCachedDuration();
-                    long videoCachedBytes    = mp.getVideoCachedBytes();
-                    long audioCachedBytes    = mp.getAudioCachedBytes();
-                    long tcpSpeed            = mp.getTcpSpeed();
-                    long bitRate             = mp.getBitRate();
-                    long seekLoadDuration    = mp.getSeekLoadDuration();
+                    long videoCachedDuration = stats.videoCachedDuration;
+                    long audioCachedDuration = stats.audioCachedDuration;
+                    long videoCachedBytes    = stats.videoCachedBytes;
+                    long audioCachedBytes    = stats.audioCachedBytes;
+                    long tcpSpeed            = stats.tcpSpeed;
+                    long bitRate             = stats.bitRate;
+                    long seekLoadDuration    = stats.seekLoadDuration;
 
                     setRowValue(R.string.v_cache, String.format(Locale.US, "%s, %s", formatedDurationMilli(videoCachedDuration), formatedSize(videoCachedBytes)));
                     setRowValue(R.string.a_cache, String.format(Locale.US, "%s, %s", formatedDurationMilli(audioCachedDuration), formatedSize(audioCachedBytes)));
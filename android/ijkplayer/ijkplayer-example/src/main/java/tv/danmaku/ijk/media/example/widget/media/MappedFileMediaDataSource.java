@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Bilibili
+ * Copyright (C) 2015 Zhang Rui <bbcallen@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.example.widget.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource2;
+
+/**
+ * Serves reads straight from a memory mapping of the file, without a seek
+ * and read system call per read. Through {@link IMediaDataSource2} the bytes
+ * go from the page cache into the native read buffer with a single copy.
+ *
+ * Files over 2 GB are mapped in chunks, a MappedByteBuffer is limited to
+ * Integer.MAX_VALUE bytes. Reads are expected from one thread at a time,
+ * as the player does.
+ */
+public class MappedFileMediaDataSource implements IMediaDataSource, IMediaDataSource2 {
+    private static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+
+    private final long mChunkSize;
+    private long mFileSize;
+    private ByteBuffer[] mChunks;
+
+    public MappedFileMediaDataSource(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    MappedFileMediaDataSource(File file, long chunkSize) throws IOException {
+        if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("invalid chunk size " + chunkSize);
+
+        mChunkSize = chunkSize;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            mFileSize = channel.size();
+
+            int count = (int) ((mFileSize + chunkSize - 1) / chunkSize);
+            mChunks = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * chunkSize;
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(chunkSize, mFileSize - start));
+                // a view of its own, so that reads do not move the position of the mapping
+                mChunks[i] = chunk.duplicate();
+            }
+        } finally {
+            // the mappings stay valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        ByteBuffer[] chunks = checkOpen();
+        if (size == 0)
+            return 0;
+        if (position >= mFileSize)
+            return -1;
+
+        int read = 0;
+        while (read < size && position < mFileSize) {
+            ByteBuffer chunk = slice(chunks, position, size - read);
+            int n = chunk.remaining();
+            chunk.get(buffer, offset + read, n);
+            read += n;
+            position += n;
+        }
+        return read;
+    }
+
+    @Override
+    public int readAt(long position, ByteBuffer buffer) throws IOException {
+        ByteBuffer[] chunks = checkOpen();
+        if (!buffer.hasRemaining())
+            return 0;
+        if (position >= mFileSize)
+            return -1;
+
+        int read = 0;
+        while (buffer.hasRemaining() && position < mFileSize) {
+            ByteBuffer chunk = slice(chunks, position, buffer.remaining());
+            int n = chunk.remaining();
+            buffer.put(chunk);
+            read += n;
+            position += n;
+        }
+        return read;
+    }
+
+    // positions the chunk holding position on at most size bytes from there
+    private ByteBuffer slice(ByteBuffer[] chunks, long position, int size) {
+        ByteBuffer chunk = chunks[(int) (position / mChunkSize)];
+        int start = (int) (position % mChunkSize);
+        chunk.limit(chunk.capacity());
+        chunk.position(start);
+        chunk.limit(start + Math.min(size, chunk.capacity() - start));
+        return chunk;
+    }
+
+    private ByteBuffer[] checkOpen() throws IOException {
+        ByteBuffer[] chunks = mChunks;
+        if (chunks == null)
+            throw new IOException("closed");
+        return chunks;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mFileSize;
+    }
+
+    /*
+     * The mappings are unmapped once they are garbage collected,
+     * there is no way to unmap them earlier.
+     */
+    @Override
+    public void close() throws IOException {
+        mFileSize = 0;
+        mChunks = null;
+    }
+}
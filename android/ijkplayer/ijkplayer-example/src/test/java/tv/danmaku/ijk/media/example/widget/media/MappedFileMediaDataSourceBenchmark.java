@@ -0,0 +1,91 @@
+package tv.danmaku.ijk.media.example.widget.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+
+/*
+ * MB/s of FileMediaDataSource against MappedFileMediaDataSource, through
+ * byte[] and direct ByteBuffer reads of the size the native side asks for,
+ * on a file in the page cache, a sparse one of TEMP_FILE_SIZE without argument:
+ *
+ *   java -cp <classes> tv.danmaku.ijk.media.example.widget.media.MappedFileMediaDataSourceBenchmark [file]
+ */
+public class MappedFileMediaDataSourceBenchmark {
+    // IO_BUFFER_SIZE of libavformat, what the demuxer asks ijkmediadatasource.c for
+    private static final int READ_SIZE = 32 * 1024;
+    private static final int ROUNDS = 5;
+    private static final long TEMP_FILE_SIZE = 256L * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        File file;
+        boolean temporary = args.length == 0;
+        if (temporary) {
+            file = File.createTempFile("mapped-benchmark", ".bin");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(TEMP_FILE_SIZE);
+            } finally {
+                raf.close();
+            }
+        } else {
+            file = new File(args[0]);
+        }
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                // the first round warms up the page cache and the JIT
+                report(round, "file byte[]", file.length(), readBytes(new FileMediaDataSource(file)));
+                report(round, "mapped byte[]", file.length(), readBytes(new MappedFileMediaDataSource(file)));
+                report(round, "mapped direct", file.length(), readDirect(new MappedFileMediaDataSource(file)));
+            }
+        } finally {
+            if (temporary)
+                file.delete();
+        }
+    }
+
+    private static long readBytes(IMediaDataSource source) throws IOException {
+        byte[] buffer = new byte[READ_SIZE];
+        long start = System.nanoTime();
+        try {
+            long position = 0;
+            while (true) {
+                int n = source.readAt(position, buffer, 0, READ_SIZE);
+                if (n <= 0)
+                    break;
+                position += n;
+            }
+        } finally {
+            source.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long readDirect(MappedFileMediaDataSource source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+        long start = System.nanoTime();
+        try {
+            long position = 0;
+            while (true) {
+                buffer.clear();
+                int n = source.readAt(position, buffer);
+                if (n <= 0)
+                    break;
+                position += n;
+            }
+        } finally {
+            source.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(int round, String name, long bytes, long nanos) {
+        System.out.println(String.format(Locale.US, "round %d %-14s %8.1f MB/s",
+                round, name, bytes / (1024.0 * 1024.0) / (nanos / 1e9)));
+    }
+}
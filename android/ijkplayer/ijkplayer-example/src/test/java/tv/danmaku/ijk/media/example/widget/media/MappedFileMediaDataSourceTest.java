@@ -0,0 +1,145 @@
+package tv.danmaku.ijk.media.example.widget.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MappedFileMediaDataSourceTest {
+    private static final int FILE_SIZE = 1000;
+    // not a divisor of FILE_SIZE, the last chunk is shorter
+    private static final int CHUNK_SIZE = 64;
+
+    private File mFile;
+    private MappedFileMediaDataSource mSource;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("mapped", ".bin");
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < FILE_SIZE; i++)
+            data[i] = valueAt(i);
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        mSource = new MappedFileMediaDataSource(mFile, CHUNK_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mSource.close();
+        mFile.delete();
+    }
+
+    private static byte valueAt(long position) {
+        return (byte) (position * 7 + position / 256);
+    }
+
+    private static void assertBytes(long position, byte[] buffer, int offset, int size) {
+        for (int i = 0; i < size; i++)
+            assertEquals("byte " + (position + i), valueAt(position + i), buffer[offset + i]);
+    }
+
+    @Test
+    public void getSize() throws IOException {
+        assertEquals(FILE_SIZE, mSource.getSize());
+    }
+
+    @Test
+    public void readWithinChunk() throws IOException {
+        byte[] buffer = new byte[16];
+        assertEquals(16, mSource.readAt(10, buffer, 0, 16));
+        assertBytes(10, buffer, 0, 16);
+    }
+
+    @Test
+    public void readEndingOnChunkBoundary() throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        assertEquals(CHUNK_SIZE, mSource.readAt(CHUNK_SIZE, buffer, 0, CHUNK_SIZE));
+        assertBytes(CHUNK_SIZE, buffer, 0, CHUNK_SIZE);
+    }
+
+    @Test
+    public void readAcrossChunks() throws IOException {
+        // starts one byte before a boundary and spans three chunks
+        long position = CHUNK_SIZE - 1;
+        byte[] buffer = new byte[200];
+        assertEquals(150, mSource.readAt(position, buffer, 50, 150));
+        assertBytes(position, buffer, 50, 150);
+        for (int i = 0; i < 50; i++)
+            assertEquals(0, buffer[i]);
+    }
+
+    @Test
+    public void readIntoLastShortChunk() throws IOException {
+        long position = FILE_SIZE - 10;
+        byte[] buffer = new byte[100];
+        assertEquals(10, mSource.readAt(position, buffer, 0, 100));
+        assertBytes(position, buffer, 0, 10);
+    }
+
+    @Test
+    public void readAtEnd() throws IOException {
+        byte[] buffer = new byte[16];
+        assertEquals(-1, mSource.readAt(FILE_SIZE, buffer, 0, 16));
+        assertEquals(0, mSource.readAt(FILE_SIZE, buffer, 0, 0));
+        assertEquals(-1, mSource.readAt(FILE_SIZE, ByteBuffer.allocateDirect(16)));
+    }
+
+    @Test
+    public void readWholeFileInOddSizes() throws IOException {
+        byte[] buffer = new byte[37];
+        long position = 0;
+        while (true) {
+            int n = mSource.readAt(position, buffer, 0, buffer.length);
+            if (n < 0)
+                break;
+            assertBytes(position, buffer, 0, n);
+            position += n;
+        }
+        assertEquals(FILE_SIZE, position);
+    }
+
+    @Test
+    public void readIntoByteBufferAcrossChunks() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(300);
+        buffer.position(20);
+        long position = 3 * CHUNK_SIZE - 5;
+        assertEquals(280, mSource.readAt(position, buffer));
+        assertEquals(300, buffer.position());
+
+        byte[] read = new byte[280];
+        buffer.position(20);
+        buffer.get(read);
+        assertBytes(position, read, 0, 280);
+    }
+
+    @Test
+    public void readIntoByteBufferAtEndOfFile() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        assertEquals(40, mSource.readAt(FILE_SIZE - 40, buffer));
+        assertEquals(40, buffer.position());
+        assertBytes(FILE_SIZE - 40, buffer.array(), 0, 40);
+    }
+
+    @Test
+    public void readAfterClose() throws IOException {
+        mSource.close();
+        try {
+            mSource.readAt(0, new byte[16], 0, 16);
+            fail("read after close");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
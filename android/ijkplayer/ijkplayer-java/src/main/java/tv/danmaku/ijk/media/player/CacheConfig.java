@@ -0,0 +1,161 @@
+package tv.danmaku.ijk.media.player;
+
+/**
+ * Settings of the ijkio cache, which keeps what a player downloads in a
+ * file so that seeks back and replays are served from disk. Sets the
+ * format options read by ijkiomanager.c and ijkiocache.c, only urls opened
+ * through {@link #wrapUrl(String)} go through the cache.
+ *
+ * The cache file is flushed when it reaches its capacity, size it per
+ * device from the free storage, and watch the evictions of {@link CacheStats}.
+ */
+public final class CacheConfig {
+    // keep in sync with DEFAULT_CACHE_* in ijkiocache.c
+    public static final long DEFAULT_MAX_CAPACITY = 512L * 1024 * 1024;
+    public static final long DEFAULT_FORWARDS_CAPACITY = 8L * 1024 * 1024;
+
+    // CACHE_FILE_PATH_MAX_LEN in ijkioapplication.h and CACHE_MAP_PATH_MAX_LEN in ijkiomanager.h
+    private static final int MAX_PATH_LENGTH = 511;
+
+    private static final String URL_PREFIX = "ijkio:cache:ffio:";
+
+    public static final class Builder {
+        private String mCacheFilePath;
+        private String mCacheMapPath;
+        private boolean mAutoSaveMap;
+        private boolean mParseCacheMap;
+        private long mMaxCapacity = DEFAULT_MAX_CAPACITY;
+        private long mForwardsCapacity = DEFAULT_FORWARDS_CAPACITY;
+
+        /**
+         * @param path file holding the cached bytes, required
+         */
+        public Builder setCacheFilePath(String path) {
+            mCacheFilePath = checkPath(path);
+            return this;
+        }
+
+        /**
+         * Keeps the index of the cache file, which ranges of which url it
+         * holds, in path, so that a later player can use the cached bytes.
+         *
+         * @param autoSave  write the index when the player closes
+         * @param parse     read the index when the player opens
+         */
+        public Builder setCacheMapPath(String path, boolean autoSave, boolean parse) {
+            mCacheMapPath = checkPath(path);
+            mAutoSaveMap = autoSave;
+            mParseCacheMap = parse;
+            return this;
+        }
+
+        /**
+         * @param bytes size of the cache file at which it is flushed
+         */
+        public Builder setMaxCapacity(long bytes) {
+            if (bytes <= 0)
+                throw new IllegalArgumentException("invalid capacity " + bytes);
+
+            mMaxCapacity = bytes;
+            return this;
+        }
+
+        /**
+         * @param bytes how far a background task downloads ahead of the player,
+         *              0 downloads on the read thread of the player instead
+         */
+        public Builder setForwardsCapacity(long bytes) {
+            if (bytes < 0)
+                throw new IllegalArgumentException("invalid forwards capacity " + bytes);
+
+            mForwardsCapacity = bytes;
+            return this;
+        }
+
+        public CacheConfig build() {
+            if (mCacheFilePath == null)
+                throw new IllegalStateException("cache file path not set");
+
+            return new CacheConfig(this);
+        }
+
+        private static String checkPath(String path) {
+            if (path == null || path.length() == 0)
+                throw new IllegalArgumentException("empty path");
+            if (path.length() > MAX_PATH_LENGTH)
+                throw new IllegalArgumentException("path too long: " + path);
+            return path;
+        }
+    }
+
+    private final String mCacheFilePath;
+    private final String mCacheMapPath;
+    private final boolean mAutoSaveMap;
+    private final boolean mParseCacheMap;
+    private final long mMaxCapacity;
+    private final long mForwardsCapacity;
+
+    private CacheConfig(Builder builder) {
+        mCacheFilePath = builder.mCacheFilePath;
+        mCacheMapPath = builder.mCacheMapPath;
+        mAutoSaveMap = builder.mAutoSaveMap;
+        mParseCacheMap = builder.mParseCacheMap;
+        mMaxCapacity = builder.mMaxCapacity;
+        mForwardsCapacity = builder.mForwardsCapacity;
+    }
+
+    /**
+     * @return url opened through the cache, pass it to setDataSource()
+     */
+    public static String wrapUrl(String url) {
+        if (url == null)
+            throw new IllegalArgumentException("null url");
+        if (url.startsWith(URL_PREFIX))
+            return url;
+        return URL_PREFIX + url;
+    }
+
+    /**
+     * Sets the options on mp, call before prepareAsync().
+     */
+    public void applyTo(IjkMediaPlayer mp) {
+        mp.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_file_path", mCacheFilePath);
+        if (mCacheMapPath != null) {
+            mp.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_map_path", mCacheMapPath);
+            mp.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "auto_save_map", mAutoSaveMap ? 1 : 0);
+            mp.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "parse_cache_map", mParseCacheMap ? 1 : 0);
+        }
+        mp.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_max_capacity", mMaxCapacity);
+        mp.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_file_forwards_capacity", mForwardsCapacity);
+    }
+
+    /**
+     * Adds the options to a preset, see {@link IjkPlayerOptions}.
+     */
+    public void applyTo(IjkPlayerOptions.Builder builder) {
+        builder.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_file_path", mCacheFilePath);
+        if (mCacheMapPath != null) {
+            builder.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_map_path", mCacheMapPath);
+            builder.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "auto_save_map", mAutoSaveMap ? 1 : 0);
+            builder.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "parse_cache_map", mParseCacheMap ? 1 : 0);
+        }
+        builder.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_max_capacity", mMaxCapacity);
+        builder.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "cache_file_forwards_capacity", mForwardsCapacity);
+    }
+
+    public String getCacheFilePath() {
+        return mCacheFilePath;
+    }
+
+    public String getCacheMapPath() {
+        return mCacheMapPath;
+    }
+
+    public long getMaxCapacity() {
+        return mMaxCapacity;
+    }
+
+    public long getForwardsCapacity() {
+        return mForwardsCapacity;
+    }
+}
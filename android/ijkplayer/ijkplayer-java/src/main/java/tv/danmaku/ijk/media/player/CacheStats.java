@@ -0,0 +1,53 @@
+package tv.danmaku.ijk.media.player;
+
+/**
+ * Point-in-time statistics of the ijkio cache of a player, filled by
+ * {@link IjkMediaPlayer#getCacheStats(CacheStats)}. Keep an instance around
+ * and pass it to every call, nothing is allocated then.
+ *
+ * A hit is a read served without waiting for the network. With a forwards
+ * window the cache file also buffers the download, so bytesFromCacheFile
+ * includes bytes downloaded during the session, getBytesSaved() does not.
+ */
+public class CacheStats {
+    final PlayerStats mPlayerStats = new PlayerStats();
+
+    public long bytesRead;                  // handed to the player
+    public long bytesFromCacheFile;         // read from the cache file
+    public long bytesFromNetwork;           // downloaded
+    public long hitCount;
+    public long missCount;
+    public long evictCount;                 // times the full cache file was flushed
+    public long evictBytes;
+    public long cacheFileSize;              // write position in the cache file
+    public long forwardsBytes;              // downloaded ahead of the player
+
+    void unpack() {
+        PlayerStats s = mPlayerStats;
+        bytesRead           = s.cacheReadBytes;
+        bytesFromCacheFile  = s.cacheFileReadBytes;
+        bytesFromNetwork    = s.cacheCountBytes;
+        hitCount            = s.cacheHitCount;
+        missCount           = s.cacheMissCount;
+        evictCount          = s.cacheEvictCount;
+        evictBytes          = s.cacheEvictBytes;
+        cacheFileSize       = s.cachePhysicalPos;
+        forwardsBytes       = s.cacheFileForwards;
+    }
+
+    /**
+     * @return share of the reads served without waiting for the network,
+     *         0 before the first read
+     */
+    public float getHitRatio() {
+        long reads = hitCount + missCount;
+        return reads > 0 ? (float) hitCount / reads : 0;
+    }
+
+    /**
+     * @return bytes the player read which were not downloaded in this session
+     */
+    public long getBytesSaved() {
+        return Math.max(bytesRead - bytesFromNetwork, 0);
+    }
+}
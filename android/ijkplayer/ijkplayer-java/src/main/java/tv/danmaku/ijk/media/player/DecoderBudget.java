@@ -0,0 +1,342 @@
+package tv.danmaku.ijk.media.player;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import tv.danmaku.ijk.media.player.pragma.DebugLog;
+
+/**
+ * Shares the hardware decoders of the device between the IjkMediaPlayers of
+ * the process that decode with MediaCodec.
+ *
+ * A registered player only gets a MediaCodec when its weight, the pixel rate
+ * of its stream, fits into what is left of the budget. Otherwise it falls back
+ * to software decoding, and players of lower priority are asked to give up
+ * their decoder. The listener is told when a player gains or loses its claim
+ * to a hardware decoder, the app reopens the stream to switch decoders.
+ * Players which are not registered are not limited.
+ */
+public final class DecoderBudget {
+    private static final String TAG = DecoderBudget.class.getName();
+
+    public static final int PRIORITY_BACKGROUND = 0;
+    public static final int PRIORITY_VISIBLE    = 1;
+    public static final int PRIORITY_FOCUSED    = 2;    // fullscreen or focused
+
+    // pixel rate of a 1080p30 stream, weight of a player without stream hint
+    public static final long PIXEL_RATE_1080P30 = 1920L * 1080 * 30;
+
+    public interface Listener {
+        /*
+         * A player decoding in software may have a hardware decoder now,
+         * it is reserved until the player reopens its stream or is released.
+         */
+        void onHardwareGranted(IjkMediaPlayer mp);
+
+        /*
+         * A player of higher priority needs the hardware decoder of mp, reopen
+         * its stream to continue in software, or lowres, and free the decoder.
+         */
+        void onHardwareRevoked(IjkMediaPlayer mp);
+    }
+
+    private static final int STATE_CLOSED   = 0;    // no video decoder open
+    private static final int STATE_SOFTWARE = 1;    // wanted MediaCodec, got software decoding
+    private static final int STATE_HARDWARE = 2;
+
+    static final class Entry {
+        final IjkMediaPlayer mPlayer;
+        final Listener mListener;
+        final Handler mHandler;
+        final long mSerial;
+        int mPriority;
+        long mWeight = PIXEL_RATE_1080P30;
+        int mState = STATE_CLOSED;
+        boolean mReserved;      // granted while in STATE_SOFTWARE, waits for the reopen
+        boolean mRevoked;       // asked to leave STATE_HARDWARE
+
+        Entry(IjkMediaPlayer mp, int priority, Listener listener, Handler handler, long serial) {
+            mPlayer = mp;
+            mPriority = priority;
+            mListener = listener;
+            mHandler = handler;
+            mSerial = serial;
+        }
+
+        boolean holdsSlot() {
+            return mState == STATE_HARDWARE || mReserved;
+        }
+    }
+
+    private static final Comparator<Entry> BY_PRIORITY = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.mPriority != b.mPriority)
+                return a.mPriority > b.mPriority ? -1 : 1;
+            return a.mSerial < b.mSerial ? -1 : (a.mSerial == b.mSerial ? 0 : 1);
+        }
+    };
+
+    private static final DecoderBudget sInstance = new DecoderBudget();
+
+    public static DecoderBudget getInstance() {
+        return sInstance;
+    }
+
+    // guarded by this
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+    private int mMaxSessions = 4;
+    private long mMaxPixelRate = 4 * PIXEL_RATE_1080P30;
+    private long mSerial;
+    private long mGrantCount;
+    private long mDenyCount;
+    private long mRevokeCount;
+
+    private DecoderBudget() {
+    }
+
+    /**
+     * @param maxSessions  most MediaCodec players at a time
+     * @param maxPixelRate most pixels per second decoded by all of them together
+     */
+    public void setLimits(int maxSessions, long maxPixelRate) {
+        if (maxSessions < 0 || maxPixelRate < 0)
+            throw new IllegalArgumentException("invalid limits " + maxSessions + ", " + maxPixelRate);
+
+        synchronized (this) {
+            mMaxSessions = maxSessions;
+            mMaxPixelRate = maxPixelRate;
+        }
+        rebalance();
+    }
+
+    /**
+     * Puts mp under the budget, call before prepareAsync().
+     *
+     * @param listener called on the looper of the calling thread, may be null
+     */
+    public void register(IjkMediaPlayer mp, int priority, Listener listener) {
+        Looper looper = Looper.myLooper();
+        if (looper == null)
+            looper = Looper.getMainLooper();
+
+        synchronized (this) {
+            if (mp.mBudgetEntry != null)
+                throw new IllegalStateException("player already registered");
+
+            Entry entry = new Entry(mp, priority, listener, new Handler(looper), mSerial++);
+            mEntries.add(entry);
+            mp.mBudgetEntry = entry;
+        }
+    }
+
+    /**
+     * Frees the decoder claim of mp, the player itself is left alone.
+     */
+    public void unregister(IjkMediaPlayer mp) {
+        synchronized (this) {
+            Entry entry = mp.mBudgetEntry;
+            if (entry == null)
+                return;
+
+            mEntries.remove(entry);
+            mp.mBudgetEntry = null;
+        }
+        rebalance();
+    }
+
+    /**
+     * Changes the priority of mp as it gains or loses focus, may grant it a
+     * decoder or revoke decoders of others.
+     */
+    public void setPriority(IjkMediaPlayer mp, int priority) {
+        synchronized (this) {
+            Entry entry = mp.mBudgetEntry;
+            if (entry == null || entry.mPriority == priority)
+                return;
+
+            entry.mPriority = priority;
+        }
+        rebalance();
+    }
+
+    /**
+     * Sets the expected size and frame rate of the stream of mp, its weight
+     * is PIXEL_RATE_1080P30 otherwise. Applies to the next decoder opened.
+     */
+    public void setStreamHint(IjkMediaPlayer mp, int width, int height, int fps) {
+        if (width <= 0 || height <= 0 || fps <= 0)
+            throw new IllegalArgumentException("invalid stream hint " + width + "x" + height + "@" + fps);
+
+        synchronized (this) {
+            Entry entry = mp.mBudgetEntry;
+            if (entry != null)
+                entry.mWeight = (long) width * height * fps;
+        }
+    }
+
+    public synchronized boolean isUsingHardware(IjkMediaPlayer mp) {
+        Entry entry = mp.mBudgetEntry;
+        return entry == null || entry.mState == STATE_HARDWARE;
+    }
+
+    public synchronized int getActiveSessionCount() {
+        int count = 0;
+        for (Entry entry : mEntries) {
+            if (entry.holdsSlot())
+                count++;
+        }
+        return count;
+    }
+
+    public synchronized long getActivePixelRate() {
+        long rate = 0;
+        for (Entry entry : mEntries) {
+            if (entry.holdsSlot())
+                rate += entry.mWeight;
+        }
+        return rate;
+    }
+
+    public synchronized long getGrantCount() {
+        return mGrantCount;
+    }
+
+    public synchronized long getDenyCount() {
+        return mDenyCount;
+    }
+
+    public synchronized long getRevokeCount() {
+        return mRevokeCount;
+    }
+
+    /*
+     * Called on the read thread of mp once its MediaCodec selector picked a
+     * codec.
+     * @return false if mp has to decode in software
+     */
+    boolean onSelectCodec(IjkMediaPlayer mp) {
+        synchronized (this) {
+            Entry entry = mp.mBudgetEntry;
+            if (entry == null)
+                return true;
+
+            boolean granted = entry.mReserved || fits(entry);
+            entry.mReserved = false;
+            entry.mRevoked = false;
+            entry.mState = granted ? STATE_HARDWARE : STATE_SOFTWARE;
+            if (granted) {
+                mGrantCount++;
+                return true;
+            }
+            mDenyCount++;
+            DebugLog.i(TAG, "hardware decoder denied, priority " + entry.mPriority);
+        }
+        // lower priority players may have to make room
+        rebalance();
+        return false;
+    }
+
+    /*
+     * Called once the native player of mp is reset or released.
+     */
+    void onDecoderClosed(IjkMediaPlayer mp) {
+        synchronized (this) {
+            Entry entry = mp.mBudgetEntry;
+            if (entry == null)
+                return;
+
+            entry.mState = STATE_CLOSED;
+            entry.mReserved = false;
+            entry.mRevoked = false;
+        }
+        rebalance();
+    }
+
+    // whether entry fits next to the players holding a slot
+    private boolean fits(Entry entry) {
+        int sessions = 1;
+        long rate = entry.mWeight;
+        for (Entry other : mEntries) {
+            if (other != entry && other.holdsSlot()) {
+                sessions++;
+                rate += other.mWeight;
+            }
+        }
+        return sessions <= mMaxSessions && rate <= mMaxPixelRate;
+    }
+
+    /*
+     * Hands the slots to the open players in priority order: revokes the
+     * slots of players which no longer make the cut, and reserves free slots
+     * for players decoding in software which do.
+     */
+    private void rebalance() {
+        ArrayList<Entry> granted = new ArrayList<Entry>();
+        ArrayList<Entry> revoked = new ArrayList<Entry>();
+
+        synchronized (this) {
+            ArrayList<Entry> open = new ArrayList<Entry>();
+            for (Entry entry : mEntries) {
+                if (entry.mState != STATE_CLOSED)
+                    open.add(entry);
+            }
+            Collections.sort(open, BY_PRIORITY);
+
+            int sessions = 0;
+            long rate = 0;
+            ArrayList<Entry> wanted = new ArrayList<Entry>();
+            for (Entry entry : open) {
+                if (sessions + 1 <= mMaxSessions && rate + entry.mWeight <= mMaxPixelRate) {
+                    sessions++;
+                    rate += entry.mWeight;
+                    wanted.add(entry);
+                }
+            }
+
+            for (Entry entry : open) {
+                if (wanted.contains(entry))
+                    continue;
+                if (entry.mReserved) {
+                    entry.mReserved = false;
+                } else if (entry.mState == STATE_HARDWARE && !entry.mRevoked) {
+                    entry.mRevoked = true;
+                    mRevokeCount++;
+                    revoked.add(entry);
+                }
+            }
+
+            // slots are only handed out once the revoked players gave theirs back
+            for (Entry entry : wanted) {
+                if (entry.mState == STATE_SOFTWARE && !entry.mReserved && fits(entry)) {
+                    entry.mReserved = true;
+                    granted.add(entry);
+                }
+            }
+        }
+
+        for (Entry entry : revoked)
+            post(entry, false);
+        for (Entry entry : granted)
+            post(entry, true);
+    }
+
+    private static void post(final Entry entry, final boolean granted) {
+        if (entry.mListener == null)
+            return;
+
+        entry.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (granted)
+                    entry.mListener.onHardwareGranted(entry.mPlayer);
+                else
+                    entry.mListener.onHardwareRevoked(entry.mPlayer);
+            }
+        });
+    }
+}
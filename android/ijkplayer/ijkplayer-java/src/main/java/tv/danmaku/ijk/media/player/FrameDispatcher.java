@@ -0,0 +1,192 @@
+package tv.danmaku.ijk.media.player;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+
+import tv.danmaku.ijk.media.player.misc.IjkFrame;
+import tv.danmaku.ijk.media.player.pragma.DebugLog;
+
+/*
+ * Delivers frames to an IjkMediaPlayer.OnFrameAvailableListener on its own thread.
+ *
+ * onFrameAvailable() is called from the native message loop and only signals,
+ * it never copies a frame nor waits for the listener, a slow consumer only makes
+ * frames being dropped. With FRAME_DELIVERY_BOUNDED_QUEUE a second thread copies
+ * each announced frame into the queue while the listener runs.
+ */
+final class FrameDispatcher implements Runnable {
+    private static final String TAG = FrameDispatcher.class.getName();
+
+    private final WeakReference<IjkMediaPlayer> mWeakPlayer;
+    private final IjkMediaPlayer.OnFrameAvailableListener mListener;
+    private final int mPolicy;
+    private final int mParam;
+    private final Thread mThread;
+    private final Thread mCopyThread;
+
+    // guarded by this
+    private final ArrayDeque<IjkFrame> mQueue = new ArrayDeque<IjkFrame>();
+    private final ArrayDeque<IjkFrame> mPool = new ArrayDeque<IjkFrame>();
+    private boolean mPending;
+    private boolean mCopyPending;
+    private boolean mQuit;
+    private long mDroppedCount;
+
+    // only touched by the message loop thread
+    private long mNotifyCount;
+
+    // only touched by the dispatcher thread
+    private final IjkFrame mLatestFrame = new IjkFrame();
+
+    FrameDispatcher(IjkMediaPlayer player, IjkMediaPlayer.OnFrameAvailableListener listener, int policy, int param) {
+        if (policy != IjkMediaPlayer.FRAME_DELIVERY_LATEST_ONLY && param < 1)
+            throw new IllegalArgumentException("invalid frame delivery param " + param);
+
+        mWeakPlayer = new WeakReference<IjkMediaPlayer>(player);
+        mListener = listener;
+        mPolicy = policy;
+        mParam = param;
+        mThread = new Thread(this, "ijk-frame-dispatcher");
+        mThread.start();
+
+        if (policy == IjkMediaPlayer.FRAME_DELIVERY_BOUNDED_QUEUE) {
+            mCopyThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    copyFrames();
+                }
+            }, "ijk-frame-copier");
+            mCopyThread.start();
+        } else {
+            mCopyThread = null;
+        }
+    }
+
+    void onFrameAvailable() {
+        switch (mPolicy) {
+            case IjkMediaPlayer.FRAME_DELIVERY_EVERY_NTH:
+                if (mNotifyCount++ % mParam != 0)
+                    return;
+                // fall through
+            case IjkMediaPlayer.FRAME_DELIVERY_LATEST_ONLY:
+                synchronized (this) {
+                    if (mPending)
+                        mDroppedCount++;
+                    mPending = true;
+                    notifyAll();
+                }
+                return;
+            case IjkMediaPlayer.FRAME_DELIVERY_BOUNDED_QUEUE:
+                synchronized (this) {
+                    // the native side only keeps the latest frame, the previous one is lost
+                    if (mCopyPending)
+                        mDroppedCount++;
+                    mCopyPending = true;
+                    notifyAll();
+                }
+                return;
+            default:
+                return;
+        }
+    }
+
+    // copy thread of FRAME_DELIVERY_BOUNDED_QUEUE
+    private void copyFrames() {
+        while (true) {
+            IjkFrame frame;
+            synchronized (this) {
+                while (!mQuit && !mCopyPending) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mQuit)
+                    return;
+
+                mCopyPending = false;
+                frame = mPool.poll();
+            }
+
+            IjkMediaPlayer player = mWeakPlayer.get();
+            if (player == null)
+                return;
+
+            IjkFrame copied = player.getFrame(frame);
+            if (copied == null) {
+                if (frame != null)
+                    recycle(frame);
+                continue;
+            }
+
+            synchronized (this) {
+                if (mQuit)
+                    return;
+                if (mQueue.size() >= mParam) {
+                    mPool.add(mQueue.poll());
+                    mDroppedCount++;
+                }
+                mQueue.add(copied);
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void recycle(IjkFrame frame) {
+        mPool.add(frame);
+    }
+
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    void quit() {
+        synchronized (this) {
+            mQuit = true;
+            mQueue.clear();
+            mPool.clear();
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            IjkFrame queued = null;
+            synchronized (this) {
+                while (!mQuit && !mPending && mQueue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mQuit)
+                    return;
+
+                if (mPending)
+                    mPending = false;
+                else
+                    queued = mQueue.poll();
+            }
+
+            IjkMediaPlayer player = mWeakPlayer.get();
+            if (player == null)
+                return;
+
+            IjkFrame frame = queued != null ? queued : player.getFrame(mLatestFrame);
+            if (frame == null)
+                continue;
+
+            try {
+                mListener.onFrameAvailable(player, frame);
+            } catch (RuntimeException e) {
+                DebugLog.e(TAG, "onFrameAvailable: " + e);
+            }
+
+            if (queued != null)
+                recycle(queued);
+        }
+    }
+}
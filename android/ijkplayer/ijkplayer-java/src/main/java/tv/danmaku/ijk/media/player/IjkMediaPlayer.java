@@ -25,8 +25,6 @@ import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.SurfaceTexture;
 import android.graphics.Rect;
-import android.media.MediaCodecInfo;
-import android.media.MediaCodecList;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
@@ -47,8 +45,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -56,9 +56,12 @@ import tv.danmaku.ijk.media.player.annotations.AccessedByNative;
 import tv.danmaku.ijk.media.player.annotations.CalledByNative;
 import tv.danmaku.ijk.media.player.misc.IAndroidIO;
 import tv.danmaku.ijk.media.player.misc.IMediaDataSource;
+import tv.danmaku.ijk.media.player.misc.IMediaDataSource2;
 import tv.danmaku.ijk.media.player.misc.ITrackInfo;
 import tv.danmaku.ijk.media.player.misc.IjkFrame;
+import tv.danmaku.ijk.media.player.misc.IjkFrameOptions;
 import tv.danmaku.ijk.media.player.misc.IjkTrackInfo;
+import tv.danmaku.ijk.media.player.misc.MediaDataSourceAdapter;
 import tv.danmaku.ijk.media.player.misc.ObjectTrackingInfo;
 import tv.danmaku.ijk.media.player.pragma.DebugLog;
 
@@ -73,15 +76,20 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     private static final int MEDIA_NOP = 0; // interface test message
     private static final int MEDIA_PREPARED = 1;
     private static final int MEDIA_PLAYBACK_COMPLETE = 2;
-    private static final int MEDIA_BUFFERING_UPDATE = 3;
+    static final int MEDIA_BUFFERING_UPDATE = 3;
     private static final int MEDIA_SEEK_COMPLETE = 4;
-    private static final int MEDIA_SET_VIDEO_SIZE = 5;
+    static final int MEDIA_SET_VIDEO_SIZE = 5;
+    private static final int MEDIA_FRAME_AVAILABLE = 7;
+    private static final int MEDIA_SOURCE_SWITCHED = 8;
     private static final int MEDIA_TIMED_TEXT = 99;
     private static final int MEDIA_ERROR = 100;
     private static final int MEDIA_INFO = 200;
 
     protected static final int MEDIA_SET_VIDEO_SAR = 10001;
 
+    // EventHandler message draining mEventQueue
+    private static final int MEDIA_EVENT_BATCH = -1;
+
     //----------------------------------------
     // options
     public static final int IJK_LOG_UNKNOWN = 0;
@@ -143,7 +151,31 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     public static final int FFP_PROP_INT64_TCP_SPEED                        = 20200;
     public static final int FFP_PROP_INT64_LATEST_SEEK_LOAD_DURATION        = 20300;
     public static final int FFP_PROP_INT64_IMMEDIATE_RECONNECT              = 20211;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES       = 20212;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_FILE_READ_BYTES  = 20213;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_HIT_COUNT        = 20214;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_MISS_COUNT       = 20215;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_EVICT_COUNT      = 20216;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_EVICT_BYTES      = 20217;
     public static final int FFP_PROP_INT64_VIDEO_FRAME_TIMESTAMP            = 20301;
+    public static final int FFP_PROP_INT64_FRAME_AVAILABLE_NOTIFY           = 20302;
+    public static final int FFP_PROP_INT64_META_QUEUE_COUNT                 = 20303;
+    public static final int FFP_PROP_INT64_META_QUEUE_OVERFLOW_COUNT        = 20304;
+    public static final int FFP_PROP_INT64_META_QUEUE_STALE_COUNT           = 20305;
+    public static final int FFP_PROP_INT64_EVENT_MASK                       = 20306;
+
+    // keep in sync with FFP_EVENT_MASK_* in ff_ffmsg.h
+    public static final int EVENT_MASK_BUFFERING_UPDATE = 1;
+    public static final int EVENT_MASK_VIDEO_SIZE       = 1 << 1;   // video size and sar
+    public static final int EVENT_MASK_INFO             = 1 << 2;
+    public static final int EVENT_MASK_TIMED_TEXT       = 1 << 3;
+    public static final int EVENT_MASK_GET_IMG_STATE    = 1 << 4;
+    public static final int EVENT_MASK_ALL              = ~0;
+
+    public static final int FFP_PROP_INT64_NATIVE_INVOKE_MASK               = 20307;
+    public static final int FFP_PROP_INT64_NATIVE_INVOKE_COUNT              = 20310;
+    public static final int FFP_PROP_INT64_REFRESH_LATE_AVG                 = 20320;
+    public static final int FFP_PROP_INT64_REFRESH_LATE_MAX                 = 20321;
     //----------------------------------------
 
     @AccessedByNative
@@ -162,6 +194,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     private SurfaceHolder mSurfaceHolder;
     private EventHandler mEventHandler;
+    private final NativeEventQueue mEventQueue = new NativeEventQueue();
     private PowerManager.WakeLock mWakeLock = null;
     private boolean mScreenOnWhilePlaying;
     private boolean mStayAwake;
@@ -249,6 +282,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
          * create it here than in C++.
          */
         native_setup(new WeakReference<IjkMediaPlayer>(this));
+        updateNativeInvokeMask();
     }
 
     private native void _setFrameAtTime(String imgCachePath, long startTime, long endTime, int num, int imgDefinition)
@@ -489,6 +523,15 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     public void setDataSource(IMediaDataSource mediaDataSource)
             throws IllegalArgumentException, SecurityException, IllegalStateException {
+        _setDataSource(mediaDataSource != null ? new MediaDataSourceAdapter(mediaDataSource) : null);
+    }
+
+    /**
+     * Same as {@link #setDataSource(IMediaDataSource)}, but mediaDataSource
+     * reads straight into the native buffer.
+     */
+    public void setDataSource(IMediaDataSource2 mediaDataSource)
+            throws IllegalArgumentException, SecurityException, IllegalStateException {
         _setDataSource(mediaDataSource);
     }
 
@@ -503,7 +546,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     private native void _setDataSourceFd(int fd)
             throws IOException, IllegalArgumentException, SecurityException, IllegalStateException;
 
-    private native void _setDataSource(IMediaDataSource mediaDataSource)
+    private native void _setDataSource(IMediaDataSource2 mediaDataSource)
             throws IllegalArgumentException, SecurityException, IllegalStateException;
 
     private native void _setAndroidIOCallback(IAndroidIO androidIO)
@@ -678,6 +721,27 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     @Override
     public native void seekTo(long msec) throws IllegalStateException;
 
+    /**
+     * Switches a prepared player to another url, e.g. the next camera. If the
+     * new streams have the same codec parameters as the current ones, the
+     * decoders, the audio output and the surface are kept and only the packet
+     * queues are flushed, which is much faster than reset(), setDataSource()
+     * and prepareAsync().
+     *
+     * The new url is opened and probed in the background while the current
+     * source keeps playing. The result is reported to the
+     * {@link OnSourceSwitchListener}, on failure the current source keeps playing.
+     * A newer call cancels a switch still being opened.
+     *
+     * @param path the path of the file, or the http/rtsp URL of the stream
+     * @throws IllegalStateException if the player is not prepared
+     */
+    public void switchDataSource(String path) throws IllegalStateException {
+        _switchDataSource(path);
+    }
+
+    private native void _switchDataSource(String path) throws IllegalStateException;
+
     @Override
     public native long getCurrentPosition();
 
@@ -711,22 +775,128 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         stayAwake(false);
         updateSurfaceScreenOn();
         resetListeners();
+        setOnFrameAvailableListener(null);
+        reportCodecThroughput();
         _release();
+        DecoderBudget.getInstance().unregister(this);
     }
 
     private native void _release();
 
+    public interface OnReleaseCompleteListener {
+        /*
+         * @param elapsedMs from releaseAsync() to the end of the native teardown
+         */
+        void onReleaseComplete(IjkMediaPlayer mp, long elapsedMs);
+    }
+
+    /**
+     * Like {@link #release()}, but only detaches listeners and the surface and
+     * stops playback before returning. Joining the native threads, which can
+     * take long on a stalled network, is left to a shared background reaper.
+     * The player must not be used anymore after this call.
+     *
+     * A hardware decoder keeps its surface until the teardown is done, wait for
+     * the listener before handing the same surface to another MediaCodec player.
+     *
+     * @param listener called on the looper of the calling thread once the
+     *                 player is torn down, may be null
+     */
+    public void releaseAsync(OnReleaseCompleteListener listener) {
+        detach();
+        PlayerReaper.submit(this, new Runnable() {
+            @Override
+            public void run() {
+                _release();
+                DecoderBudget.getInstance().unregister(IjkMediaPlayer.this);
+            }
+        }, listener);
+    }
+
+    /*
+     * Same as releaseAsync(), but the player is reset instead of released and
+     * can be used again once listener is called. Used by IjkPlayerPool.
+     */
+    void resetAsync(OnReleaseCompleteListener listener) {
+        detach();
+        PlayerReaper.submit(this, new Runnable() {
+            @Override
+            public void run() {
+                resetNative();
+            }
+        }, mEventHandler, new Runnable() {
+            @Override
+            public void run() {
+                // on the event thread, the only consumer of mEventQueue
+                resetEvents();
+            }
+        }, listener);
+    }
+
+    private void detach() {
+        stayAwake(false);
+        updateSurfaceScreenOn();
+        resetListeners();
+        setOnFrameAvailableListener(null);
+        setOnNativeInvokeListener(null);
+        setOnControlMessageListener(null);
+        mEventHandler.removeCallbacksAndMessages(null);
+        mEventQueue.clear();
+        reportCodecThroughput();
+
+        // both only flag the native threads, nothing is joined here
+        try {
+            _stop();
+        } catch (IllegalStateException e) {
+            // not started yet or already stopped
+        }
+        mSurfaceHolder = null;
+        _setVideoSurface(null);
+    }
+
+    /**
+     * Fills stats with the teardown latency of all releaseAsync() calls so far.
+     */
+    public static void getReleaseStats(ReleaseStats stats) {
+        PlayerReaper.getStats(stats);
+    }
+
     @Override
     public void reset() {
-        stayAwake(false);
-        _reset();
+        resetNative();
+        resetEvents();
+    }
+
+    // drops what the old native player posted, and the state it reported
+    private void resetEvents() {
         // make sure none of the listeners get called anymore
         mEventHandler.removeCallbacksAndMessages(null);
+        mEventQueue.clear();
 
         mVideoWidth = 0;
         mVideoHeight = 0;
     }
 
+    // safe on any thread
+    private void resetNative() {
+        stayAwake(false);
+        reportCodecThroughput();
+        _reset();
+        DecoderBudget.getInstance().onDecoderClosed(this);
+
+        // _reset() created a new native player with the default masks
+        updateNativeInvokeMask();
+        if (mEventMask != EVENT_MASK_ALL)
+            _setPropertyLong(FFP_PROP_INT64_EVENT_MASK, mEventMask);
+        if (mFrameDispatcher != null)
+            _setPropertyLong(FFP_PROP_INT64_FRAME_AVAILABLE_NOTIFY, 1);
+        int[] o;
+        synchronized (mFrameOutput) {
+            o = mFrameOutput.clone();
+        }
+        _setFrameOutput(o[0], o[1], o[2], o[3], o[4], o[5], o[6]);
+    }
+
     private native void _reset();
 
     /**
@@ -852,6 +1022,24 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         return _getPropertyLong(FFP_PROP_INT64_VIDEO_FRAME_TIMESTAMP, 0);
     }
 
+    public long getMetaQueueCount() {
+        return _getPropertyLong(FFP_PROP_INT64_META_QUEUE_COUNT, 0);
+    }
+
+    /**
+     * @return number of SEI metadata dropped because "meta-queue-size" was reached
+     */
+    public long getMetaQueueOverflowCount() {
+        return _getPropertyLong(FFP_PROP_INT64_META_QUEUE_OVERFLOW_COUNT, 0);
+    }
+
+    /**
+     * @return number of SEI metadata dropped because their picture was never displayed
+     */
+    public long getMetaQueueStaleCount() {
+        return _getPropertyLong(FFP_PROP_INT64_META_QUEUE_STALE_COUNT, 0);
+    }
+
     public float getAvdiff() {
         return _getPropertyFloat(FFP_PROP_FLOAT_AVDIFF, 0.0f);
     }
@@ -865,6 +1053,36 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         return _getPropertyFloat(FFP_PROP_FLOAT_DROP_FRAME_RATE, .0f);
     }
 
+    private native void _getStatistics(long[] longs, float[] floats);
+
+    /**
+     * Read all statistics at once. The values are taken under a single lock of
+     * the native player, so they form a consistent snapshot, and cost one JNI
+     * call instead of one per property.
+     *
+     * @param reuse a holder from a previous call, or null to create one
+     * @return the filled holder
+     */
+    public PlayerStats getStatistics(PlayerStats reuse) {
+        PlayerStats stats = reuse != null ? reuse : new PlayerStats();
+        _getStatistics(stats.mLongs, stats.mFloats);
+        stats.unpack();
+        return stats;
+    }
+
+    /**
+     * Reads the statistics of the ijkio cache, see {@link CacheConfig}.
+     *
+     * @param reuse a holder from a previous call, or null to create one
+     * @return the filled holder
+     */
+    public CacheStats getCacheStats(CacheStats reuse) {
+        CacheStats stats = reuse != null ? reuse : new CacheStats();
+        getStatistics(stats.mPlayerStats);
+        stats.unpack();
+        return stats;
+    }
+
     public native float getVolume();
 
     @Override
@@ -936,6 +1154,19 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     private native void _setOption(int category, String name, String value);
     private native void _setOption(int category, String name, long value);
 
+    /**
+     * Applies all options of a preset at once, like calling setOption() for
+     * each of them in the order they were added to the builder.
+     */
+    public void setOptions(IjkPlayerOptions options)
+    {
+        _setOptions(options.getNativeOptions());
+    }
+
+    private native void _setOptions(long nativeOptions);
+    static native long native_compileOptions(int[] categories, String[] names, String[] values, boolean[] unknown);
+    static native void native_freeOptions(long nativeOptions);
+
     public Bundle getMediaMeta() {
         return _getMediaMeta();
     }
@@ -980,6 +1211,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     private static class EventHandler extends Handler {
         private final WeakReference<IjkMediaPlayer> mWeakPlayer;
+        private final NativeEventQueue.Event mEvent = new NativeEventQueue.Event();
 
         public EventHandler(IjkMediaPlayer mp, Looper looper) {
             super(looper);
@@ -995,7 +1227,26 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 return;
             }
 
-            switch (msg.what) {
+            if (msg.what == MEDIA_EVENT_BATCH) {
+                NativeEventQueue queue = player.mEventQueue;
+                NativeEventQueue.Event event = mEvent;
+                queue.beginDrain();
+                while (queue.poll(event)) {
+                    Object obj = event.obj;
+                    event.obj = null;
+                    handleEvent(player, event.what, event.arg1, event.arg2, obj);
+                    // a listener may have released the player
+                    if (player.mNativeMediaPlayer == 0)
+                        return;
+                }
+                return;
+            }
+
+            handleEvent(player, msg.what, msg.arg1, msg.arg2, msg.obj);
+        }
+
+        private void handleEvent(IjkMediaPlayer player, int what, int arg1, int arg2, Object obj) {
+            switch (what) {
             case MEDIA_PREPARED:
                 player.notifyOnPrepared();
                 return;
@@ -1006,22 +1257,8 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 return;
 
             case MEDIA_BUFFERING_UPDATE:
-                long bufferPosition = msg.arg1;
-                if (bufferPosition < 0) {
-                    bufferPosition = 0;
-                }
-
-                long percent = 0;
-                long duration = player.getDuration();
-                if (duration > 0) {
-                    percent = bufferPosition * 100 / duration;
-                }
-                if (percent >= 100) {
-                    percent = 100;
-                }
-
-                // DebugLog.efmt(TAG, "Buffer (%d%%) %d/%d",  percent, bufferPosition, duration);
-                player.notifyOnBufferingUpdate((int)percent);
+                // arg1 is the buffered position, arg2 its percentage of the duration
+                player.notifyOnBufferingUpdate(arg2);
                 return;
 
             case MEDIA_SEEK_COMPLETE:
@@ -1029,49 +1266,55 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 return;
 
             case MEDIA_SET_VIDEO_SIZE:
-                player.mVideoWidth = msg.arg1;
-                player.mVideoHeight = msg.arg2;
+                player.mVideoWidth = arg1;
+                player.mVideoHeight = arg2;
                 player.notifyOnVideoSizeChanged(player.mVideoWidth, player.mVideoHeight,
                         player.mVideoSarNum, player.mVideoSarDen);
                 return;
 
             case MEDIA_ERROR:
-                DebugLog.e(TAG, "Error (" + msg.arg1 + "," + msg.arg2 + ")");
-                if (!player.notifyOnError(msg.arg1, msg.arg2)) {
+                DebugLog.e(TAG, "Error (" + arg1 + "," + arg2 + ")");
+                if (!player.notifyOnError(arg1, arg2)) {
                     player.notifyOnCompletion();
                 }
                 player.stayAwake(false);
                 return;
 
             case MEDIA_INFO:
-                switch (msg.arg1) {
+                switch (arg1) {
                     case MEDIA_INFO_VIDEO_RENDERING_START:
                         DebugLog.i(TAG, "Info: MEDIA_INFO_VIDEO_RENDERING_START\n");
                         break;
                 }
-                player.notifyOnInfo(msg.arg1, msg.arg2);
+                player.notifyOnInfo(arg1, arg2);
                 // No real default action so far.
                 return;
             case MEDIA_TIMED_TEXT:
-                if (msg.obj == null) {
+                if (obj == null) {
                     player.notifyOnTimedText(null);
                 } else {
-                    IjkTimedText text = new IjkTimedText(new Rect(0, 0, 1, 1), (String)msg.obj);
+                    IjkTimedText text = new IjkTimedText(new Rect(0, 0, 1, 1), (String)obj);
                     player.notifyOnTimedText(text);
                 }
                 return;
             case MEDIA_NOP: // interface test message - ignore
                 break;
 
+            case MEDIA_SOURCE_SWITCHED:
+                OnSourceSwitchListener onSourceSwitchListener = player.mOnSourceSwitchListener;
+                if (onSourceSwitchListener != null)
+                    onSourceSwitchListener.onSourceSwitched(player, arg2, arg1);
+                return;
+
             case MEDIA_SET_VIDEO_SAR:
-                player.mVideoSarNum = msg.arg1;
-                player.mVideoSarDen = msg.arg2;
+                player.mVideoSarNum = arg1;
+                player.mVideoSarDen = arg2;
                 player.notifyOnVideoSizeChanged(player.mVideoWidth, player.mVideoHeight,
                         player.mVideoSarNum, player.mVideoSarDen);
                 break;
 
             default:
-                DebugLog.e(TAG, "Unknown message type " + msg.what);
+                DebugLog.e(TAG, "Unknown message type " + what);
             }
         }
     }
@@ -1095,17 +1338,76 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
             return;
         }
 
+        if (what == MEDIA_FRAME_AVAILABLE) {
+            // bypass the main looper, see OnFrameAvailableListener
+            FrameDispatcher dispatcher = mp.mFrameDispatcher;
+            if (dispatcher != null)
+                dispatcher.onFrameAvailable();
+            return;
+        }
+
         if (what == MEDIA_INFO && arg1 == MEDIA_INFO_STARTED_AS_NEXT) {
             // this acquires the wakelock if needed, and sets the client side
             // state
             mp.start();
         }
-        if (mp.mEventHandler != null) {
-            Message m = mp.mEventHandler.obtainMessage(what, arg1, arg2, obj);
-            mp.mEventHandler.sendMessage(m);
+        EventHandler handler = mp.mEventHandler;
+        if (handler != null) {
+            if (!mp.mEventQueue.offer(what, arg1, arg2, obj)) {
+                Message m = handler.obtainMessage(what, arg1, arg2, obj);
+                handler.sendMessage(m);
+            } else if (mp.mEventQueue.scheduleDrain()) {
+                handler.sendEmptyMessage(MEDIA_EVENT_BATCH);
+            }
         }
     }
 
+    // pushed again by reset(), the new native player starts with EVENT_MASK_ALL
+    private volatile int mEventMask = EVENT_MASK_ALL;
+
+    /**
+     * Stop native events of the given groups before they cross JNI.
+     * Prepared, completion, seek complete and error events are always sent.
+     *
+     * @param mask EVENT_MASK_* bits of the events to receive, EVENT_MASK_ALL by default
+     */
+    public void setEventMask(int mask) {
+        mEventMask = mask;
+        _setPropertyLong(FFP_PROP_INT64_EVENT_MASK, mask);
+    }
+
+    public int getEventMask() {
+        return mEventMask;
+    }
+
+    /**
+     * @return number of buffering, video size and sar events replaced by a
+     *         newer one before the event thread got to them
+     */
+    public long getCoalescedEventCount() {
+        return mEventQueue.getCoalescedCount();
+    }
+
+    /*
+     * SourceSwitch
+     */
+
+    private OnSourceSwitchListener mOnSourceSwitchListener;
+    public void setOnSourceSwitchListener(OnSourceSwitchListener listener) {
+        mOnSourceSwitchListener = listener;
+    }
+
+    public interface OnSourceSwitchListener {
+        // error of a switch replaced by a later switchDataSource() call, AVERROR(ECANCELED)
+        int ERROR_CANCELED = -125;
+
+        /*
+         * @param error     0 if the new source is playing, otherwise the old one still is
+         * @param elapsedMs from switchDataSource() to the new source being opened
+         */
+        void onSourceSwitched(IjkMediaPlayer mp, int error, int elapsedMs);
+    }
+
     /*
      * ControlMessage
      */
@@ -1113,19 +1415,115 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     private OnControlMessageListener mOnControlMessageListener;
     public void setOnControlMessageListener(OnControlMessageListener listener) {
         mOnControlMessageListener = listener;
+        updateNativeInvokeMask();
     }
 
     public interface OnControlMessageListener {
         String onControlResolveSegmentUrl(int segment);
     }
 
+    /*
+     * FrameAvailable
+     */
+
+    // deliver the latest frame, frames arriving while the listener is busy are dropped
+    public static final int FRAME_DELIVERY_LATEST_ONLY = 0;
+    // copy up to param frames ahead of the listener, dropping the oldest when full
+    public static final int FRAME_DELIVERY_BOUNDED_QUEUE = 1;
+    // deliver every param-th frame, latest-only otherwise
+    public static final int FRAME_DELIVERY_EVERY_NTH = 2;
+
+    private volatile FrameDispatcher mFrameDispatcher;
+
+    public interface OnFrameAvailableListener {
+        /*
+         * Called on a dedicated worker thread, never on the main thread.
+         * frame and its buffer are reused after this returns.
+         */
+        void onFrameAvailable(IjkMediaPlayer mp, IjkFrame frame);
+    }
+
+    public void setOnFrameAvailableListener(OnFrameAvailableListener listener) {
+        setOnFrameAvailableListener(listener, FRAME_DELIVERY_LATEST_ONLY, 0);
+    }
+
+    /**
+     * Push frames to listener as they are rendered, requires the
+     * "enable-get-frame" player option.
+     *
+     * @param listener the listener, or null to stop delivery
+     * @param policy   one of FRAME_DELIVERY_*
+     * @param param    queue capacity for FRAME_DELIVERY_BOUNDED_QUEUE,
+     *                 N for FRAME_DELIVERY_EVERY_NTH, ignored otherwise
+     */
+    public void setOnFrameAvailableListener(OnFrameAvailableListener listener, int policy, int param) {
+        synchronized (mFrameOutput) {
+            FrameDispatcher old = mFrameDispatcher;
+            mFrameDispatcher = listener != null ? new FrameDispatcher(this, listener, policy, param) : null;
+            if (old != null)
+                old.quit();
+        }
+        _setPropertyLong(FFP_PROP_INT64_FRAME_AVAILABLE_NOTIFY, listener != null ? 1 : 0);
+    }
+
+    /*
+     * @return number of frames the current listener did not receive
+     */
+    public long getDroppedFrameAvailableCount() {
+        FrameDispatcher dispatcher = mFrameDispatcher;
+        return dispatcher != null ? dispatcher.getDroppedCount() : 0;
+    }
+
     /*
      * NativeInvoke
      */
 
     private OnNativeInvokeListener mOnNativeInvokeListener;
+    private int mNativeInvokeMask = OnNativeInvokeListener.MASK_ALL;
     public void setOnNativeInvokeListener(OnNativeInvokeListener listener) {
+        setOnNativeInvokeListener(listener, OnNativeInvokeListener.MASK_ALL);
+    }
+
+    /*
+     * @param mask OnNativeInvokeListener.MASK_* of the calls the listener wants,
+     *             the others are not even built natively
+     */
+    public void setOnNativeInvokeListener(OnNativeInvokeListener listener, int mask) {
         mOnNativeInvokeListener = listener;
+        mNativeInvokeMask = mask;
+        updateNativeInvokeMask();
+    }
+
+    private void updateNativeInvokeMask() {
+        if (mNativeMediaPlayer == 0)
+            return;
+
+        int mask = mOnNativeInvokeListener != null ? mNativeInvokeMask : 0;
+        if (mOnControlMessageListener != null)
+            mask |= OnNativeInvokeListener.MASK_CTRL_WILL_CONCAT_RESOLVE_SEGMENT;
+        _setPropertyLong(FFP_PROP_INT64_NATIVE_INVOKE_MASK, mask);
+    }
+
+    /*
+     * @param what OnNativeInvokeListener.CTRL_* or EVENT_*
+     * @return times native raised it, whether or not it was delivered
+     */
+    public long getNativeInvokeCount(int what) {
+        int index;
+        switch (what) {
+            case OnNativeInvokeListener.CTRL_WILL_TCP_OPEN:                 index = 0; break;
+            case OnNativeInvokeListener.CTRL_DID_TCP_OPEN:                  index = 1; break;
+            case OnNativeInvokeListener.CTRL_WILL_HTTP_OPEN:                index = 2; break;
+            case OnNativeInvokeListener.CTRL_WILL_LIVE_OPEN:                index = 3; break;
+            case OnNativeInvokeListener.CTRL_WILL_CONCAT_RESOLVE_SEGMENT:   index = 4; break;
+            case OnNativeInvokeListener.EVENT_WILL_HTTP_OPEN:               index = 5; break;
+            case OnNativeInvokeListener.EVENT_DID_HTTP_OPEN:                index = 6; break;
+            case OnNativeInvokeListener.EVENT_WILL_HTTP_SEEK:               index = 7; break;
+            case OnNativeInvokeListener.EVENT_DID_HTTP_SEEK:                index = 8; break;
+            default:
+                throw new IllegalArgumentException("unknown native invoke " + what);
+        }
+        return _getPropertyLong(FFP_PROP_INT64_NATIVE_INVOKE_COUNT + index, 0);
     }
 
     public interface OnNativeInvokeListener {
@@ -1142,6 +1540,18 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         int EVENT_WILL_HTTP_SEEK = 0x3;                 // ARG_URL, ARG_OFFSET
         int EVENT_DID_HTTP_SEEK = 0x4;                  // ARG_URL, ARG_OFFSET, ARG_ERROR, ARG_HTTP_CODE, ARG_FILE_SIZE
 
+        // subscription bits, keep in sync with FFP_INVOKE_* in ff_ffmsg.h
+        int MASK_CTRL_WILL_TCP_OPEN = 1;
+        int MASK_CTRL_DID_TCP_OPEN = 1 << 1;
+        int MASK_CTRL_WILL_HTTP_OPEN = 1 << 2;
+        int MASK_CTRL_WILL_LIVE_OPEN = 1 << 3;
+        int MASK_CTRL_WILL_CONCAT_RESOLVE_SEGMENT = 1 << 4;
+        int MASK_EVENT_WILL_HTTP_OPEN = 1 << 5;
+        int MASK_EVENT_DID_HTTP_OPEN = 1 << 6;
+        int MASK_EVENT_WILL_HTTP_SEEK = 1 << 7;
+        int MASK_EVENT_DID_HTTP_SEEK = 1 << 8;
+        int MASK_ALL = ~0;
+
         String ARG_URL = "url";
         String ARG_SEGMENT_INDEX = "segment_index";
         String ARG_RETRY_COUNTER = "retry_counter";
@@ -1165,7 +1575,6 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     @CalledByNative
     private static boolean onNativeInvoke(Object weakThiz, int what, Bundle args) {
-        DebugLog.ifmt(TAG, "onNativeInvoke %d", what);
         if (weakThiz == null || !(weakThiz instanceof WeakReference<?>))
             throw new IllegalStateException("<null weakThiz>.onNativeInvoke()");
 
@@ -1216,6 +1625,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     public void resetListeners() {
         super.resetListeners();
         mOnMediaCodecSelectListener = null;
+        mOnSourceSwitchListener = null;
     }
 
     @CalledByNative
@@ -1233,71 +1643,54 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         if (listener == null)
             listener = DefaultMediaCodecSelector.sInstance;
 
-        return listener.onMediaCodecSelect(player, mimeType, profile, level);
+        String codecName = listener.onMediaCodecSelect(player, mimeType, profile, level);
+        if (codecName != null && !DecoderBudget.getInstance().onSelectCodec(player))
+            return null;
+        player.mSelectedCodecMime = mimeType;
+        player.mSelectedCodecProfile = profile;
+        player.mSelectedCodecLevel = level;
+        player.mSelectedCodecName = codecName;
+        return codecName;
+    }
+
+    // codec picked for the current stream, its throughput is reported before reset and release
+    private volatile String mSelectedCodecMime;
+    private volatile int mSelectedCodecProfile;
+    private volatile int mSelectedCodecLevel;
+    private volatile String mSelectedCodecName;
+
+    private void reportCodecThroughput() {
+        String codecName = mSelectedCodecName;
+        mSelectedCodecName = null;
+        MediaCodecSelectionCache cache = MediaCodecSelectionCache.getInstance();
+        if (codecName == null || !cache.isThroughputRefinementEnabled() || mNativeMediaPlayer == 0)
+            return;
+        if (getVideoDecoder() != FFP_PROPV_DECODER_MEDIACODEC)
+            return;
+        // nothing decoded, nothing learnt about the codec
+        if (getVideoDecodeFramesPerSecond() <= 0)
+            return;
+
+        // a ratio, unlike a frame or pixel rate it does not depend on the stream
+        float dropRate = _getPropertyFloat(FFP_PROP_FLOAT_DROP_FRAME_RATE, 0.0f);
+        cache.reportThroughput(mSelectedCodecMime, mSelectedCodecProfile, mSelectedCodecLevel, codecName, 1.0f - dropRate);
     }
 
+    // set by DecoderBudget, guarded by it
+    DecoderBudget.Entry mBudgetEntry;
+
+    /*
+     * Picks the best ranked codec, the candidates of each mime type are looked
+     * up once and kept by MediaCodecSelectionCache.
+     */
     public static class DefaultMediaCodecSelector implements OnMediaCodecSelectListener {
         public static final DefaultMediaCodecSelector sInstance = new DefaultMediaCodecSelector();
 
-        @SuppressWarnings("deprecation")
-        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
         public String onMediaCodecSelect(IMediaPlayer mp, String mimeType, int profile, int level) {
-            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
-                return null;
-
-            if (TextUtils.isEmpty(mimeType))
-                return null;
-
-            Log.i(TAG, String.format(Locale.US, "onSelectCodec: mime=%s, profile=%d, level=%d", mimeType, profile, level));
-            ArrayList<IjkMediaCodecInfo> candidateCodecList = new ArrayList<IjkMediaCodecInfo>();
-            int numCodecs = MediaCodecList.getCodecCount();
-            for (int i = 0; i < numCodecs; i++) {
-                MediaCodecInfo codecInfo = MediaCodecList.getCodecInfoAt(i);
-                Log.d(TAG, String.format(Locale.US, "  found codec: %s", codecInfo.getName()));
-                if (codecInfo.isEncoder())
-                    continue;
-
-                String[] types = codecInfo.getSupportedTypes();
-                if (types == null)
-                    continue;
-
-                for(String type: types) {
-                    if (TextUtils.isEmpty(type))
-                        continue;
-
-                    Log.d(TAG, String.format(Locale.US, "    mime: %s", type));
-                    if (!type.equalsIgnoreCase(mimeType))
-                        continue;
-
-                    IjkMediaCodecInfo candidate = IjkMediaCodecInfo.setupCandidate(codecInfo, mimeType);
-                    if (candidate == null)
-                        continue;
-
-                    candidateCodecList.add(candidate);
-                    Log.i(TAG, String.format(Locale.US, "candidate codec: %s rank=%d", codecInfo.getName(), candidate.mRank));
-                    candidate.dumpProfileLevels(mimeType);
-                }
-            }
-
-            if (candidateCodecList.isEmpty()) {
-                return null;
-            }
-
-            IjkMediaCodecInfo bestCodec = candidateCodecList.get(0);
-
-            for (IjkMediaCodecInfo codec : candidateCodecList) {
-                if (codec.mRank > bestCodec.mRank) {
-                    bestCodec = codec;
-                }
-            }
-
-            if (bestCodec.mRank < IjkMediaCodecInfo.RANK_LAST_CHANCE) {
-                Log.w(TAG, String.format(Locale.US, "unaccetable codec: %s", bestCodec.mCodecInfo.getName()));
-                return null;
-            }
-
-            Log.i(TAG, String.format(Locale.US, "selected codec: %s rank=%d", bestCodec.mCodecInfo.getName(), bestCodec.mRank));
-            return bestCodec.mCodecInfo.getName();
+            String codecName = MediaCodecSelectionCache.getInstance().select(mimeType, profile, level);
+            if (codecName == null)
+                Log.w(TAG, String.format(Locale.US, "no acceptable codec: mime=%s, profile=%d, level=%d", mimeType, profile, level));
+            return codecName;
         }
     }
 
@@ -1327,4 +1720,182 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         return frame;
     }
 
+    /*
+     * layout of the long[] filled by _getFrameInto(),
+     * keep in sync with ijkplayer_android_def.h
+     */
+    private static final int FRAME_INFO_WIDTH   = 0;
+    private static final int FRAME_INFO_HEIGHT  = 1;
+    private static final int FRAME_INFO_STRIDE  = 2;
+    private static final int FRAME_INFO_PTS     = 3;
+    private static final int FRAME_INFO_SIZE    = 4;
+    private static final int FRAME_INFO_FORMAT  = 5;
+    private static final int FRAME_INFO_TRACKING_COUNT = 6;
+    private static final int FRAME_INFO_COUNT   = 7;
+
+    private static final IjkFrame.PixelFormat[] PIXEL_FORMATS = IjkFrame.PixelFormat.values();
+
+    // filled by the frame reads, which may wait for a frame, guarded by mFrameInfo
+    private final long[] mFrameInfo = new long[FRAME_INFO_COUNT];
+    private final int[] mFrameTrackingRecords = new int[ObjectTrackingInfo.MAX_OBJECTS * ObjectTrackingInfo.RECORD_SIZE];
+    // filled by getTrackingInfo(), guarded by mTrackingPts
+    private final int[] mTrackingRecords = new int[ObjectTrackingInfo.MAX_OBJECTS * ObjectTrackingInfo.RECORD_SIZE];
+    private final long[] mTrackingPts = new long[1];
+    // format, width, height, crop x, y, width, height last passed to _setFrameOutput(), applied again by reset(),
+    // guarded by mFrameOutput, which is never held while a read waits for a frame
+    private final int[] mFrameOutput = new int[7];
+
+    /*
+     * @return the number of records written, < 0 if no picture has been displayed
+     */
+    private native int _getTrackingInfo(int[] records, long[] pts);
+
+    /**
+     * Tracking info of the picture on screen. The SEI metadata is parsed
+     * natively when it is demuxed, this works without "enable-get-frame".
+     *
+     * @return the detected objects, empty if there are none
+     */
+    public List<ObjectTrackingInfo> getTrackingInfo() {
+        List<ObjectTrackingInfo> info = new ArrayList<ObjectTrackingInfo>();
+        getTrackingInfo(info);
+        return info;
+    }
+
+    /**
+     * Same as {@link #getTrackingInfo()}, filling a caller-owned list
+     * whose objects are reused.
+     *
+     * @param reuse receives the detected objects
+     * @return pts in milliseconds of the picture on screen, -1 if none has been displayed
+     */
+    public long getTrackingInfo(List<ObjectTrackingInfo> reuse) {
+        if (reuse == null)
+            throw new IllegalArgumentException("reuse must not be null");
+
+        synchronized (mTrackingPts) {
+            int count = _getTrackingInfo(mTrackingRecords, mTrackingPts);
+            ObjectTrackingInfo.unpack(mTrackingRecords, Math.max(count, 0), reuse);
+            return count < 0 ? -1 : mTrackingPts[0];
+        }
+    }
+
+    private native void _setFrameOutput(int format, int width, int height, int cropX, int cropY, int cropWidth, int cropHeight);
+
+    /**
+     * Set pixel format, size and crop of the frames returned by getFrame()
+     * and passed to OnFrameAvailableListener. Takes effect with the next
+     * rendered frame.
+     *
+     * @param options the output, or null for full size RGBA
+     */
+    public void setFrameOptions(IjkFrameOptions options) {
+        int format = options != null ? options.pixelFormat.ordinal() : 0;
+        int width = options != null ? options.width : 0;
+        int height = options != null ? options.height : 0;
+        tv.danmaku.ijk.media.player.misc.Rect crop = options != null ? options.crop : null;
+        int cropX = crop != null ? crop.x : 0;
+        int cropY = crop != null ? crop.y : 0;
+        int cropWidth = crop != null ? crop.width : 0;
+        int cropHeight = crop != null ? crop.height : 0;
+
+        synchronized (mFrameOutput) {
+            int[] o = mFrameOutput;
+            if (o[0] == format && o[1] == width && o[2] == height &&
+                    o[3] == cropX && o[4] == cropY && o[5] == cropWidth && o[6] == cropHeight)
+                return;
+
+            _setFrameOutput(format, width, height, cropX, cropY, cropWidth, cropHeight);
+            o[0] = format;
+            o[1] = width;
+            o[2] = height;
+            o[3] = cropX;
+            o[4] = cropY;
+            o[5] = cropWidth;
+            o[6] = cropHeight;
+        }
+    }
+
+    /**
+     * Same as {@link #getFrame(IjkFrame)}, applying options first.
+     * Changing options makes this call wait for the next rendered frame.
+     */
+    public IjkFrame getFrame(IjkFrame reuse, IjkFrameOptions options) {
+        setFrameOptions(options);
+        return getFrame(reuse);
+    }
+
+    /*
+     * @return < 0 if no frame is available or none was rendered in time after a request,
+     *         0 if the frame was copied into dst,
+     *         otherwise the size in bytes dst must have to hold the frame
+     */
+    private native int _getFrameInto(ByteBuffer dst, long[] info, int[] tracking);
+
+    /**
+     * Copy the latest frame into a caller-owned direct buffer, in the
+     * layout set by {@link #setFrameOptions(IjkFrameOptions)}.
+     * Unlike {@link #getFrame()}, no pixel array is allocated.
+     *
+     * @param dst   a direct buffer, on success its position is 0 and its limit the frame size
+     * @param frame receives width, height, stride, pts and tracking info, may be null
+     * @return true if a frame was copied, false if no frame is available or dst is too small,
+     *         a frame which was not read for a while is only copied if a new one is rendered within 100 ms
+     */
+    public boolean getFrame(ByteBuffer dst, IjkFrame frame) {
+        if (dst == null || !dst.isDirect())
+            throw new IllegalArgumentException("dst must be a direct ByteBuffer");
+
+        synchronized (mFrameInfo) {
+            int ret = _getFrameInto(dst, mFrameInfo, mFrameTrackingRecords);
+            if (ret != 0)
+                return false;
+
+            dst.clear();
+            dst.limit((int) mFrameInfo[FRAME_INFO_SIZE]);
+            if (frame != null)
+                fillFrameLocked(frame, dst);
+            return true;
+        }
+    }
+
+    /**
+     * Copy the latest frame into {@code reuse.buffer}, which is grown
+     * only when the frame size increases.
+     *
+     * @param reuse a holder from a previous call, or null to create one
+     * @return the holder, or null if no frame is available
+     */
+    public IjkFrame getFrame(IjkFrame reuse) {
+        IjkFrame frame = reuse != null ? reuse : new IjkFrame();
+
+        synchronized (mFrameInfo) {
+            ByteBuffer dst = frame.buffer != null && frame.buffer.isDirect() ? frame.buffer : frame.reuse(0);
+            int ret = _getFrameInto(dst, mFrameInfo, mFrameTrackingRecords);
+            if (ret > 0) {
+                // video size changed, grow the buffer and try once more
+                dst = frame.reuse(ret);
+                ret = _getFrameInto(dst, mFrameInfo, mFrameTrackingRecords);
+            }
+            if (ret != 0)
+                return null;
+
+            dst.clear();
+            dst.limit((int) mFrameInfo[FRAME_INFO_SIZE]);
+            fillFrameLocked(frame, dst);
+            return frame;
+        }
+    }
+
+    private void fillFrameLocked(IjkFrame frame, ByteBuffer dst) {
+        frame.pixels = null;
+        frame.buffer = dst;
+        frame.width = (int) mFrameInfo[FRAME_INFO_WIDTH];
+        frame.height = (int) mFrameInfo[FRAME_INFO_HEIGHT];
+        frame.stride = (int) mFrameInfo[FRAME_INFO_STRIDE];
+        frame.pts = mFrameInfo[FRAME_INFO_PTS];
+        frame.pixelFormat = PIXEL_FORMATS[(int) mFrameInfo[FRAME_INFO_FORMAT]];
+        frame.trackingInfo = ObjectTrackingInfo.unpack(mFrameTrackingRecords,
+                (int) mFrameInfo[FRAME_INFO_TRACKING_COUNT], frame.trackingInfo);
+    }
 }
@@ -0,0 +1,145 @@
+package tv.danmaku.ijk.media.player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable set of options, parsed once into native dictionaries and
+ * applied to a player with {@link IjkMediaPlayer#setOptions(IjkPlayerOptions)}
+ * in a single call, instead of one setOption() call per option.
+ *
+ * An instance may be shared by any number of players and threads.
+ */
+public final class IjkPlayerOptions {
+    public static final class Builder {
+        private final ArrayList<Integer> mCategories = new ArrayList<Integer>();
+        private final ArrayList<String> mNames = new ArrayList<String>();
+        private final ArrayList<String> mValues = new ArrayList<String>();
+
+        /**
+         * @param category IjkMediaPlayer.OPT_CATEGORY_*
+         * @param value    null removes name set before
+         */
+        public Builder setOption(int category, String name, String value) {
+            if (name == null)
+                throw new IllegalArgumentException("null option name");
+
+            mCategories.add(category);
+            mNames.add(name);
+            mValues.add(value);
+            return this;
+        }
+
+        public Builder setOption(int category, String name, long value) {
+            return setOption(category, name, Long.toString(value));
+        }
+
+        /**
+         * Parses the options into their native form.
+         *
+         * @throws IllegalArgumentException if a category is invalid
+         */
+        public IjkPlayerOptions build() {
+            return new IjkPlayerOptions(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Builder))
+                return false;
+
+            Builder other = (Builder) o;
+            return mCategories.equals(other.mCategories) &&
+                    mNames.equals(other.mNames) &&
+                    mValues.equals(other.mValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mCategories.hashCode() * 31 + mNames.hashCode()) * 31 + mValues.hashCode();
+        }
+    }
+
+    private final long mNativeOptions;
+    private final int mCount;
+    private final List<String> mUnknownOptions;
+    private final List<String> mOverriddenOptions;
+
+    private IjkPlayerOptions(Builder builder) {
+        IjkMediaPlayer.loadLibrariesOnce(null);
+
+        int count = builder.mNames.size();
+        int[] categories = new int[count];
+        String[] names = builder.mNames.toArray(new String[count]);
+        String[] values = builder.mValues.toArray(new String[count]);
+        boolean[] unknown = new boolean[count];
+        for (int i = 0; i < count; i++)
+            categories[i] = builder.mCategories.get(i);
+
+        mNativeOptions = IjkMediaPlayer.native_compileOptions(categories, names, values, unknown);
+        mCount = count;
+
+        ArrayList<String> unknownOptions = new ArrayList<String>();
+        ArrayList<String> overriddenOptions = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            if (unknown[i])
+                unknownOptions.add(describe(categories[i], names[i]));
+            // a later setOption() of the same name wins
+            for (int j = i + 1; j < count; j++) {
+                if (categories[j] == categories[i] && names[j].equals(names[i])) {
+                    overriddenOptions.add(describe(categories[i], names[i]));
+                    break;
+                }
+            }
+        }
+        mUnknownOptions = Collections.unmodifiableList(unknownOptions);
+        mOverriddenOptions = Collections.unmodifiableList(overriddenOptions);
+    }
+
+    private static String describe(int category, String name) {
+        switch (category) {
+            case IjkMediaPlayer.OPT_CATEGORY_FORMAT:    return "format:" + name;
+            case IjkMediaPlayer.OPT_CATEGORY_CODEC:     return "codec:" + name;
+            case IjkMediaPlayer.OPT_CATEGORY_SWS:       return "sws:" + name;
+            case IjkMediaPlayer.OPT_CATEGORY_PLAYER:    return "player:" + name;
+            default:                                    return category + ":" + name;
+        }
+    }
+
+    long getNativeOptions() {
+        return mNativeOptions;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return "category:name" of the options no demuxer, protocol, decoder or
+     *         player of this build knows about, they are passed on anyway and
+     *         most likely ignored
+     */
+    public List<String> getUnknownOptions() {
+        return mUnknownOptions;
+    }
+
+    /**
+     * @return "category:name" of the options set again later in the builder,
+     *         only the last value is used
+     */
+    public List<String> getOverriddenOptions() {
+        return mOverriddenOptions;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            IjkMediaPlayer.native_freeOptions(mNativeOptions);
+        } finally {
+            super.finalize();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package tv.danmaku.ijk.media.player;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps reset IjkMediaPlayers with their options already applied, so that
+ * switching streams does not pay for native setup and teardown.
+ *
+ * A returned player is reset on the shared reaper threads and becomes
+ * available again once that is done. Use a pool from a single looper thread,
+ * players deliver their events to the looper they were created on.
+ */
+public class IjkPlayerPool {
+    public interface Initializer {
+        /*
+         * Applies options to a new or reset player.
+         */
+        void onInitPlayer(IjkMediaPlayer mp);
+    }
+
+    public static class Stats {
+        public int idleCount;
+        public int resettingCount;
+        public long pooledAcquireCount;
+        public long pooledAcquireTotalNs;
+        public long coldAcquireCount;
+        public long coldAcquireTotalNs;     // constructor and Initializer
+        public long trimmedCount;
+
+        public long getAveragePooledAcquireNs() {
+            return pooledAcquireCount > 0 ? pooledAcquireTotalNs / pooledAcquireCount : 0;
+        }
+
+        public long getAverageColdAcquireNs() {
+            return coldAcquireCount > 0 ? coldAcquireTotalNs / coldAcquireCount : 0;
+        }
+    }
+
+    private final int mMaxSize;
+    private final Initializer mInitializer;
+
+    // guarded by this
+    private final ArrayDeque<IjkMediaPlayer> mIdle = new ArrayDeque<IjkMediaPlayer>();
+    private int mResetting;
+    private boolean mClosed;
+    private long mPooledAcquireCount;
+    private long mPooledAcquireTotalNs;
+    private long mColdAcquireCount;
+    private long mColdAcquireTotalNs;
+    private long mTrimmedCount;
+
+    private final IjkMediaPlayer.OnReleaseCompleteListener mOnResetComplete =
+            new IjkMediaPlayer.OnReleaseCompleteListener() {
+        @Override
+        public void onReleaseComplete(IjkMediaPlayer mp, long elapsedMs) {
+            onResetComplete(mp);
+        }
+    };
+
+    /**
+     * @param maxSize     most players kept, idle or being reset
+     * @param initializer applies options to every new or reset player, may be null
+     */
+    public IjkPlayerPool(int maxSize, Initializer initializer) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("invalid pool size " + maxSize);
+
+        mMaxSize = maxSize;
+        mInitializer = initializer;
+    }
+
+    /**
+     * Creates players up to count idle ones, on the calling thread.
+     */
+    public void prewarm(int count) {
+        count = Math.min(count, mMaxSize);
+        while (true) {
+            synchronized (this) {
+                if (mClosed || mIdle.size() + mResetting >= count)
+                    return;
+            }
+
+            IjkMediaPlayer mp = createPlayer();
+            synchronized (this) {
+                if (mClosed || mIdle.size() + mResetting >= mMaxSize) {
+                    mp.releaseAsync(null);
+                    return;
+                }
+                mIdle.push(mp);
+            }
+        }
+    }
+
+    /**
+     * @return an idle player, or a new one if there is none
+     */
+    public IjkMediaPlayer acquire() {
+        long startTime = System.nanoTime();
+        synchronized (this) {
+            IjkMediaPlayer mp = mIdle.poll();
+            if (mp != null) {
+                mPooledAcquireCount++;
+                mPooledAcquireTotalNs += System.nanoTime() - startTime;
+                return mp;
+            }
+        }
+
+        IjkMediaPlayer mp = createPlayer();
+        synchronized (this) {
+            mColdAcquireCount++;
+            mColdAcquireTotalNs += System.nanoTime() - startTime;
+        }
+        return mp;
+    }
+
+    /**
+     * Gives a player back to the pool, or releases it if the pool is full.
+     * The caller must not use it anymore.
+     */
+    public void recycle(IjkMediaPlayer mp) {
+        synchronized (this) {
+            if (mClosed || mIdle.size() + mResetting >= mMaxSize) {
+                mp.releaseAsync(null);
+                return;
+            }
+            mResetting++;
+        }
+        mp.resetAsync(mOnResetComplete);
+    }
+
+    private void onResetComplete(IjkMediaPlayer mp) {
+        if (mInitializer != null)
+            mInitializer.onInitPlayer(mp);
+
+        synchronized (this) {
+            mResetting--;
+            if (!mClosed && mIdle.size() < mMaxSize) {
+                mIdle.push(mp);
+                return;
+            }
+        }
+        mp.releaseAsync(null);
+    }
+
+    /**
+     * Releases idle players until at most maxIdle are left.
+     */
+    public void trimToSize(int maxIdle) {
+        while (true) {
+            IjkMediaPlayer mp;
+            synchronized (this) {
+                if (mIdle.size() <= maxIdle)
+                    return;
+                // least recently used first
+                mp = mIdle.pollLast();
+                mTrimmedCount++;
+            }
+            mp.releaseAsync(null);
+        }
+    }
+
+    /**
+     * Call from ComponentCallbacks2.onTrimMemory().
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            int idle;
+            synchronized (this) {
+                idle = mIdle.size();
+            }
+            trimToSize(idle / 2);
+        }
+    }
+
+    /**
+     * Releases all idle players, players recycled later are released as well.
+     */
+    public void close() {
+        synchronized (this) {
+            mClosed = true;
+        }
+        trimToSize(0);
+    }
+
+    public synchronized void getStats(Stats stats) {
+        stats.idleCount = mIdle.size();
+        stats.resettingCount = mResetting;
+        stats.pooledAcquireCount = mPooledAcquireCount;
+        stats.pooledAcquireTotalNs = mPooledAcquireTotalNs;
+        stats.coldAcquireCount = mColdAcquireCount;
+        stats.coldAcquireTotalNs = mColdAcquireTotalNs;
+        stats.trimmedCount = mTrimmedCount;
+    }
+
+    private IjkMediaPlayer createPlayer() {
+        IjkMediaPlayer mp = new IjkMediaPlayer();
+        if (mInitializer != null)
+            mInitializer.onInitPlayer(mp);
+        return mp;
+    }
+}
@@ -0,0 +1,438 @@
+package tv.danmaku.ijk.media.player;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Remembers the ranked MediaCodec candidates of each stream class, the mime
+ * type, profile and level the decoder is opened for, so that
+ * {@link IjkMediaPlayer.DefaultMediaCodecSelector} walks MediaCodecList once
+ * per class and process, or once per build fingerprint with
+ * {@link #enablePersistence}.
+ *
+ * With {@link #setThroughputRefinement(boolean)}, players report how well their
+ * MediaCodec kept up with the stream when they are reset or released, as the
+ * share of frames it decoded in time. Scores are kept per class as well, so
+ * that a codec is only compared on streams of the same class. Every
+ * EXPLORE_INTERVAL-th selection of a class tries a candidate with too few
+ * samples, and a candidate which clearly kept up better than the best ranked
+ * one is selected instead. Scores need the "framedrop" player option, without
+ * it every codec scores 1 and the ranking stays.
+ */
+public final class MediaCodecSelectionCache {
+    private static final String TAG = MediaCodecSelectionCache.class.getName();
+
+    private static final String FILE_NAME = "ijk_mediacodec_selection";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_VERSION = "version";
+    private static final String VERSION = "3";
+    private static final String PREFIX_CANDIDATES = "c.";
+    private static final String PREFIX_SCORE = "s.";
+
+    // a measured candidate must keep up with this larger share of frames to replace the best ranked one
+    private static final float SCORE_MARGIN = 0.05f;
+    // weight of a new sample in the moving average
+    private static final float SCORE_ALPHA = 0.25f;
+    // sessions a candidate is sampled before its score counts
+    private static final int MIN_SAMPLES = 3;
+    // one in this many selections of a class samples a candidate with less than MIN_SAMPLES
+    private static final int EXPLORE_INTERVAL = 4;
+
+    private static final MediaCodecSelectionCache sInstance = new MediaCodecSelectionCache();
+
+    public static MediaCodecSelectionCache getInstance() {
+        return sInstance;
+    }
+
+    private static final class Candidate {
+        final String mName;
+        final int mRank;
+
+        Candidate(String name, int rank) {
+            mName = name;
+            mRank = rank;
+        }
+    }
+
+    private static final class Score {
+        float mAverage;
+        int mCount;
+    }
+
+    // guarded by this
+    private final Map<String, Candidate[]> mCandidates = new HashMap<String, Candidate[]>();
+    private final Map<String, Score> mScores = new HashMap<String, Score>();
+    // selections of each class since the process started
+    private final Map<String, Integer> mSelectionCount = new HashMap<String, Integer>();
+    private File mFile;
+    private boolean mLoaded;
+    private boolean mSavePending;
+    private boolean mRefine;
+    private long mHitCount;
+    private long mMissCount;
+
+    private final ExecutorService mSaveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ijk-codec-cache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private MediaCodecSelectionCache() {
+    }
+
+    /**
+     * Keeps the cache in the cache directory of context, it is dropped when
+     * the build fingerprint of the device changes. Call once, before the
+     * first player is prepared.
+     */
+    public synchronized void enablePersistence(Context context) {
+        mFile = new File(context.getCacheDir(), FILE_NAME);
+        mLoaded = false;
+    }
+
+    public synchronized void setThroughputRefinement(boolean enable) {
+        mRefine = enable;
+    }
+
+    synchronized boolean isThroughputRefinementEnabled() {
+        return mRefine;
+    }
+
+    /**
+     * Forgets all candidates and measurements, including the persisted ones.
+     */
+    public synchronized void clear() {
+        mCandidates.clear();
+        mScores.clear();
+        mSelectionCount.clear();
+        scheduleSave();
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the name of the codec to use for mimeType, null if there is no
+     *         acceptable one
+     */
+    public String select(String mimeType) {
+        return select(mimeType, 0, 0);
+    }
+
+    /**
+     * @param profile codec profile of the stream, with level its class for throughput refinement
+     * @param level   codec level of the stream
+     * @return the name of the codec to use for mimeType, null if there is no
+     *         acceptable one
+     */
+    public String select(String mimeType, int profile, int level) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return null;
+
+        if (TextUtils.isEmpty(mimeType))
+            return null;
+
+        String key = classKey(mimeType.toLowerCase(Locale.US), profile, level);
+        Candidate[] candidates;
+        synchronized (this) {
+            load();
+            candidates = mCandidates.get(key);
+            if (candidates != null)
+                mHitCount++;
+        }
+
+        if (candidates == null) {
+            // scanning is slow, do it outside of the lock
+            candidates = scan(mimeType);
+            synchronized (this) {
+                mMissCount++;
+                mCandidates.put(key, candidates);
+                scheduleSave();
+            }
+        }
+
+        if (candidates.length == 0 || candidates[0].mRank < IjkMediaCodecInfo.RANK_LAST_CHANCE)
+            return null;
+
+        synchronized (this) {
+            if (!mRefine)
+                return candidates[0].mName;
+            return refine(key, candidates).mName;
+        }
+    }
+
+    // guarded by this
+    private Candidate refine(String classKey, Candidate[] candidates) {
+        Integer selections = mSelectionCount.get(classKey);
+        int selection = selections != null ? selections : 0;
+        mSelectionCount.put(classKey, selection + 1);
+
+        if (selection % EXPLORE_INTERVAL == EXPLORE_INTERVAL - 1) {
+            // the least sampled candidate, only the selected codec ever reports a score
+            Candidate sample = null;
+            int sampleCount = MIN_SAMPLES;
+            for (Candidate candidate : candidates) {
+                if (candidate.mRank < IjkMediaCodecInfo.RANK_LAST_CHANCE)
+                    break;
+                Score score = mScores.get(scoreKey(classKey, candidate.mName));
+                int count = score != null ? score.mCount : 0;
+                if (count < sampleCount) {
+                    sample = candidate;
+                    sampleCount = count;
+                }
+            }
+            if (sample != null)
+                return sample;
+        }
+
+        Candidate best = candidates[0];
+        Score bestScore = mScores.get(scoreKey(classKey, best.mName));
+        if (bestScore == null || bestScore.mCount < MIN_SAMPLES)
+            return best;
+        for (Candidate candidate : candidates) {
+            if (candidate.mRank < IjkMediaCodecInfo.RANK_LAST_CHANCE)
+                break;
+            Score score = mScores.get(scoreKey(classKey, candidate.mName));
+            if (score != null && score.mCount >= MIN_SAMPLES &&
+                    score.mAverage > bestScore.mAverage + SCORE_MARGIN) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Records how well codecName kept up with a stream of mimeType, profile
+     * and level in a session, only used with throughput refinement.
+     *
+     * @param keptUpRatio share of the decoded frames which were not dropped for being late
+     */
+    public synchronized void reportThroughput(String mimeType, int profile, int level, String codecName, float keptUpRatio) {
+        if (!mRefine || TextUtils.isEmpty(mimeType) || TextUtils.isEmpty(codecName) ||
+                keptUpRatio < 0 || keptUpRatio > 1)
+            return;
+
+        load();
+        String key = scoreKey(classKey(mimeType.toLowerCase(Locale.US), profile, level), codecName);
+        Score score = mScores.get(key);
+        if (score == null) {
+            score = new Score();
+            score.mAverage = keptUpRatio;
+            mScores.put(key, score);
+        } else {
+            score.mAverage += (keptUpRatio - score.mAverage) * SCORE_ALPHA;
+        }
+        score.mCount++;
+        scheduleSave();
+    }
+
+    private static String classKey(String mimeKey, int profile, int level) {
+        return mimeKey + "@" + profile + "." + level;
+    }
+
+    private static String scoreKey(String classKey, String codecName) {
+        return classKey + "/" + codecName;
+    }
+
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Candidate[] scan(String mimeType) {
+        long startTime = System.nanoTime();
+        ArrayList<Candidate> list = new ArrayList<Candidate>();
+        int numCodecs = MediaCodecList.getCodecCount();
+        for (int i = 0; i < numCodecs; i++) {
+            MediaCodecInfo codecInfo = MediaCodecList.getCodecInfoAt(i);
+            if (codecInfo.isEncoder())
+                continue;
+
+            String[] types = codecInfo.getSupportedTypes();
+            if (types == null)
+                continue;
+
+            for (String type : types) {
+                if (TextUtils.isEmpty(type) || !type.equalsIgnoreCase(mimeType))
+                    continue;
+
+                IjkMediaCodecInfo candidate = IjkMediaCodecInfo.setupCandidate(codecInfo, mimeType);
+                if (candidate != null)
+                    list.add(new Candidate(codecInfo.getName(), candidate.mRank));
+            }
+        }
+
+        // stable, keeps MediaCodecList order among equal ranks
+        Candidate[] candidates = list.toArray(new Candidate[list.size()]);
+        for (int i = 1; i < candidates.length; i++) {
+            Candidate c = candidates[i];
+            int j = i - 1;
+            for (; j >= 0 && candidates[j].mRank < c.mRank; j--)
+                candidates[j + 1] = candidates[j];
+            candidates[j + 1] = c;
+        }
+
+        Log.i(TAG, "scanned " + numCodecs + " codecs for " + mimeType + " in " +
+                (System.nanoTime() - startTime) / 1000000 + "ms, " + candidates.length + " candidates");
+        return candidates;
+    }
+
+    // guarded by this
+    private void load() {
+        if (mLoaded || mFile == null)
+            return;
+        mLoaded = true;
+
+        Properties props = new Properties();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            props.load(in);
+        } catch (IOException e) {
+            return;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        if (!VERSION.equals(props.getProperty(KEY_VERSION)) ||
+                !Build.FINGERPRINT.equals(props.getProperty(KEY_FINGERPRINT))) {
+            Log.i(TAG, "dropping codec selection cache of another build");
+            return;
+        }
+
+        for (String name : props.stringPropertyNames()) {
+            String value = props.getProperty(name);
+            try {
+                if (name.startsWith(PREFIX_CANDIDATES)) {
+                    String key = name.substring(PREFIX_CANDIDATES.length());
+                    if (!mCandidates.containsKey(key))
+                        mCandidates.put(key, parseCandidates(value));
+                } else if (name.startsWith(PREFIX_SCORE)) {
+                    String key = name.substring(PREFIX_SCORE.length());
+                    if (!mScores.containsKey(key))
+                        mScores.put(key, parseScore(value));
+                }
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "invalid entry " + name);
+            }
+        }
+    }
+
+    // "average:count"
+    private static Score parseScore(String value) {
+        int colon = value.indexOf(':');
+        if (colon <= 0)
+            throw new NumberFormatException(value);
+        Score score = new Score();
+        score.mAverage = Float.parseFloat(value.substring(0, colon));
+        score.mCount = Integer.parseInt(value.substring(colon + 1));
+        return score;
+    }
+
+    // "name:rank,name:rank", in rank order
+    private static Candidate[] parseCandidates(String value) {
+        if (TextUtils.isEmpty(value))
+            return new Candidate[0];
+
+        String[] items = value.split(",");
+        Candidate[] candidates = new Candidate[items.length];
+        for (int i = 0; i < items.length; i++) {
+            int colon = items[i].lastIndexOf(':');
+            if (colon <= 0)
+                throw new NumberFormatException(items[i]);
+            candidates[i] = new Candidate(items[i].substring(0, colon),
+                    Integer.parseInt(items[i].substring(colon + 1)));
+        }
+        return candidates;
+    }
+
+    // guarded by this
+    private void scheduleSave() {
+        if (mFile == null || mSavePending)
+            return;
+        mSavePending = true;
+
+        mSaveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    private void save() {
+        Properties props = new Properties();
+        File file;
+        synchronized (this) {
+            mSavePending = false;
+            file = mFile;
+            props.setProperty(KEY_VERSION, VERSION);
+            props.setProperty(KEY_FINGERPRINT, Build.FINGERPRINT);
+            for (Map.Entry<String, Candidate[]> entry : mCandidates.entrySet()) {
+                StringBuilder sb = new StringBuilder();
+                for (Candidate candidate : entry.getValue()) {
+                    if (sb.length() > 0)
+                        sb.append(',');
+                    sb.append(candidate.mName).append(':').append(candidate.mRank);
+                }
+                props.setProperty(PREFIX_CANDIDATES + entry.getKey(), sb.toString());
+            }
+            for (Map.Entry<String, Score> entry : mScores.entrySet()) {
+                Score score = entry.getValue();
+                props.setProperty(PREFIX_SCORE + entry.getKey(), score.mAverage + ":" + score.mCount);
+            }
+        }
+
+        // write a temporary file first, a crash must not leave half a cache behind
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            props.store(out, null);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file))
+                Log.w(TAG, "failed to rename " + tmp);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to save codec selection cache", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
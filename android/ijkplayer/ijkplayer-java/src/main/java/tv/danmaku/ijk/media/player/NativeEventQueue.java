@@ -0,0 +1,165 @@
+package tv.danmaku.ijk.media.player;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Single producer, single consumer ring of events from the native message loop
+ * to the EventHandler thread, so that a burst of events costs one Message.
+ *
+ * Events which only carry the latest state (buffering position, video size and
+ * sar) replace the previous event of their kind while it is the last one of the
+ * ring and was not taken yet, so every event keeps its place in arrival order.
+ *
+ * clear() may be called from any thread, it only moves a mark the consumer
+ * skips to on its next poll().
+ */
+final class NativeEventQueue {
+    private static final int CAPACITY = 64;     // power of 2
+    private static final int MASK = CAPACITY - 1;
+    // value of a coalesced slot the consumer took
+    private static final long TAKEN = Long.MIN_VALUE;
+
+    private final int[] mWhat = new int[CAPACITY];
+    private final int[] mArg1 = new int[CAPACITY];
+    private final int[] mArg2 = new int[CAPACITY];
+    private final Object[] mObj = new Object[CAPACITY];
+    // arg1 and arg2 of coalesced events, the producer replaces them until the consumer takes them
+    private final AtomicLongArray mLatest = new AtomicLongArray(CAPACITY);
+
+    // mTail is only written by the producer, mHead only by the consumer
+    private volatile int mHead;
+    private volatile int mTail;
+    // events below it are dropped, only raised by clear()
+    private final AtomicInteger mClearedTail = new AtomicInteger();
+
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+    // only touched by the producer
+    private int mLastWhat;
+    private volatile long mCoalescedCount;
+    private volatile long mOverflowCount;
+
+    static final class Event {
+        int what;
+        int arg1;
+        int arg2;
+        Object obj;
+    }
+
+    private static long pack(int arg1, int arg2) {
+        return ((long) arg1 << 32) | (arg2 & 0xFFFFFFFFL);
+    }
+
+    private static boolean isCoalesced(int what) {
+        return what == IjkMediaPlayer.MEDIA_BUFFERING_UPDATE ||
+                what == IjkMediaPlayer.MEDIA_SET_VIDEO_SIZE ||
+                what == IjkMediaPlayer.MEDIA_SET_VIDEO_SAR;
+    }
+
+    /*
+     * Called by the producer.
+     * @return false if the ring is full, the caller has to deliver the event itself,
+     *         which may then overtake events offered later
+     */
+    boolean offer(int what, int arg1, int arg2, Object obj) {
+        int tail = mTail;
+        boolean coalesced = isCoalesced(what);
+        if (coalesced && mLastWhat == what && tail - 1 - mClearedTail.get() >= 0) {
+            int last = (tail - 1) & MASK;
+            long prev = mLatest.get(last);
+            // fails once the consumer took it, the event is queued after it then
+            if (prev != TAKEN && mLatest.compareAndSet(last, prev, pack(arg1, arg2))) {
+                mCoalescedCount++;
+                return true;
+            }
+        }
+
+        if (tail - mHead >= CAPACITY) {
+            mOverflowCount++;
+            return false;
+        }
+
+        int i = tail & MASK;
+        mWhat[i] = what;
+        mArg1[i] = arg1;
+        mArg2[i] = arg2;
+        mObj[i] = obj;
+        if (coalesced)
+            mLatest.set(i, pack(arg1, arg2));
+        mLastWhat = what;
+        mTail = tail + 1;
+        return true;
+    }
+
+    /*
+     * Called by the producer after offer().
+     * @return true if the consumer has to be woken up to drain the queue
+     */
+    boolean scheduleDrain() {
+        return mDrainScheduled.compareAndSet(false, true);
+    }
+
+    /*
+     * Called by the consumer before the first poll() of a batch, events
+     * offered from now on schedule another batch.
+     */
+    void beginDrain() {
+        mDrainScheduled.set(false);
+    }
+
+    /*
+     * Called by the consumer.
+     * @return false if there is nothing left
+     */
+    boolean poll(Event out) {
+        int head = mHead;
+        int cleared = mClearedTail.get();
+        if (cleared - head > 0) {
+            for (; head != cleared; head++)
+                mObj[head & MASK] = null;
+            mHead = head;
+        }
+        if (head == mTail)
+            return false;
+
+        int i = head & MASK;
+        out.what = mWhat[i];
+        if (isCoalesced(out.what)) {
+            long value = mLatest.getAndSet(i, TAKEN);
+            out.arg1 = (int) (value >> 32);
+            out.arg2 = (int) value;
+        } else {
+            out.arg1 = mArg1[i];
+            out.arg2 = mArg2[i];
+        }
+        out.obj = mObj[i];
+        mObj[i] = null;
+        mHead = head + 1;
+        return true;
+    }
+
+    /*
+     * Drops everything offered so far, from any thread. An event offered
+     * meanwhile may be dropped or not.
+     */
+    void clear() {
+        // first, an event offered from now on schedules a batch of its own
+        mDrainScheduled.set(false);
+        int tail = mTail;
+        while (true) {
+            int cleared = mClearedTail.get();
+            if (tail - cleared <= 0 || mClearedTail.compareAndSet(cleared, tail))
+                return;
+        }
+    }
+
+    long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    long getOverflowCount() {
+        return mOverflowCount;
+    }
+}
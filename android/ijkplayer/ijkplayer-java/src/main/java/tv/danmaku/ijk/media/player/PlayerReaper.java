@@ -0,0 +1,141 @@
+package tv.danmaku.ijk.media.player;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import tv.danmaku.ijk.media.player.pragma.DebugLog;
+
+/*
+ * Shared background threads tearing down players released with
+ * IjkMediaPlayer.releaseAsync() or recycled by IjkPlayerPool, at most
+ * MAX_CONCURRENT at a time so that a burst of releases does not start a burst
+ * of native shutdowns.
+ */
+final class PlayerReaper {
+    private static final String TAG = PlayerReaper.class.getName();
+
+    private static final int MAX_CONCURRENT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor sExecutor;
+    static {
+        sExecutor = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private int mCount;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ijk-reaper-" + (++mCount));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    // guarded by PlayerReaper.class
+    private static int sPending;
+    private static long sReleasedCount;
+    private static long sTotalWaitMs;
+    private static long sTotalTeardownMs;
+    private static long sMaxTeardownMs;
+
+    private PlayerReaper() {
+    }
+
+    /*
+     * Runs teardown on a reaper thread, then calls listener on the looper of
+     * the calling thread, or the main looper if it has none.
+     */
+    static void submit(IjkMediaPlayer mp, Runnable teardown,
+                       IjkMediaPlayer.OnReleaseCompleteListener listener) {
+        submit(mp, teardown, null, null, listener);
+    }
+
+    /*
+     * Same as above, running finish on finishHandler between the teardown
+     * and listener, for state owned by the thread of finishHandler. Without
+     * finishHandler, finish runs on the reaper thread.
+     */
+    static void submit(final IjkMediaPlayer mp, final Runnable teardown,
+                       final Handler finishHandler, final Runnable finish,
+                       final IjkMediaPlayer.OnReleaseCompleteListener listener) {
+        Looper looper = Looper.myLooper();
+        if (looper == null)
+            looper = Looper.getMainLooper();
+        final Handler handler = listener != null ? new Handler(looper) : null;
+        final long submitTime = SystemClock.elapsedRealtime();
+
+        synchronized (PlayerReaper.class) {
+            sPending++;
+        }
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = SystemClock.elapsedRealtime();
+                try {
+                    teardown.run();
+                } catch (RuntimeException e) {
+                    DebugLog.e(TAG, "teardown failed", e);
+                }
+                final long endTime = SystemClock.elapsedRealtime();
+                long teardownMs = endTime - startTime;
+
+                synchronized (PlayerReaper.class) {
+                    sPending--;
+                    sReleasedCount++;
+                    sTotalWaitMs += startTime - submitTime;
+                    sTotalTeardownMs += teardownMs;
+                    if (teardownMs > sMaxTeardownMs)
+                        sMaxTeardownMs = teardownMs;
+                }
+
+                final Runnable notify = handler == null ? null : new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onReleaseComplete(mp, endTime - submitTime);
+                    }
+                };
+                if (finish == null) {
+                    if (notify != null)
+                        handler.post(notify);
+                    return;
+                }
+
+                Runnable finishAndNotify = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            finish.run();
+                        } catch (RuntimeException e) {
+                            DebugLog.e(TAG, "teardown failed", e);
+                        }
+                        if (notify != null)
+                            handler.post(notify);
+                    }
+                };
+                if (finishHandler != null)
+                    finishHandler.post(finishAndNotify);
+                else
+                    finishAndNotify.run();
+            }
+        });
+    }
+
+    static synchronized void getStats(ReleaseStats out) {
+        out.pendingCount = sPending;
+        out.releasedCount = sReleasedCount;
+        out.totalWaitMs = sTotalWaitMs;
+        out.totalTeardownMs = sTotalTeardownMs;
+        out.maxTeardownMs = sMaxTeardownMs;
+    }
+}
@@ -0,0 +1,141 @@
+package tv.danmaku.ijk.media.player;
+
+/**
+ * Point-in-time statistics of an IjkMediaPlayer, filled by
+ * {@link IjkMediaPlayer#getStatistics(PlayerStats)} with a single native call.
+ * Keep an instance around and pass it to every call, nothing is allocated then.
+ */
+public class PlayerStats {
+    /*
+     * layout of the arrays filled by _getStatistics(),
+     * keep in sync with g_stat_long_props and g_stat_float_props in ijkplayer_jni.c
+     */
+    static final int LONG_VIDEO_DECODER                 = 0;
+    static final int LONG_VIDEO_CACHED_DURATION         = 1;
+    static final int LONG_AUDIO_CACHED_DURATION         = 2;
+    static final int LONG_VIDEO_CACHED_BYTES            = 3;
+    static final int LONG_AUDIO_CACHED_BYTES            = 4;
+    static final int LONG_VIDEO_CACHED_PACKETS          = 5;
+    static final int LONG_AUDIO_CACHED_PACKETS          = 6;
+    static final int LONG_BIT_RATE                      = 7;
+    static final int LONG_TCP_SPEED                     = 8;
+    static final int LONG_SEEK_LOAD_DURATION            = 9;
+    static final int LONG_TRAFFIC_BYTE_COUNT            = 10;
+    static final int LONG_ASYNC_BUF_BACKWARDS           = 11;
+    static final int LONG_ASYNC_BUF_FORWARDS            = 12;
+    static final int LONG_ASYNC_BUF_CAPACITY            = 13;
+    static final int LONG_CACHE_PHYSICAL_POS            = 14;
+    static final int LONG_CACHE_FILE_FORWARDS           = 15;
+    static final int LONG_CACHE_FILE_POS                = 16;
+    static final int LONG_CACHE_COUNT_BYTES             = 17;
+    static final int LONG_FILE_SIZE                     = 18;
+    static final int LONG_VIDEO_FRAME_TIMESTAMP         = 19;
+    static final int LONG_META_QUEUE_COUNT              = 20;
+    static final int LONG_META_QUEUE_OVERFLOW_COUNT     = 21;
+    static final int LONG_META_QUEUE_STALE_COUNT        = 22;
+    static final int LONG_REFRESH_LATE_AVG              = 23;
+    static final int LONG_REFRESH_LATE_MAX              = 24;
+    static final int LONG_CACHE_READ_BYTES              = 25;
+    static final int LONG_CACHE_FILE_READ_BYTES         = 26;
+    static final int LONG_CACHE_HIT_COUNT               = 27;
+    static final int LONG_CACHE_MISS_COUNT              = 28;
+    static final int LONG_CACHE_EVICT_COUNT             = 29;
+    static final int LONG_CACHE_EVICT_BYTES             = 30;
+    static final int LONG_COUNT                         = 31;
+
+    static final int FLOAT_VIDEO_DECODE_FPS             = 0;
+    static final int FLOAT_VIDEO_OUTPUT_FPS             = 1;
+    static final int FLOAT_PLAYBACK_RATE                = 2;
+    static final int FLOAT_PLAYBACK_VOLUME              = 3;
+    static final int FLOAT_AVDELAY                      = 4;
+    static final int FLOAT_AVDIFF                       = 5;
+    static final int FLOAT_DROP_FRAME_RATE              = 6;
+    static final int FLOAT_COUNT                        = 7;
+
+    final long[] mLongs = new long[LONG_COUNT];
+    final float[] mFloats = new float[FLOAT_COUNT];
+
+    public int videoDecoder;                // IjkMediaPlayer.FFP_PROPV_DECODER_*
+    public long videoCachedDuration;        // milliseconds
+    public long audioCachedDuration;        // milliseconds
+    public long videoCachedBytes;
+    public long audioCachedBytes;
+    public long videoCachedPackets;
+    public long audioCachedPackets;
+    public long bitRate;                    // bits per second
+    public long tcpSpeed;                   // bytes per second
+    public long seekLoadDuration;           // milliseconds
+    public long trafficByteCount;
+    public long asyncBufBackwards;
+    public long asyncBufForwards;
+    public long asyncBufCapacity;
+    public long cachePhysicalPos;
+    public long cacheFileForwards;
+    public long cacheFilePos;
+    public long cacheCountBytes;
+    public long fileSize;
+    public long videoFrameTimestamp;
+    public long metaQueueCount;
+    public long metaQueueOverflowCount;
+    public long metaQueueStaleCount;
+    public long refreshLateAvgUs;           // how late video refresh ticks ran, microseconds
+    public long refreshLateMaxUs;
+    public long cacheReadBytes;             // see CacheStats
+    public long cacheFileReadBytes;
+    public long cacheHitCount;
+    public long cacheMissCount;
+    public long cacheEvictCount;
+    public long cacheEvictBytes;
+
+    public float videoDecodeFramesPerSecond;
+    public float videoOutputFramesPerSecond;
+    public float playbackRate;
+    public float playbackVolume;
+    public float avDelay;
+    public float avDiff;
+    public float dropFrameRate;
+
+    void unpack() {
+        long[] l = mLongs;
+        videoDecoder            = (int) l[LONG_VIDEO_DECODER];
+        videoCachedDuration     = l[LONG_VIDEO_CACHED_DURATION];
+        audioCachedDuration     = l[LONG_AUDIO_CACHED_DURATION];
+        videoCachedBytes        = l[LONG_VIDEO_CACHED_BYTES];
+        audioCachedBytes        = l[LONG_AUDIO_CACHED_BYTES];
+        videoCachedPackets      = l[LONG_VIDEO_CACHED_PACKETS];
+        audioCachedPackets      = l[LONG_AUDIO_CACHED_PACKETS];
+        bitRate                 = l[LONG_BIT_RATE];
+        tcpSpeed                = l[LONG_TCP_SPEED];
+        seekLoadDuration        = l[LONG_SEEK_LOAD_DURATION];
+        trafficByteCount        = l[LONG_TRAFFIC_BYTE_COUNT];
+        asyncBufBackwards       = l[LONG_ASYNC_BUF_BACKWARDS];
+        asyncBufForwards        = l[LONG_ASYNC_BUF_FORWARDS];
+        asyncBufCapacity        = l[LONG_ASYNC_BUF_CAPACITY];
+        cachePhysicalPos        = l[LONG_CACHE_PHYSICAL_POS];
+        cacheFileForwards       = l[LONG_CACHE_FILE_FORWARDS];
+        cacheFilePos            = l[LONG_CACHE_FILE_POS];
+        cacheCountBytes         = l[LONG_CACHE_COUNT_BYTES];
+        fileSize                = l[LONG_FILE_SIZE];
+        videoFrameTimestamp     = l[LONG_VIDEO_FRAME_TIMESTAMP];
+        metaQueueCount          = l[LONG_META_QUEUE_COUNT];
+        metaQueueOverflowCount  = l[LONG_META_QUEUE_OVERFLOW_COUNT];
+        metaQueueStaleCount     = l[LONG_META_QUEUE_STALE_COUNT];
+        refreshLateAvgUs        = l[LONG_REFRESH_LATE_AVG];
+        refreshLateMaxUs        = l[LONG_REFRESH_LATE_MAX];
+        cacheReadBytes          = l[LONG_CACHE_READ_BYTES];
+        cacheFileReadBytes      = l[LONG_CACHE_FILE_READ_BYTES];
+        cacheHitCount           = l[LONG_CACHE_HIT_COUNT];
+        cacheMissCount          = l[LONG_CACHE_MISS_COUNT];
+        cacheEvictCount         = l[LONG_CACHE_EVICT_COUNT];
+        cacheEvictBytes         = l[LONG_CACHE_EVICT_BYTES];
+
+        float[] f = mFloats;
+        videoDecodeFramesPerSecond = f[FLOAT_VIDEO_DECODE_FPS];
+        videoOutputFramesPerSecond = f[FLOAT_VIDEO_OUTPUT_FPS];
+        playbackRate            = f[FLOAT_PLAYBACK_RATE];
+        playbackVolume          = f[FLOAT_PLAYBACK_VOLUME];
+        avDelay                 = f[FLOAT_AVDELAY];
+        avDiff                  = f[FLOAT_AVDIFF];
+        dropFrameRate           = f[FLOAT_DROP_FRAME_RATE];
+    }
+}
@@ -0,0 +1,17 @@
+package tv.danmaku.ijk.media.player;
+
+/**
+ * Teardown latency of players released with {@link IjkMediaPlayer#releaseAsync},
+ * filled by {@link IjkMediaPlayer#getReleaseStats(ReleaseStats)}.
+ */
+public class ReleaseStats {
+    public int pendingCount;        // queued or being torn down
+    public long releasedCount;
+    public long totalWaitMs;        // time spent queued behind other releases
+    public long totalTeardownMs;    // time spent in native release
+    public long maxTeardownMs;
+
+    public long getAverageTeardownMs() {
+        return releasedCount > 0 ? totalTeardownMs / releasedCount : 0;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Bilibili
+ * Copyright (C) 2015 Zhang Rui <bbcallen@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Like {@link IMediaDataSource}, but reads into a direct ByteBuffer wrapping
+ * the native read buffer, so no byte[] is pinned or copied by the player.
+ */
+@SuppressWarnings("RedundantThrows")
+public interface IMediaDataSource2 {
+    /**
+     * Reads up to buffer.remaining() bytes at position into buffer, starting
+     * at its position, which need not be 0. The buffer is only valid during
+     * the call, do not keep it: later reads get the same object back with a
+     * new position and limit.
+     * A read with an empty buffer checks that position can be read from.
+     *
+     * @return the number of bytes read, 0 to try again later, or -1 at the end
+     */
+    int  readAt(long position, ByteBuffer buffer) throws IOException;
+
+    long getSize() throws IOException;
+
+    void close() throws IOException;
+}
@@ -1,16 +1,41 @@
-
 package tv.danmaku.ijk.media.player.misc;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class IjkFrame {
+    // keep in sync with FFP_FRAME_FORMAT_* in ff_ffplay_def.h
     public enum PixelFormat {
         RGBA,
+        I420,
+        NV12,
+        GRAY8,
+        RGB24,
     }
 
     public byte [] pixels;
+    public ByteBuffer buffer;
     public int width;
     public int height;
+    public int stride;
+    public long pts;    // milliseconds
     public PixelFormat pixelFormat;
     public List<ObjectTrackingInfo> trackingInfo;
-}
\ No newline at end of file
+
+    /**
+     * Make sure {@link #buffer} is a direct buffer of at least {@code capacity} bytes.
+     * The buffer is only reallocated when it is too small, so holding on to one
+     * IjkFrame and passing it to {@code IjkMediaPlayer.getFrame(IjkFrame)} does
+     * not allocate per frame.
+     *
+     * @param capacity the minimum size in bytes
+     * @return the cleared buffer
+     */
+    public ByteBuffer reuse(int capacity) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
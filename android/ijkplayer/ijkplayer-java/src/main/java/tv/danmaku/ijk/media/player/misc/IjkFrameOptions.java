@@ -0,0 +1,21 @@
+package tv.danmaku.ijk.media.player.misc;
+
+/*
+ * Output of IjkMediaPlayer.getFrame(), the crop and scale are done natively
+ * before the frame is copied out.
+ */
+public class IjkFrameOptions {
+    public IjkFrame.PixelFormat pixelFormat = IjkFrame.PixelFormat.RGBA;
+    public int width;   // 0 keeps the width of crop
+    public int height;  // 0 keeps the height of crop
+    public Rect crop;   // in source pixels, null for the whole picture
+
+    public IjkFrameOptions() {
+    }
+
+    public IjkFrameOptions(IjkFrame.PixelFormat pixelFormat, int width, int height) {
+        this.pixelFormat = pixelFormat;
+        this.width = width;
+        this.height = height;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 Bilibili
+ * Copyright (C) 2015 Zhang Rui <bbcallen@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serves an {@link IMediaDataSource} as an {@link IMediaDataSource2}, reading
+ * into a reused array and copying that into the buffer.
+ */
+public class MediaDataSourceAdapter implements IMediaDataSource2 {
+    private final IMediaDataSource mSource;
+    private byte[] mArray = new byte[0];
+
+    public MediaDataSourceAdapter(IMediaDataSource source) {
+        if (source == null)
+            throw new IllegalArgumentException("null source");
+
+        mSource = source;
+    }
+
+    public IMediaDataSource getSource() {
+        return mSource;
+    }
+
+    @Override
+    public int readAt(long position, ByteBuffer buffer) throws IOException {
+        int size = buffer.remaining();
+        if (mArray.length < size)
+            mArray = new byte[Math.max(size, mArray.length * 2)];
+
+        int ret = mSource.readAt(position, mArray, 0, size);
+        if (ret > 0)
+            buffer.put(mArray, 0, ret);
+        return ret;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mSource.getSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+}
@@ -9,7 +9,73 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ObjectTrackingInfo {
+    // keep in sync with FFP_TRACKING_CATEGORY_* in ff_ffplay_def.h
+    public static final int CATEGORY_UNKNOWN = 0;
+    public static final int CATEGORY_HUMAN   = 1;
+    public static final int CATEGORY_VEHICLE = 2;
+    public static final int CATEGORY_PET     = 3;
+    public static final int CATEGORY_ROI     = 4;
+
+    /*
+     * layout of the int[] filled by the player, one record per object,
+     * keep in sync with ijkplayer_android_def.h
+     */
+    public static final int MAX_OBJECTS = 32;
+    public static final int RECORD_SIZE = 7;
+    private static final int RECORD_X        = 0;
+    private static final int RECORD_Y        = 1;
+    private static final int RECORD_WIDTH    = 2;
+    private static final int RECORD_HEIGHT   = 3;
+    private static final int RECORD_ID       = 4;
+    private static final int RECORD_CATEGORY = 5;
+    private static final int RECORD_SCORE    = 6;
+
     public Rect rect;
+    public int id = -1;                     // -1 if the metadata has none
+    public int category = CATEGORY_UNKNOWN; // CATEGORY_*, or the numeric class id of the metadata
+    public float score = -1f;               // -1 if the metadata has none
+
+    public ObjectTrackingInfo() {
+        rect = new Rect();
+    }
+
+    /**
+     * Fill a list from records written by the player. The objects already in
+     * {@code reuse} are overwritten, so passing the same list for every frame
+     * only allocates when the number of objects grows.
+     *
+     * @param records RECORD_SIZE ints per object
+     * @param count   number of records
+     * @param reuse   list from a previous call, or null to create one
+     * @return the list holding exactly count objects
+     */
+    public static List<ObjectTrackingInfo> unpack(int[] records, int count, List<ObjectTrackingInfo> reuse) {
+        List<ObjectTrackingInfo> info = reuse != null ? reuse : new ArrayList<ObjectTrackingInfo>(count);
+
+        for (int i = 0; i < count; i++) {
+            ObjectTrackingInfo obj;
+            if (i < info.size()) {
+                obj = info.get(i);
+            } else {
+                obj = new ObjectTrackingInfo();
+                info.add(obj);
+            }
+            if (obj.rect == null)
+                obj.rect = new Rect();
+
+            int base = i * RECORD_SIZE;
+            obj.rect.x = records[base + RECORD_X];
+            obj.rect.y = records[base + RECORD_Y];
+            obj.rect.width = records[base + RECORD_WIDTH];
+            obj.rect.height = records[base + RECORD_HEIGHT];
+            obj.id = records[base + RECORD_ID];
+            obj.category = records[base + RECORD_CATEGORY];
+            obj.score = Float.intBitsToFloat(records[base + RECORD_SCORE]);
+        }
+        while (info.size() > count)
+            info.remove(info.size() - 1);
+        return info;
+    }
 
     public static List<ObjectTrackingInfo> parse(String jsonStr) {
         ArrayList info = new ArrayList();
@@ -34,11 +100,12 @@ public class ObjectTrackingInfo {
 
             JSONArray jsonOD = jsonIVA.optJSONArray("od");
             if (jsonOD != null && jsonOD.length() > 0) {
-                JSONObject jsonItem = jsonOD.optJSONObject(0);
-                if (jsonItem == null) {
-                    return info;
+                for (int i = 0; i < jsonOD.length(); i++) {
+                    JSONObject jsonItem = jsonOD.optJSONObject(i);
+                    if (jsonItem != null) {
+                        info.add(new ObjectTrackingInfo(jsonItem));
+                    }
                 }
-                info.add(new ObjectTrackingInfo(jsonItem));
             } else {
                 JSONObject jsonAROI = jsonIVA.optJSONObject("aroi");
                 if (jsonAROI == null) {
@@ -0,0 +1,383 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A live, non-seekable data source the app pushes bytes into as they arrive,
+ * from a camera or network callback for instance, instead of answering reads
+ * at absolute positions.
+ *
+ * Bytes go through a bounded ring in direct memory with a single writer, the
+ * thread calling write(), and a single reader, the player. Neither side takes
+ * a lock unless the ring is empty, or full with {@link #OVERFLOW_BLOCK}. With
+ * {@link #OVERFLOW_DROP_OLDEST} a full ring drops its oldest bytes, the
+ * demuxer has to resync, so prefer it with formats which can, such as MPEG-TS.
+ *
+ * Pass it to {@link tv.danmaku.ijk.media.player.IjkMediaPlayer#setDataSource(IMediaDataSource2)},
+ * then call {@link #endOfStream()} or {@link #signalError(IOException)} once
+ * the stream is over. The player closes it when it is done.
+ */
+public class PushMediaDataSource implements IMediaDataSource2 {
+    public static final int OVERFLOW_BLOCK       = 0;   // write() waits for the player
+    public static final int OVERFLOW_DROP_OLDEST = 1;   // write() never waits
+
+    public static final int DEFAULT_CAPACITY = 2 * 1024 * 1024;
+
+    // how long a read waits for data before it lets the player retry, so that it can be interrupted
+    private static final long STALL_WAIT_MS = 100;
+    // writes remembered for the latency, a write is not sampled while they are all pending
+    private static final int STAMP_COUNT = 256;
+
+    private final int mCapacity;
+    private final int mMask;
+    private final int mOverflowPolicy;
+    // a view for each side, a ByteBuffer position is not thread safe
+    private final ByteBuffer mWriteView;
+    private final ByteBuffer mReadView;
+
+    /*
+     * Ring positions, in bytes ever written. mWritePos is written by the writer,
+     * mReadPos by the reader, and by the writer when it drops bytes, so
+     * the reader only takes what it copied if mReadPos did not move meanwhile.
+     */
+    private volatile long mWritePos;
+    private final AtomicLong mReadPos = new AtomicLong();
+    // bytes handed to the player, its position in the stream, player thread only
+    private long mStreamPos;
+
+    private volatile boolean mEnded;
+    private volatile IOException mError;
+    private volatile boolean mClosed;
+    private volatile boolean mWriterWaiting;
+    private volatile boolean mReaderWaiting;
+    private final Object mSignal = new Object();
+
+    // end position and time of the last writes, written by the writer, consumed by the reader
+    private final long[] mStampPos = new long[STAMP_COUNT];
+    private final long[] mStampTime = new long[STAMP_COUNT];
+    private volatile long mStampWriteCount;
+    private volatile long mStampReadCount;
+
+    // written by the writer
+    private volatile long mWrittenBytes;
+    private volatile long mDroppedBytes;
+    private volatile long mPeakBufferedBytes;
+    private volatile long mWriterBlockCount;
+    // written by the reader
+    private volatile long mStallCount;
+    private volatile long mLatencyAvgUs;
+    private volatile long mLatencyMaxUs;
+
+    public PushMediaDataSource() {
+        this(DEFAULT_CAPACITY, OVERFLOW_BLOCK);
+    }
+
+    /**
+     * @param capacity       bytes buffered at most, a power of 2
+     * @param overflowPolicy OVERFLOW_BLOCK or OVERFLOW_DROP_OLDEST
+     */
+    public PushMediaDataSource(int capacity, int overflowPolicy) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        if (overflowPolicy != OVERFLOW_BLOCK && overflowPolicy != OVERFLOW_DROP_OLDEST)
+            throw new IllegalArgumentException("invalid overflow policy " + overflowPolicy);
+
+        mCapacity = capacity;
+        mMask = capacity - 1;
+        mOverflowPolicy = overflowPolicy;
+        ByteBuffer ring = ByteBuffer.allocateDirect(capacity);
+        mWriteView = ring.duplicate();
+        mReadView = ring.duplicate();
+    }
+
+    public void write(byte[] buffer, int offset, int size) throws IOException {
+        write(ByteBuffer.wrap(buffer, offset, size));
+    }
+
+    /**
+     * Appends the remaining bytes of src, from one thread at a time.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for room
+     * @throws IOException            if the player closed the source
+     * @throws IllegalStateException  after endOfStream() or signalError()
+     */
+    public void write(ByteBuffer src) throws IOException {
+        if (mEnded || mError != null)
+            throw new IllegalStateException("stream already ended");
+
+        if (mOverflowPolicy == OVERFLOW_DROP_OLDEST && src.remaining() > mCapacity) {
+            // only the newest bytes would survive anyway
+            int skip = src.remaining() - mCapacity;
+            src.position(src.position() + skip);
+            mDroppedBytes += skip;
+        }
+
+        while (src.hasRemaining()) {
+            if (mClosed)
+                throw new IOException("data source closed");
+
+            long write = mWritePos;
+            long free = mCapacity - (write - mReadPos.get());
+            int wanted = Math.min(src.remaining(), mCapacity);
+            if (free < wanted) {
+                if (mOverflowPolicy == OVERFLOW_DROP_OLDEST) {
+                    drop(write + wanted - mCapacity);
+                    continue;
+                } else if (free <= 0) {
+                    waitForSpace();
+                    continue;
+                }
+            }
+
+            int n = (int) Math.min(free, src.remaining());
+            put(src, write, n);
+            // publishes the data to the reader
+            mWritePos = write + n;
+            mWrittenBytes += n;
+
+            long buffered = write + n - mReadPos.get();
+            if (buffered > mPeakBufferedBytes)
+                mPeakBufferedBytes = buffered;
+            if (mReaderWaiting)
+                signal();
+        }
+
+        long stamps = mStampWriteCount;
+        if (stamps - mStampReadCount < STAMP_COUNT) {
+            int i = (int) (stamps % STAMP_COUNT);
+            mStampPos[i] = mWritePos;
+            mStampTime[i] = System.nanoTime();
+            mStampWriteCount = stamps + 1;
+        }
+    }
+
+    /**
+     * No more data, the player reaches the end once it read what is buffered.
+     */
+    public void endOfStream() {
+        mEnded = true;
+        signal();
+    }
+
+    /**
+     * The stream failed, the player gets error once it read what is buffered.
+     */
+    public void signalError(IOException error) {
+        if (error == null)
+            throw new IllegalArgumentException("null error");
+
+        mError = error;
+        signal();
+    }
+
+    @Override
+    public int readAt(long position, ByteBuffer buffer) throws IOException {
+        if (mClosed)
+            return -1;
+        // not seekable, only the current position can be read or checked
+        if (position != mStreamPos)
+            return -1;
+        if (!buffer.hasRemaining())
+            return 0;
+
+        long read = mReadPos.get();
+        long available = mWritePos - read;
+        if (available <= 0) {
+            mStallCount++;
+            waitForData(read);
+
+            // flags first, they are set after the last write
+            boolean ended = mEnded;
+            IOException error = mError;
+            read = mReadPos.get();
+            available = mWritePos - read;
+            if (available <= 0) {
+                if (error != null)
+                    throw error;
+                return ended ? -1 : 0;
+            }
+        }
+
+        int n;
+        int start = buffer.position();
+        while (true) {
+            n = (int) Math.min(available, buffer.remaining());
+            get(buffer, read, n);
+            if (mReadPos.compareAndSet(read, read + n))
+                break;
+
+            // the writer dropped bytes while they were copied, they may be overwritten
+            buffer.position(start);
+            read = mReadPos.get();
+            available = mWritePos - read;
+            if (available <= 0)
+                return 0;
+        }
+
+        mStreamPos += n;
+        updateLatency(read + n);
+        if (mWriterWaiting)
+            signal();
+        return n;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        signal();
+    }
+
+    private void put(ByteBuffer src, long pos, int n) {
+        int index = (int) (pos & mMask);
+        int first = Math.min(n, mCapacity - index);
+        int limit = src.limit();
+
+        src.limit(src.position() + first);
+        mWriteView.clear();
+        mWriteView.position(index);
+        mWriteView.put(src);
+        if (first < n) {
+            src.limit(src.position() + n - first);
+            mWriteView.clear();
+            mWriteView.put(src);
+        }
+        src.limit(limit);
+    }
+
+    private void get(ByteBuffer dst, long pos, int n) {
+        int index = (int) (pos & mMask);
+        int first = Math.min(n, mCapacity - index);
+
+        mReadView.clear();
+        mReadView.position(index);
+        mReadView.limit(index + first);
+        dst.put(mReadView);
+        if (first < n) {
+            mReadView.clear();
+            mReadView.limit(n - first);
+            dst.put(mReadView);
+        }
+    }
+
+    // moves the read position to at least target, the writer side of OVERFLOW_DROP_OLDEST
+    private void drop(long target) {
+        while (true) {
+            long read = mReadPos.get();
+            if (read >= target)
+                return;
+            if (mReadPos.compareAndSet(read, target)) {
+                mDroppedBytes += target - read;
+                return;
+            }
+        }
+    }
+
+    private void waitForSpace() throws IOException {
+        mWriterBlockCount++;
+        synchronized (mSignal) {
+            mWriterWaiting = true;
+            try {
+                while (!mClosed && mWritePos - mReadPos.get() >= mCapacity)
+                    mSignal.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the player");
+            } finally {
+                mWriterWaiting = false;
+            }
+        }
+    }
+
+    private void waitForData(long read) {
+        synchronized (mSignal) {
+            mReaderWaiting = true;
+            try {
+                if (mWritePos <= read && !mEnded && mError == null && !mClosed)
+                    mSignal.wait(STALL_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mReaderWaiting = false;
+            }
+        }
+    }
+
+    private void signal() {
+        synchronized (mSignal) {
+            mSignal.notifyAll();
+        }
+    }
+
+    // samples the time the last write fully read waited in the ring
+    private void updateLatency(long read) {
+        long stamps = mStampReadCount;
+        long writeTime = 0;
+        while (stamps < mStampWriteCount) {
+            int i = (int) (stamps % STAMP_COUNT);
+            if (mStampPos[i] > read)
+                break;
+            writeTime = mStampTime[i];
+            stamps++;
+        }
+        if (stamps == mStampReadCount)
+            return;
+        mStampReadCount = stamps;
+
+        long latencyUs = (System.nanoTime() - writeTime) / 1000;
+        if (mLatencyAvgUs == 0)
+            mLatencyAvgUs = latencyUs;
+        else
+            mLatencyAvgUs += (latencyUs - mLatencyAvgUs) / 8;
+        if (latencyUs > mLatencyMaxUs)
+            mLatencyMaxUs = latencyUs;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** Bytes written and not read yet. */
+    public long getBufferedBytes() {
+        return Math.max(mWritePos - mReadPos.get(), 0);
+    }
+
+    public long getPeakBufferedBytes() {
+        return mPeakBufferedBytes;
+    }
+
+    public long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    /** Bytes dropped by OVERFLOW_DROP_OLDEST. */
+    public long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    /** Writes which waited for the player with OVERFLOW_BLOCK. */
+    public long getWriterBlockCount() {
+        return mWriterBlockCount;
+    }
+
+    /** Reads which found the ring empty. */
+    public long getStallCount() {
+        return mStallCount;
+    }
+
+    /** Moving average of the time from write() until the player read the bytes. */
+    public long getLatencyAvgUs() {
+        return mLatencyAvgUs;
+    }
+
+    public long getLatencyMaxUs() {
+        return mLatencyMaxUs;
+    }
+}
@@ -0,0 +1,348 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+
+/**
+ * Wraps a slow {@link IAndroidIO}, a decrypting or P2P one for instance, and
+ * reads ahead of the player on a thread of its own, so that the latency of
+ * each read does not stall the demuxer.
+ *
+ * Data goes through a single producer, single consumer ring: the prefetch
+ * thread appends, the player thread reads, neither takes a lock unless the
+ * ring is full or empty. Part of the ring keeps data already read, seeks
+ * into what is buffered are served from memory. Other seeks wait for the
+ * current read of the source and restart prefetching at the new position.
+ */
+public class ReadAheadAndroidIO implements IAndroidIO {
+    // keep in sync with libavformat/avio.h
+    private static final int AVSEEK_SIZE = 0x10000;
+    private static final int AVSEEK_FORCE = 0x20000;
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_CUR = 1;
+    private static final int SEEK_END = 2;
+
+    private static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    // how long read() waits for data before it lets the player retry, so that it can be interrupted
+    private static final long STALL_WAIT_MS = 100;
+    // pause after the source returned no data
+    private static final long RETRY_WAIT_MS = 10;
+
+    private final IAndroidIO mSource;
+    private final byte[] mRing;
+    private final int mMask;
+    private final int mChunkSize;
+    private final int mBackReserve;
+
+    /*
+     * Stream positions. The ring holds [mFloor, mFillPos), mPos is in between.
+     * mFillPos is written by the prefetch thread, mPos and mFloor by the player
+     * thread, all three by seek() while holding mSourceLock.
+     */
+    private volatile long mFillPos;
+    private volatile long mPos;
+    private volatile long mFloor;
+
+    private volatile boolean mEof;
+    private volatile IOException mError;
+    private volatile boolean mClosed;
+    private volatile boolean mProducerWaiting;
+    private volatile boolean mConsumerWaiting;
+    // guarded by mSourceLock
+    private long mSize = Long.MIN_VALUE;
+
+    // guards the calls into mSource
+    private final Object mSourceLock = new Object();
+    private final Object mSignal = new Object();
+    private Thread mThread;
+
+    // only written by the player thread
+    private volatile long mHitCount;
+    private volatile long mStallCount;
+    private volatile long mSeekHitCount;
+    private volatile long mSeekMissCount;
+
+    public ReadAheadAndroidIO(IAndroidIO source) {
+        this(source, DEFAULT_CAPACITY, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param capacity  bytes buffered, a power of 2, a quarter of it keeps data
+     *                  already read for backward seeks
+     * @param chunkSize most bytes asked from the source at once
+     */
+    public ReadAheadAndroidIO(IAndroidIO source, int capacity, int chunkSize) {
+        if (source == null)
+            throw new IllegalArgumentException("null source");
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        if (chunkSize <= 0 || chunkSize > capacity / 2)
+            throw new IllegalArgumentException("invalid chunk size " + chunkSize);
+
+        mSource = source;
+        mRing = new byte[capacity];
+        mMask = capacity - 1;
+        mChunkSize = chunkSize;
+        mBackReserve = capacity / 4;
+    }
+
+    @Override
+    public int open(String url) throws IOException {
+        int ret = mSource.open(url);
+        if (ret < 0)
+            return ret;
+
+        // the source starts over, so does the ring, close() joined the prefetch thread of a previous open
+        synchronized (mSourceLock) {
+            mPos = 0;
+            mFillPos = 0;
+            mFloor = 0;
+            mEof = false;
+            mError = null;
+            mSize = Long.MIN_VALUE;
+            mClosed = false;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, "ijk-readahead");
+        mThread.setDaemon(true);
+        mThread.start();
+        return ret;
+    }
+
+    @Override
+    public int read(byte[] buffer, int size) throws IOException {
+        long pos = mPos;
+        long available = mFillPos - pos;
+        if (available > 0) {
+            mHitCount++;
+        } else {
+            mStallCount++;
+            available = waitForData(pos);
+            if (available <= 0) {
+                IOException error = mError;
+                if (error != null)
+                    throw error;
+                return mEof ? -1 : 0;
+            }
+        }
+
+        int n = (int) Math.min(available, size);
+        int start = (int) (pos & mMask);
+        int first = Math.min(n, mRing.length - start);
+        System.arraycopy(mRing, start, buffer, 0, first);
+        if (first < n)
+            System.arraycopy(mRing, 0, buffer, first, n - first);
+
+        pos += n;
+        mPos = pos;
+        if (pos - mBackReserve > mFloor) {
+            mFloor = pos - mBackReserve;
+            if (mProducerWaiting)
+                signal();
+        }
+        return n;
+    }
+
+    private long waitForData(long pos) {
+        synchronized (mSignal) {
+            mConsumerWaiting = true;
+            try {
+                long available = mFillPos - pos;
+                if (available <= 0 && !mEof && mError == null && !mClosed)
+                    mSignal.wait(STALL_WAIT_MS);
+                return mFillPos - pos;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return mFillPos - pos;
+            } finally {
+                mConsumerWaiting = false;
+            }
+        }
+    }
+
+    @Override
+    public long seek(long offset, int whence) throws IOException {
+        if (mClosed)
+            return -1;
+        whence &= ~AVSEEK_FORCE;
+        if (whence == AVSEEK_SIZE)
+            return getSize();
+
+        long target;
+        switch (whence) {
+            case SEEK_SET:
+                target = offset;
+                break;
+            case SEEK_CUR:
+                target = mPos + offset;
+                break;
+            case SEEK_END: {
+                long size = getSize();
+                if (size < 0)
+                    return -1;
+                target = size + offset;
+                break;
+            }
+            default:
+                return -1;
+        }
+        if (target < 0)
+            return -1;
+
+        // mFloor never goes down while prefetching, the ring keeps everything above it
+        if (target >= mFloor && target <= mFillPos) {
+            mSeekHitCount++;
+            mPos = target;
+            return target;
+        }
+
+        mSeekMissCount++;
+        long ret;
+        synchronized (mSourceLock) {
+            // close() may have closed the source meanwhile
+            if (mClosed)
+                return -1;
+            ret = mSource.seek(target, SEEK_SET);
+            if (ret < 0)
+                return ret;
+
+            mFloor = ret;
+            mPos = ret;
+            mFillPos = ret;
+            mEof = false;
+            mError = null;
+        }
+        signal();
+        return ret;
+    }
+
+    private long getSize() throws IOException {
+        synchronized (mSourceLock) {
+            if (mClosed)
+                return -1;
+            if (mSize == Long.MIN_VALUE)
+                mSize = mSource.seek(0, AVSEEK_SIZE);
+            return mSize;
+        }
+    }
+
+    /*
+     * A seek racing with close() either runs before the source is closed, the
+     * lock orders it, or sees mClosed and fails without touching the source.
+     */
+    @Override
+    public int close() throws IOException {
+        mClosed = true;
+        signal();
+        Thread thread = mThread;
+        mThread = null;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (mSourceLock) {
+            return mSource.close();
+        }
+    }
+
+    private void signal() {
+        synchronized (mSignal) {
+            mSignal.notifyAll();
+        }
+    }
+
+    private void prefetch() {
+        byte[] chunk = new byte[mChunkSize];
+        while (!mClosed) {
+            synchronized (mSignal) {
+                mProducerWaiting = true;
+                try {
+                    while (!mClosed && (mEof || mError != null || freeSpace() <= 0))
+                        mSignal.wait();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    mProducerWaiting = false;
+                }
+            }
+
+            int ret;
+            synchronized (mSourceLock) {
+                if (mClosed)
+                    return;
+                long free = freeSpace();
+                if (mEof || mError != null || free <= 0)
+                    continue;
+
+                try {
+                    ret = mSource.read(chunk, (int) Math.min(free, mChunkSize));
+                } catch (IOException e) {
+                    mError = e;
+                    ret = -1;
+                }
+
+                if (ret < 0) {
+                    mEof = true;
+                } else if (ret > 0) {
+                    long fill = mFillPos;
+                    int start = (int) (fill & mMask);
+                    int first = Math.min(ret, mRing.length - start);
+                    System.arraycopy(chunk, 0, mRing, start, first);
+                    if (first < ret)
+                        System.arraycopy(chunk, first, mRing, 0, ret - first);
+                    // publishes the data to the player thread
+                    mFillPos = fill + ret;
+                }
+            }
+
+            if (ret != 0) {
+                if (mConsumerWaiting)
+                    signal();
+            } else {
+                try {
+                    Thread.sleep(RETRY_WAIT_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // bytes the prefetch thread may append without overwriting anything at or above mFloor
+    private long freeSpace() {
+        return mRing.length - (mFillPos - mFloor);
+    }
+
+    /** Reads served from the ring without waiting. */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /** Reads which found the ring empty and waited for the source. */
+    public long getStallCount() {
+        return mStallCount;
+    }
+
+    /** Seeks served from the ring. */
+    public long getSeekHitCount() {
+        return mSeekHitCount;
+    }
+
+    /** Seeks which went to the source and dropped the ring. */
+    public long getSeekMissCount() {
+        return mSeekMissCount;
+    }
+
+    /** Bytes buffered ahead of the read position. */
+    public long getBufferedBytes() {
+        return Math.max(mFillPos - mPos, 0);
+    }
+}
@@ -30,27 +30,23 @@ public class IjkTextureView extends TextureView {
         super(context, attrs, defStyleAttr);
     }
 
-    private Rect getDrawRect(Bitmap bmp) {
+    private void updateDrawRect(int srcWidth, int srcHeight) {
         int targetWidth = getWidth();
-        int targetHeight = (bmp.getHeight() * targetWidth) / bmp.getWidth();
+        int targetHeight = (srcHeight * targetWidth) / srcWidth;
         if (targetHeight > getHeight()) {
             targetHeight = getHeight();
-            targetWidth = (bmp.getWidth() * targetHeight) / bmp.getHeight();
+            targetWidth = (srcWidth * targetHeight) / srcHeight;
         }
 
         if (gravity == Gravity.CENTER) {
             int left = getWidth() / 2 - targetWidth / 2 + offsetX;
             int top = getHeight() / 2 - targetHeight / 2 + offsetY;
-            int right = left + targetWidth;
-            int bottom = top + targetHeight;
-            return new Rect(left, top, right, bottom);
+            mDrawRect.set(left, top, left + targetWidth, top + targetHeight);
         } else {
             //LEFT and TOP
             int left = offsetX;
             int top = offsetY;
-            int right = left + targetWidth;
-            int bottom = top + targetHeight;
-            return new Rect(left, top, right, bottom);
+            mDrawRect.set(left, top, left + targetWidth, top + targetHeight);
         }
     }
 
@@ -59,9 +55,28 @@ public class IjkTextureView extends TextureView {
     }
 
     public void drawFromBitmap(Bitmap bitmap) {
-        mDrawRect.set(getDrawRect(bitmap));
+        drawFromBitmap(bitmap, null);
+    }
+
+    /**
+     * Draw part of bitmap without copying it.
+     *
+     * @param bitmap the source
+     * @param src    the part of bitmap to draw, null for all of it
+     */
+    public void drawFromBitmap(Bitmap bitmap, Rect src) {
+        if (src != null) {
+            updateDrawRect(src.width(), src.height());
+        } else {
+            updateDrawRect(bitmap.getWidth(), bitmap.getHeight());
+        }
+
         Canvas canvas = lockCanvas();
-        canvas.drawBitmap(bitmap, null, mDrawRect, mDrawPaint);
+        if (canvas == null) {
+            // surface not available yet
+            return;
+        }
+        canvas.drawBitmap(bitmap, src, mDrawRect, mDrawPaint);
         unlockCanvasAndPost(canvas);
     }
-}
\ No newline at end of file
+}
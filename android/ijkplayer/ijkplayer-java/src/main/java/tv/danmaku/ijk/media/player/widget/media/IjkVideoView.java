@@ -22,6 +22,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.media.AudioManager;
@@ -42,6 +43,7 @@ import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.PixelCopy;
 import android.view.SurfaceView;
+import android.view.TextureView;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.MediaController;
@@ -63,15 +65,20 @@ import org.webrtc.VideoFrame;
 import org.webrtc.VideoSink;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import tv.danmaku.ijk.media.example.webrtc.NebulaRTCClient;
+import tv.danmaku.ijk.media.player.DecoderBudget;
 import tv.danmaku.ijk.media.player.IMediaPlayer;
 import tv.danmaku.ijk.media.player.IjkMediaPlayer;
+import tv.danmaku.ijk.media.player.IjkPlayerOptions;
+import tv.danmaku.ijk.media.player.IjkPlayerPool;
 import tv.danmaku.ijk.media.player.IjkTimedText;
+import tv.danmaku.ijk.media.player.PlayerStats;
 import tv.danmaku.ijk.media.player.misc.ITrackInfo;
 import tv.danmaku.ijk.media.player.misc.IjkFrame;
 import tv.danmaku.ijk.media.player.misc.ObjectTrackingInfo;
@@ -123,6 +130,11 @@ public class IjkVideoView extends FrameLayout implements
     // All the stuff we need for playing and showing a video
     private IRenderView.ISurfaceHolder mSurfaceHolder = null;
     private IMediaPlayer mMediaPlayer = null;
+    private IjkPlayerPool mPlayerPool = null;
+    private String mSwitchPath = null;
+    private int mDecoderPriority = -1;
+    private IjkPlayerOptions mPlayerOptions = null;
+    private IjkPlayerOptions.Builder mPlayerOptionsBuilder = null;
     private int mVideoWidth;
     private int mVideoHeight;
     private int mSurfaceWidth;
@@ -163,9 +175,18 @@ public class IjkVideoView extends FrameLayout implements
     private TextView subtitleDisplay;
     private int mCurrentX = -1;
     private int mCurrentY = -1;
-    private Rect mRect = new Rect();
+    private final Rect mRect = new Rect();
     private long mLastFoundObjectTime = -1;
 
+    // reused by draw() so that steady-state rendering does not allocate
+    private Bitmap mFrameBitmap;
+    private final Point mRectCenter = new Point();
+    private final List<ObjectTrackingInfo> mTrackingInfo = new ArrayList<ObjectTrackingInfo>();
+    private final android.graphics.Rect mSubImageRect = new android.graphics.Rect();
+    private final Canvas mRectCanvas = new Canvas();
+    private Paint mRectPaint;
+    private final Matrix mPanZoomMatrix = new Matrix();
+
     private AppRTCClient mRtcClient;
     private PeerConnectionClient peerConnectionClient;
     private SignalingParameters signalingParameters = null;
@@ -305,6 +326,47 @@ public class IjkVideoView extends FrameLayout implements
         setVideoURI(Uri.parse(path));
     }
 
+    /**
+     * Switches to another stream of the same kind, keeping the decoders of the
+     * current player if they can decode it, otherwise falls back to
+     * {@link #setVideoPath(String)}.
+     *
+     * @param path the path of the video.
+     */
+    synchronized public void switchVideoPath(String path) {
+        if (!(mMediaPlayer instanceof IjkMediaPlayer) || !isInPlaybackState()) {
+            setVideoPath(path);
+            return;
+        }
+
+        IjkMediaPlayer ijkMediaPlayer = (IjkMediaPlayer) mMediaPlayer;
+        mSwitchPath = path;
+        ijkMediaPlayer.setOnSourceSwitchListener(mSourceSwitchListener);
+        try {
+            ijkMediaPlayer.switchDataSource(path);
+        } catch (IllegalStateException e) {
+            setVideoPath(path);
+        }
+    }
+
+    private IjkMediaPlayer.OnSourceSwitchListener mSourceSwitchListener =
+            new IjkMediaPlayer.OnSourceSwitchListener() {
+                public void onSourceSwitched(IjkMediaPlayer mp, int error, int elapsedMs) {
+                    if (mp != mMediaPlayer || mSwitchPath == null ||
+                            error == IjkMediaPlayer.OnSourceSwitchListener.ERROR_CANCELED)
+                        return;
+
+                    String path = mSwitchPath;
+                    mSwitchPath = null;
+                    Log.d(TAG, "source switched to " + path + " in " + elapsedMs + "ms: " + error);
+                    if (error == 0) {
+                        mUri = Uri.parse(path);
+                    } else {
+                        setVideoPath(path);
+                    }
+                }
+            };
+
     /**
      * Sets video URI.
      *
@@ -320,8 +382,7 @@ public class IjkVideoView extends FrameLayout implements
 
     synchronized public void stopPlayback() {
         if (mMediaPlayer != null) {
-            mMediaPlayer.stop();
-            mMediaPlayer.release();
+            releasePlayer(mMediaPlayer);
             mMediaPlayer = null;
             mCurrentState = STATE_IDLE;
             mTargetState = STATE_IDLE;
@@ -693,8 +754,7 @@ public class IjkVideoView extends FrameLayout implements
         }
 
         if (mMediaPlayer != null) {
-            mMediaPlayer.reset();
-            mMediaPlayer.release();
+            releasePlayer(mMediaPlayer);
             mMediaPlayer = null;
             mCurrentState = STATE_IDLE;
             if (cleartargetstate) {
@@ -705,6 +765,64 @@ public class IjkVideoView extends FrameLayout implements
         }
     }
 
+    /*
+     * Players are taken from it instead of being created, and given back to it
+     * instead of being released. Options of the view are applied on top of the
+     * ones the pool applied.
+     */
+    public void setPlayerPool(IjkPlayerPool pool) {
+        mPlayerPool = pool;
+    }
+
+    /**
+     * Puts the MediaCodec players of this view under the process-wide
+     * {@link DecoderBudget}. When the budget grants or revokes a hardware
+     * decoder, the stream is reopened at the current position.
+     *
+     * @param priority DecoderBudget.PRIORITY_*, or -1 to leave the players unlimited
+     */
+    synchronized public void setDecoderPriority(int priority) {
+        mDecoderPriority = priority;
+        if (priority >= 0 && mMediaPlayer instanceof IjkMediaPlayer)
+            DecoderBudget.getInstance().setPriority((IjkMediaPlayer) mMediaPlayer, priority);
+    }
+
+    private DecoderBudget.Listener mDecoderBudgetListener = new DecoderBudget.Listener() {
+        public void onHardwareGranted(IjkMediaPlayer mp) {
+            reopenForDecoderChange(mp);
+        }
+
+        public void onHardwareRevoked(IjkMediaPlayer mp) {
+            reopenForDecoderChange(mp);
+        }
+    };
+
+    synchronized private void reopenForDecoderChange(IjkMediaPlayer mp) {
+        if (mp != mMediaPlayer || !isInPlaybackState())
+            return;
+
+        Log.d(TAG, "decoder budget changed, reopening");
+        mSeekWhenPrepared = mp.getCurrentPosition();
+        openVideo();
+    }
+
+    /*
+     * Software decoded players are torn down in the background, so that switching
+     * streams does not wait for their threads. A MediaCodec player has to be gone
+     * before the next one configures a codec on the same surface.
+     */
+    private void releasePlayer(IMediaPlayer mp) {
+        if (mp instanceof IjkMediaPlayer && !mUsingMediaCodec) {
+            if (mPlayerPool != null)
+                mPlayerPool.recycle((IjkMediaPlayer) mp);
+            else
+                ((IjkMediaPlayer) mp).releaseAsync(null);
+        } else {
+            mp.reset();
+            mp.release();
+        }
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
         if (isInPlaybackState() && mMediaController != null) {
@@ -909,38 +1027,39 @@ public class IjkVideoView extends FrameLayout implements
             return null;
         }
 
-        IjkMediaPlayer ijkMediaPlayer = new IjkMediaPlayer();
+        IjkMediaPlayer ijkMediaPlayer = mPlayerPool != null ? mPlayerPool.acquire() : new IjkMediaPlayer();
         IjkMediaPlayer.native_setLogLevel(IjkMediaPlayer.IJK_LOG_DEBUG);
         ijkMediaPlayer.setSpeed(mSpeed);
 
+        IjkPlayerOptions.Builder options = new IjkPlayerOptions.Builder();
         if (mUri.getScheme() != null && (mUri.getScheme().equalsIgnoreCase("rtsp") || mUri.getScheme().equalsIgnoreCase("avapi") || mUri.getScheme().equalsIgnoreCase("webrtc"))) {
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "analyzemaxduration", 100L);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", 10240L);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "flush_packets", 1L);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "packet-buffering", 0);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "analyzemaxduration", 100L);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "probesize", 10240L);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "flush_packets", 1L);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "packet-buffering", 0);
             mAccurateSeek = 0;
         }
 
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "low-delay", mLowDelay);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", mAccurateSeek );
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "mediacodec", mUsingMediaCodec ? 1 : 0);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "low-delay", mLowDelay);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-accurate-seek", mAccurateSeek );
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "mediacodec", mUsingMediaCodec ? 1 : 0);
 
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "overlay-format", mPixelFormat);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", 10);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "overlay-format", mPixelFormat);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "framedrop", 10);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "start-on-prepared", 0);
 
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "http-detect-range-support", 0);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "http-detect-range-support", 0);
 
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-get-frame", mEnableGetFrame);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-aec", mEnableAEC);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "avtech_seek", mEnableAvtechSeek);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-get-frame", mEnableGetFrame);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "enable-aec", mEnableAEC);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "avtech_seek", mEnableAvtechSeek);
         if (mEnableAvtechSeek != 0 && mUserAgent == null) {
             mUserAgent = "TUTK Application";
         }
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "user-agent", mUserAgent);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "av_api3", mAvAPIs3);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "av_api4", mAvAPIs4);
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "webrtc_api", mWebRTCAPIs);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "user-agent", mUserAgent);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "av_api3", mAvAPIs3);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "av_api4", mAvAPIs4);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "webrtc_api", mWebRTCAPIs);
 
         if (mHttpHeaders != null) {
             String httpHeader = "";
@@ -948,17 +1067,29 @@ public class IjkVideoView extends FrameLayout implements
                 String value = mHttpHeaders.get(key);
                 httpHeader = httpHeader + key + ": " + value + "\r\n";
             }
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", httpHeader);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, "headers", httpHeader);
         }
 
-        ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "disable-multithread-delaying", mDisableMultithreadDelaying);
+        options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "disable-multithread-delaying", mDisableMultithreadDelaying);
 
         if (mMp4Path != null) {
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "video-record-path", mMp4Path);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "infbuf", 1);
-            ijkMediaPlayer.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "volume", 0);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "video-record-path", mMp4Path);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "infbuf", 1);
+            options.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "volume", 0);
         }
 
+        // the options rarely change between opens, only parse them again when they do
+        if (mPlayerOptions == null || !options.equals(mPlayerOptionsBuilder)) {
+            mPlayerOptions = options.build();
+            mPlayerOptionsBuilder = options;
+            for (String name : mPlayerOptions.getUnknownOptions())
+                Log.w(TAG, "unknown option " + name);
+        }
+        ijkMediaPlayer.setOptions(mPlayerOptions);
+
+        if (mUsingMediaCodec && mDecoderPriority >= 0)
+            DecoderBudget.getInstance().register(ijkMediaPlayer, mDecoderPriority, mDecoderBudgetListener);
+
         return ijkMediaPlayer;
     }
 
@@ -998,6 +1129,18 @@ public class IjkVideoView extends FrameLayout implements
         return ret;
     }
 
+    /**
+     * Like {@link #getFrame()}, but copies into reuse instead of allocating
+     * a new frame, see {@link IjkMediaPlayer#getFrame(IjkFrame)}.
+     */
+    synchronized public IjkFrame getFrame(IjkFrame reuse) {
+        if (mMediaPlayer == null) {
+            return null;
+        }
+
+        return ((IjkMediaPlayer)mMediaPlayer).getFrame(reuse);
+    }
+
     synchronized public void enableGetFrame() {
         //
         // <HACK>: get frame only works when pixel format = SDL_FCC_GLES2
@@ -1112,6 +1255,8 @@ public class IjkVideoView extends FrameLayout implements
         ijkPlayer.setVolume(volume, volume);
     }
 
+    private PlayerStats mStats;
+
     synchronized public void printStatistics() {
         if (!isInPlaybackState()) {
             return;
@@ -1119,8 +1264,8 @@ public class IjkVideoView extends FrameLayout implements
 
         String strDecoder;
         IjkMediaPlayer mp = (IjkMediaPlayer) mMediaPlayer;
-        int vdec = mp.getVideoDecoder();
-        switch (vdec) {
+        PlayerStats stats = mStats = mp.getStatistics(mStats);
+        switch (stats.videoDecoder) {
             case IjkMediaPlayer.FFP_PROPV_DECODER_AVCODEC:
                 strDecoder = "software decoder";
                 break;
@@ -1132,12 +1277,12 @@ public class IjkVideoView extends FrameLayout implements
                 break;
         }
 
-        float fpsOutput = mp.getVideoOutputFramesPerSecond();
-        long videoCachedDuration = mp.getVideoCachedDuration();
-        long audioCachedDuration = mp.getAudioCachedDuration();
-        long tcpSpeed            = mp.getTcpSpeed();
-        long bitRate             = mp.getBitRate();
-        long seekLoadDuration    = mp.getSeekLoadDuration();
+        float fpsOutput = stats.videoOutputFramesPerSecond;
+        long videoCachedDuration = stats.videoCachedDuration;
+        long audioCachedDuration = stats.audioCachedDuration;
+        long tcpSpeed            = stats.tcpSpeed;
+        long bitRate             = stats.bitRate;
+        long seekLoadDuration    = stats.seekLoadDuration;
 
         String strFpsOutput = String.format(Locale.US, "%.2f", fpsOutput);
         String strVideoCachedDuration = formatedDurationMilli(videoCachedDuration);
@@ -1183,25 +1328,37 @@ public class IjkVideoView extends FrameLayout implements
     }
 
     public Bitmap toBitmap(IjkFrame frame) {
-        int w = frame.width;
-        int h = frame.height;
-        Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.RGB_565);
-
-        int [] pixels = new int[w * h];
-        int src = 0;
-        int dst = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int r = frame.pixels[src++] & 0xff;
-                int g = frame.pixels[src++] & 0xff;
-                int b = frame.pixels[src++] & 0xff;
-                int a = frame.pixels[src++] & 0xff;
-                int color = (a << 24) | (r << 16) | (g << 8) | b;
-                pixels[dst++] = color;
+        if (frame.pixelFormat != IjkFrame.PixelFormat.RGBA) {
+            return null;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(frame.width, frame.height, Bitmap.Config.ARGB_8888);
+        copyToBitmap(frame, bitmap);
+        return bitmap;
+    }
+
+    /*
+     * ARGB_8888 is stored as R, G, B, A bytes, the same layout as an RGBA frame,
+     * so the pixels can be copied as is.
+     */
+    private static void copyToBitmap(IjkFrame frame, Bitmap bitmap) {
+        ByteBuffer src = frame.buffer != null ? frame.buffer : ByteBuffer.wrap(frame.pixels);
+        src.rewind();
+        bitmap.copyPixelsFromBuffer(src);
+        src.rewind();
+    }
+
+    private Bitmap obtainFrameBitmap(IjkFrame frame) {
+        Bitmap bitmap = mFrameBitmap;
+        if (bitmap == null || bitmap.getWidth() != frame.width || bitmap.getHeight() != frame.height) {
+            if (bitmap != null) {
+                bitmap.recycle();
             }
+            bitmap = Bitmap.createBitmap(frame.width, frame.height, Bitmap.Config.ARGB_8888);
+            mFrameBitmap = bitmap;
         }
 
-        bitmap.setPixels( pixels, 0, w, 0, 0, w, h );
+        copyToBitmap(frame, bitmap);
         return bitmap;
     }
 
@@ -1284,9 +1441,7 @@ public class IjkVideoView extends FrameLayout implements
         return step;
     }
 
-    private Bitmap getSubImage(Bitmap bmp, Point center) {
-        int w = bmp.getWidth();
-        int h = bmp.getHeight();
+    private android.graphics.Rect getSubImage(int w, int h, Point center) {
 
         int cx = center.x;
         int cy = center.y;
@@ -1303,12 +1458,12 @@ public class IjkVideoView extends FrameLayout implements
             y = 0;
         }
         int delta;
-        if (x + newW >= bmp.getWidth()) {
-            delta = x + newW - bmp.getWidth() + 1;
+        if (x + newW >= w) {
+            delta = x + newW - w + 1;
             x -= delta;
         }
-        if (y + newH >= bmp.getHeight()) {
-            delta = y + newH - bmp.getHeight() + 1;
+        if (y + newH >= h) {
+            delta = y + newH - h + 1;
             y -= delta;
         }
 
@@ -1325,7 +1480,8 @@ public class IjkVideoView extends FrameLayout implements
         mCurrentX += stepX;
         mCurrentY += stepY;
 
-        return Bitmap.createBitmap(bmp, mCurrentX, mCurrentY, newW ,newH);
+        mSubImageRect.set(mCurrentX, mCurrentY, mCurrentX + newW, mCurrentY + newH);
+        return mSubImageRect;
     }
 
     private void drawRect(Bitmap bmp, List<ObjectTrackingInfo> trackingInfoList) {
@@ -1333,61 +1489,57 @@ public class IjkVideoView extends FrameLayout implements
             return;
         }
 
-        Canvas canvas = new Canvas(bmp);
-        Paint p = new Paint();
-        p.setStyle(Paint.Style.FILL_AND_STROKE);
-        p.setAntiAlias(true);
-        p.setFilterBitmap(true);
-        p.setDither(true);
-        p.setColor(Color.RED);
-        p.setStrokeWidth(5.0f);
+        Paint p = mRectPaint;
+        if (p == null) {
+            p = new Paint();
+            p.setStyle(Paint.Style.FILL_AND_STROKE);
+            p.setAntiAlias(true);
+            p.setFilterBitmap(true);
+            p.setDither(true);
+            p.setColor(Color.RED);
+            p.setStrokeWidth(5.0f);
+            mRectPaint = p;
+        }
 
-        for (ObjectTrackingInfo info : trackingInfoList) {
-            Rect rect = info.rect;
+        Canvas canvas = mRectCanvas;
+        canvas.setBitmap(bmp);
+        for (int i = 0; i < trackingInfoList.size(); i++) {
+            Rect rect = trackingInfoList.get(i).rect;
             canvas.drawLine(rect.x, rect.y, rect.x + rect.width, rect.y, p);
             canvas.drawLine(rect.x, rect.y, rect.x, rect.y + rect.height, p);
             canvas.drawLine(rect.x, rect.y + rect.height, rect.x + rect.width, rect.y + rect.height, p);
             canvas.drawLine(rect.x + rect.width, rect.y, rect.x + rect.width, rect.y + rect.height, p);
         }
+        canvas.setBitmap(null);
     }
 
     @UiThread
     public int draw(IjkFrame frame, IjkTextureView mainView, IjkTextureView subView, Mode mode) {
-        if (frame == null || mainView == null || (mode == Mode.PIP && subView == null)) {
+        if (frame == null || mainView == null || (mode == Mode.PIP && subView == null) ||
+                frame.pixelFormat != IjkFrame.PixelFormat.RGBA) {
             return -1;
         }
 
-        if (frame.trackingInfo.size() > 0) {
-            mRect = frame.trackingInfo.get(0).rect;
-            mLastFoundObjectTime = System.currentTimeMillis();
-        }
-
-        Bitmap full = toBitmap(frame);
+        boolean tracking = updateTrackedRect(frame.trackingInfo);
+        Bitmap full = obtainFrameBitmap(frame);
 
-        if (mLastFoundObjectTime == -1 || System.currentTimeMillis() - mLastFoundObjectTime > TRACKING_THRESHOLD_IN_SECONDS * 1000) {
+        if (!tracking) {
             mainView.drawFromBitmap(full);
             subView.setVisibility(GONE);
             return 0;
         }
 
-        Point rectCenter = new Point();
-        if (mRect.width > 0 && mRect.height > 0) {
-            rectCenter.x = mRect.x + mRect.width / 2;
-            rectCenter.y = mRect.y + mRect.height / 2;
-        } else {
-            rectCenter.x = full.getWidth() / 2;
-            rectCenter.y = full.getHeight() / 2;
-        }
-        Bitmap part = getSubImage(full, rectCenter);
+        android.graphics.Rect part = getSubImage(full.getWidth(), full.getHeight(), getTrackedCenter(full.getWidth(), full.getHeight()));
         mainView.setOpaque(false);
         subView.setOpaque(false);
 
         if (mode == Mode.EPAN) {
-            mainView.drawFromBitmap(part);
+            mainView.drawFromBitmap(full, part);
             subView.setVisibility(GONE);
         } else if (mode == Mode.PIP) {
+            // the zoomed view is drawn before the boxes are painted into the frame
+            mainView.drawFromBitmap(full, part);
             drawRect(full, frame.trackingInfo);
-            mainView.drawFromBitmap(part);
             subView.drawFromBitmap(full);
             subView.setVisibility(VISIBLE);
         } else if (mode == Mode.OBJECT_DETECT) {
@@ -1399,6 +1551,87 @@ public class IjkVideoView extends FrameLayout implements
         return 0;
     }
 
+    /*
+     * @return false if no object was seen for TRACKING_THRESHOLD_IN_SECONDS
+     */
+    private boolean updateTrackedRect(List<ObjectTrackingInfo> trackingInfo) {
+        if (trackingInfo.size() > 0) {
+            // copied, the objects of a reused list change with the next frame
+            Rect rect = trackingInfo.get(0).rect;
+            mRect.x = rect.x;
+            mRect.y = rect.y;
+            mRect.width = rect.width;
+            mRect.height = rect.height;
+            mLastFoundObjectTime = System.currentTimeMillis();
+        }
+
+        return mLastFoundObjectTime != -1 &&
+                System.currentTimeMillis() - mLastFoundObjectTime <= TRACKING_THRESHOLD_IN_SECONDS * 1000;
+    }
+
+    private Point getTrackedCenter(int w, int h) {
+        Point rectCenter = mRectCenter;
+        if (mRect.width > 0 && mRect.height > 0) {
+            rectCenter.x = mRect.x + mRect.width / 2;
+            rectCenter.y = mRect.y + mRect.height / 2;
+        } else {
+            rectCenter.x = w / 2;
+            rectCenter.y = h / 2;
+        }
+        return rectCenter;
+    }
+
+    /**
+     * EPAN without pulling frames to Java: the video stays on its surface and
+     * the tracked part is zoomed in with {@link TextureView#setTransform}.
+     * Only the tracking metadata is read from the player. Call this
+     * periodically, like {@link #draw}. Requires the TextureView render.
+     *
+     * @return 0 on success, -1 if the player or the render view can not do it
+     */
+    @UiThread
+    public int updatePanZoom() {
+        if (mMediaPlayer == null || !(mMediaPlayer instanceof IjkMediaPlayer) ||
+                mRenderView == null || !(mRenderView.getView() instanceof TextureView) ||
+                mVideoWidth <= 0 || mVideoHeight <= 0) {
+            return -1;
+        }
+
+        TextureView view = (TextureView) mRenderView.getView();
+        ((IjkMediaPlayer) mMediaPlayer).getTrackingInfo(mTrackingInfo);
+        boolean tracking = updateTrackedRect(mTrackingInfo);
+        if (!tracking) {
+            mCurrentX = -1;
+            mCurrentY = -1;
+            mPanZoomMatrix.reset();
+            view.setTransform(mPanZoomMatrix);
+            return 0;
+        }
+
+        android.graphics.Rect part = getSubImage(mVideoWidth, mVideoHeight, getTrackedCenter(mVideoWidth, mVideoHeight));
+
+        // the view shows the whole video, map the part from video to view pixels and scale it up to fill the view
+        float scaleX = (float) view.getWidth() / mVideoWidth;
+        float scaleY = (float) view.getHeight() / mVideoHeight;
+        float zoomX = (float) mVideoWidth / part.width();
+        float zoomY = (float) mVideoHeight / part.height();
+        mPanZoomMatrix.setScale(zoomX, zoomY);
+        mPanZoomMatrix.postTranslate(-part.left * scaleX * zoomX, -part.top * scaleY * zoomY);
+        view.setTransform(mPanZoomMatrix);
+        return 0;
+    }
+
+    @UiThread
+    public void resetPanZoom() {
+        mCurrentX = -1;
+        mCurrentY = -1;
+        mLastFoundObjectTime = -1;
+        if (mRenderView != null && mRenderView.getView() instanceof TextureView) {
+            mPanZoomMatrix.reset();
+            ((TextureView) mRenderView.getView()).setTransform(mPanZoomMatrix);
+        }
+    }
+
     private boolean mPixelCopyDone;
 
     @TargetApi(Build.VERSION_CODES.N)
@@ -0,0 +1,130 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/*
+ * MB/s of an in-memory source read the way ijkmediadatasource.c reads it:
+ * as an IMediaDataSource into a byte[] which is then copied into the native
+ * buffer, the former GetByteArrayRegion, through MediaDataSourceAdapter, and
+ * as an IMediaDataSource2 writing straight into one reused direct ByteBuffer
+ * whose position and limit are reset for each read:
+ *
+ *   java -cp <classes> tv.danmaku.ijk.media.player.misc.IMediaDataSource2Benchmark
+ */
+public class IMediaDataSource2Benchmark {
+    private static final int DATA_SIZE = 64 * 1024 * 1024;
+    // IO_BUFFER_SIZE of libavformat
+    private static final int READ_SIZE = 32 * 1024;
+    private static final int ROUNDS = 5;
+
+    static class MemoryMediaDataSource implements IMediaDataSource {
+        private final byte[] mData;
+
+        MemoryMediaDataSource(byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public int readAt(long position, byte[] buffer, int offset, int size) {
+            if (position >= mData.length)
+                return -1;
+            int n = (int) Math.min(size, mData.length - position);
+            System.arraycopy(mData, (int) position, buffer, offset, n);
+            return n;
+        }
+
+        @Override
+        public long getSize() {
+            return mData.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class MemoryMediaDataSource2 implements IMediaDataSource2 {
+        private final ByteBuffer mData;
+
+        MemoryMediaDataSource2(byte[] data) {
+            mData = ByteBuffer.wrap(data);
+        }
+
+        @Override
+        public int readAt(long position, ByteBuffer buffer) {
+            if (position >= mData.capacity())
+                return -1;
+            int n = (int) Math.min(buffer.remaining(), mData.capacity() - position);
+            ByteBuffer chunk = mData.duplicate();
+            chunk.position((int) position);
+            chunk.limit((int) position + n);
+            buffer.put(chunk);
+            return n;
+        }
+
+        @Override
+        public long getSize() {
+            return mData.capacity();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] data = new byte[DATA_SIZE];
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first round warms up the JIT
+            report(round, "byte[] copy", readCopy(new MemoryMediaDataSource(data)));
+            report(round, "adapter", readDirect(new MediaDataSourceAdapter(new MemoryMediaDataSource(data))));
+            report(round, "direct", readDirect(new MemoryMediaDataSource2(data)));
+        }
+    }
+
+    private static long readCopy(IMediaDataSource source) throws IOException {
+        byte[] array = new byte[READ_SIZE];
+        ByteBuffer nativeBuffer = ByteBuffer.allocateDirect(READ_SIZE);
+        long start = System.nanoTime();
+        try {
+            long position = 0;
+            while (true) {
+                int n = source.readAt(position, array, 0, READ_SIZE);
+                if (n <= 0)
+                    break;
+                nativeBuffer.clear();
+                nativeBuffer.put(array, 0, n);
+                position += n;
+            }
+        } finally {
+            source.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long readDirect(IMediaDataSource2 source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+        long start = System.nanoTime();
+        try {
+            long position = 0;
+            while (true) {
+                buffer.limit(READ_SIZE);
+                buffer.position(0);
+                int n = source.readAt(position, buffer);
+                if (n <= 0)
+                    break;
+                position += n;
+            }
+        } finally {
+            source.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(int round, String name, long nanos) {
+        System.out.println(String.format(Locale.US, "round %d %-12s %8.1f MB/s",
+                round, name, DATA_SIZE / (1024.0 * 1024.0) / (nanos / 1e9)));
+    }
+}
@@ -0,0 +1,237 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PushMediaDataSourceTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private static byte[] sequence(int start, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) (start + i);
+        return data;
+    }
+
+    // reads size bytes at the stream position, retrying reads which timed out
+    private static byte[] readFully(PushMediaDataSource source, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (buffer.hasRemaining()) {
+            int n = source.readAt(position, buffer);
+            if (n < 0)
+                break;
+            position += n;
+            if (System.currentTimeMillis() > deadline)
+                fail("no data");
+        }
+        byte[] data = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(data);
+        return data;
+    }
+
+    @Test
+    public void readsAcrossTheRingWrap() throws IOException {
+        PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        long position = 0;
+        for (int i = 0; i < 10; i++) {
+            source.write(sequence(i * 10, 10), 0, 10);
+            assertArrayEquals(sequence(i * 10, 10), readFully(source, position, 10));
+            position += 10;
+        }
+        assertEquals(0, source.getBufferedBytes());
+        assertEquals(100, source.getWrittenBytes());
+    }
+
+    @Test
+    public void readsOnlyTheStreamPosition() throws IOException {
+        PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        source.write(sequence(0, 8), 0, 8);
+        assertEquals(-1, source.readAt(4, ByteBuffer.allocate(4)));
+        assertEquals(0, source.readAt(0, ByteBuffer.allocate(0)));
+        assertArrayEquals(sequence(0, 8), readFully(source, 0, 8));
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestBytes() throws IOException {
+        PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_DROP_OLDEST);
+        source.write(sequence(0, 12), 0, 12);
+        source.write(sequence(12, 12), 0, 12);
+        assertEquals(8, source.getDroppedBytes());
+        assertEquals(16, source.getBufferedBytes());
+        assertArrayEquals(sequence(8, 16), readFully(source, 0, 16));
+
+        // a write larger than the ring only keeps its tail
+        source.write(sequence(24, 40), 0, 40);
+        assertEquals(8 + 24, source.getDroppedBytes());
+        assertArrayEquals(sequence(48, 16), readFully(source, 16, 16));
+    }
+
+    /*
+     * The writer drops bytes while the reader copies them, a read which lost
+     * the CAS has to retry and must never return bytes from two laps of the ring.
+     */
+    @Test
+    public void dropOldestNeverTearsAConcurrentRead() throws Exception {
+        final PushMediaDataSource source = new PushMediaDataSource(64, PushMediaDataSource.OVERFLOW_DROP_OLDEST);
+        final int chunkSize = 24;
+        final long total = chunkSize * 128 * 1024;
+        final AtomicReference<Throwable> writerError = new AtomicReference<Throwable>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    byte[] chunk = new byte[chunkSize];
+                    for (long written = 0; written < total; written += chunk.length) {
+                        for (int i = 0; i < chunk.length; i++)
+                            chunk[i] = (byte) (written + i);
+                        source.write(chunk, 0, chunk.length);
+                    }
+                    source.endOfStream();
+                } catch (Throwable e) {
+                    writerError.set(e);
+                    source.endOfStream();
+                }
+            }
+        });
+        writer.start();
+
+        ByteBuffer buffer = ByteBuffer.allocate(48);
+        long position = 0;
+        long deadline = System.currentTimeMillis() + 4 * TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            buffer.clear();
+            int n = source.readAt(position, buffer);
+            if (n < 0)
+                break;
+            // bytes of a read follow each other in the written stream
+            for (int i = 1; i < n; i++)
+                assertEquals((byte) (buffer.get(i - 1) + 1), buffer.get(i));
+            position += n;
+        }
+        writer.join(TIMEOUT_MS);
+        assertEquals(null, writerError.get());
+        assertEquals(total, source.getWrittenBytes());
+        assertEquals(total, position + source.getDroppedBytes());
+    }
+
+    @Test
+    public void blockedWriterWakesUpOnRead() throws Exception {
+        final PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        source.write(sequence(0, 16), 0, 16);
+
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.write(sequence(16, 8), 0, 8);
+                    written.countDown();
+                } catch (IOException e) {
+                    // the latch stays closed
+                }
+            }
+        });
+        writer.start();
+        assertFalse(written.await(50, TimeUnit.MILLISECONDS));
+
+        assertArrayEquals(sequence(0, 8), readFully(source, 0, 8));
+        assertTrue(written.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, source.getWriterBlockCount());
+        assertArrayEquals(sequence(8, 16), readFully(source, 8, 16));
+        writer.join(TIMEOUT_MS);
+    }
+
+    @Test
+    public void blockedWriterFailsOnClose() throws Exception {
+        final PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        source.write(sequence(0, 16), 0, 16);
+
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.write(sequence(16, 1), 0, 1);
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+        source.close();
+        writer.join(TIMEOUT_MS);
+        assertFalse(writer.isAlive());
+        assertTrue(error.get() instanceof IOException);
+    }
+
+    @Test
+    public void waitingReaderWakesUpOnWrite() throws Exception {
+        final PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                    source.write(sequence(0, 4), 0, 4);
+                } catch (Exception e) {
+                    // the read below times out
+                }
+            }
+        });
+        writer.start();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        long start = System.nanoTime();
+        int n = source.readAt(0, buffer);
+        long waitedMs = (System.nanoTime() - start) / 1000000;
+        writer.join(TIMEOUT_MS);
+        // woken by the write, not by the end of the stall wait
+        assertEquals(4, n);
+        assertTrue("waited " + waitedMs + " ms", waitedMs < 90);
+        assertEquals(1, source.getStallCount());
+    }
+
+    @Test
+    public void endOfStreamAfterTheBufferedBytes() throws IOException {
+        PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        source.write(sequence(0, 4), 0, 4);
+        source.endOfStream();
+        assertArrayEquals(sequence(0, 4), readFully(source, 0, 4));
+        assertEquals(-1, source.readAt(4, ByteBuffer.allocate(4)));
+        try {
+            source.write(sequence(4, 1), 0, 1);
+            fail("write after endOfStream");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void errorAfterTheBufferedBytes() throws IOException {
+        PushMediaDataSource source = new PushMediaDataSource(16, PushMediaDataSource.OVERFLOW_BLOCK);
+        source.write(sequence(0, 4), 0, 4);
+        IOException error = new IOException("stream failed");
+        source.signalError(error);
+        assertArrayEquals(sequence(0, 4), readFully(source, 0, 4));
+        try {
+            source.readAt(4, ByteBuffer.allocate(4));
+            fail("read after signalError");
+        } catch (IOException e) {
+            assertTrue(e == error);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/*
+ * Time a demuxer-like consumer spends reading a source which costs a fixed
+ * latency per read, a decrypting or P2P IAndroidIO for instance, directly
+ * and through ReadAheadAndroidIO, and what the seeks of a typical playback
+ * cost through the ring:
+ *
+ *   java -cp <classes> tv.danmaku.ijk.media.player.misc.ReadAheadAndroidIOBenchmark
+ */
+public class ReadAheadAndroidIOBenchmark {
+    private static final int DATA_SIZE = 32 * 1024 * 1024;
+    // IO_BUFFER_SIZE of libavformat
+    private static final int READ_SIZE = 32 * 1024;
+    private static final long SOURCE_LATENCY_US = 500;
+    // demuxing and decoding the bytes of one read
+    private static final long CONSUMER_WORK_US = 400;
+    private static final int ROUNDS = 3;
+
+    static class SlowAndroidIO extends ReadAheadAndroidIOTest.MemoryAndroidIO {
+        SlowAndroidIO(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public int read(byte[] buffer, int size) throws IOException {
+            spin(SOURCE_LATENCY_US);
+            return super.read(buffer, size);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] data = new byte[DATA_SIZE];
+        for (int round = 0; round < ROUNDS; round++) {
+            SlowAndroidIO direct = new SlowAndroidIO(data);
+            direct.open("memory:");
+            report(round, "direct", consume(direct));
+            direct.close();
+
+            ReadAheadAndroidIO readAhead = new ReadAheadAndroidIO(new SlowAndroidIO(data));
+            readAhead.open("memory:");
+            report(round, "read-ahead", consume(readAhead));
+            System.out.println(String.format(Locale.US,
+                    "        hits %d, stalls %d, seek hits %d, seek misses %d",
+                    readAhead.getHitCount(), readAhead.getStallCount(),
+                    readAhead.getSeekHitCount(), readAhead.getSeekMissCount()));
+            readAhead.close();
+        }
+    }
+
+    // reads the source like a demuxer, with a short seek back every 64 reads
+    private static long consume(IAndroidIO io) throws IOException {
+        byte[] buffer = new byte[READ_SIZE];
+        long start = System.nanoTime();
+        long pos = 0;
+        int reads = 0;
+        while (true) {
+            int n = io.read(buffer, READ_SIZE);
+            if (n < 0)
+                break;
+            pos += n;
+            spin(CONSUMER_WORK_US);
+            if (++reads % 64 == 0 && pos > READ_SIZE) {
+                pos -= READ_SIZE / 2;
+                io.seek(pos, 0);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void spin(long us) {
+        long end = System.nanoTime() + us * 1000;
+        while (System.nanoTime() < end)
+            ;
+    }
+
+    private static void report(int round, String name, long nanos) {
+        System.out.println(String.format(Locale.US, "round %d %-10s %8.1f MB/s",
+                round, name, DATA_SIZE / (1024.0 * 1024.0) / (nanos / 1e9)));
+    }
+}
@@ -0,0 +1,238 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadAheadAndroidIOTest {
+    private static final int AVSEEK_SIZE = 0x10000;
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_CUR = 1;
+    private static final int SEEK_END = 2;
+
+    private static final int CAPACITY = 1024;
+    private static final int CHUNK_SIZE = 128;
+    private static final int DATA_SIZE = 16 * 1024;
+    private static final long TIMEOUT_MS = 5000;
+
+    /*
+     * An IAndroidIO over an array, counting the calls the decorator makes.
+     */
+    static class MemoryAndroidIO implements IAndroidIO {
+        final byte[] mData;
+        int mPos;
+        volatile int mOpenCount;
+        volatile int mReadCount;
+        volatile int mSeekCount;
+        volatile int mCloseCount;
+
+        MemoryAndroidIO(byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public int open(String url) throws IOException {
+            mOpenCount++;
+            mPos = 0;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] buffer, int size) throws IOException {
+            mReadCount++;
+            if (mPos >= mData.length)
+                return -1;
+            int n = Math.min(size, mData.length - mPos);
+            System.arraycopy(mData, mPos, buffer, 0, n);
+            mPos += n;
+            return n;
+        }
+
+        @Override
+        public long seek(long offset, int whence) throws IOException {
+            if (whence == AVSEEK_SIZE)
+                return mData.length;
+            mSeekCount++;
+            if (whence != SEEK_SET || offset < 0 || offset > mData.length)
+                return -1;
+            mPos = (int) offset;
+            return offset;
+        }
+
+        @Override
+        public int close() throws IOException {
+            mCloseCount++;
+            return 0;
+        }
+    }
+
+    private MemoryAndroidIO mSource;
+    private ReadAheadAndroidIO mReadAhead;
+
+    static byte[] sequence(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) (i * 31 + i / 256);
+        return data;
+    }
+
+    // reads size bytes, retrying reads which timed out, fewer at the end of the source
+    static byte[] readFully(ReadAheadAndroidIO io, int size) throws IOException {
+        byte[] data = new byte[size];
+        byte[] buffer = new byte[size];
+        int read = 0;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (read < size) {
+            int n = io.read(buffer, size - read);
+            if (n < 0)
+                break;
+            System.arraycopy(buffer, 0, data, read, n);
+            read += n;
+            if (System.currentTimeMillis() > deadline)
+                fail("no data");
+        }
+        return Arrays.copyOf(data, read);
+    }
+
+    private byte[] expected(int position, int size) {
+        return Arrays.copyOfRange(mSource.mData, position, position + size);
+    }
+
+    // waits until the prefetch thread filled the ring from position, it stops when full
+    private void awaitFilled() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        long buffered;
+        do {
+            buffered = mReadAhead.getBufferedBytes();
+            Thread.sleep(5);
+        } while (buffered != mReadAhead.getBufferedBytes() && System.currentTimeMillis() < deadline);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mSource = new MemoryAndroidIO(sequence(DATA_SIZE));
+        mReadAhead = new ReadAheadAndroidIO(mSource, CAPACITY, CHUNK_SIZE);
+        assertEquals(0, mReadAhead.open("memory:"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mReadAhead.close();
+    }
+
+    @Test
+    public void readsTheWholeSource() throws IOException {
+        assertArrayEquals(mSource.mData, readFully(mReadAhead, DATA_SIZE + 1));
+
+        byte[] buffer = new byte[16];
+        assertEquals(-1, mReadAhead.read(buffer, buffer.length));
+    }
+
+    @Test
+    public void seekBackIntoTheRingIsAHit() throws Exception {
+        assertArrayEquals(expected(0, 600), readFully(mReadAhead, 600));
+        awaitFilled();
+        int seeks = mSource.mSeekCount;
+
+        // the quarter of the ring behind the read position is kept
+        long target = 600 - CAPACITY / 4;
+        assertEquals(target, mReadAhead.seek(target, SEEK_SET));
+        assertEquals(1, mReadAhead.getSeekHitCount());
+        assertEquals(0, mReadAhead.getSeekMissCount());
+        assertEquals(seeks, mSource.mSeekCount);
+        assertArrayEquals(expected((int) target, 400), readFully(mReadAhead, 400));
+    }
+
+    @Test
+    public void seekForwardIntoTheRingIsAHit() throws Exception {
+        assertArrayEquals(expected(0, 100), readFully(mReadAhead, 100));
+        awaitFilled();
+
+        assertEquals(300, mReadAhead.seek(200, SEEK_CUR));
+        assertEquals(1, mReadAhead.getSeekHitCount());
+        assertEquals(0, mSource.mSeekCount);
+        assertArrayEquals(expected(300, 500), readFully(mReadAhead, 500));
+    }
+
+    @Test
+    public void seekBehindTheRingIsAMiss() throws Exception {
+        assertArrayEquals(expected(0, 3000), readFully(mReadAhead, 3000));
+
+        assertEquals(100, mReadAhead.seek(100, SEEK_SET));
+        assertEquals(0, mReadAhead.getSeekHitCount());
+        assertEquals(1, mReadAhead.getSeekMissCount());
+        assertEquals(1, mSource.mSeekCount);
+        assertArrayEquals(expected(100, 2000), readFully(mReadAhead, 2000));
+    }
+
+    @Test
+    public void seekPastTheRingIsAMiss() throws Exception {
+        assertArrayEquals(expected(0, 100), readFully(mReadAhead, 100));
+
+        long target = 100 + 4 * CAPACITY;
+        assertEquals(target, mReadAhead.seek(target, SEEK_SET));
+        assertEquals(1, mReadAhead.getSeekMissCount());
+        assertArrayEquals(expected((int) target, 1500), readFully(mReadAhead, 1500));
+    }
+
+    @Test
+    public void seekFromTheEnd() throws IOException {
+        assertEquals(DATA_SIZE, mReadAhead.seek(0, AVSEEK_SIZE));
+        assertEquals(DATA_SIZE - 10, mReadAhead.seek(-10, SEEK_END));
+        assertArrayEquals(expected(DATA_SIZE - 10, 10), readFully(mReadAhead, 100));
+        assertEquals(-1, mReadAhead.seek(-1, SEEK_SET));
+    }
+
+    @Test
+    public void reopenStartsFromTheBeginning() throws Exception {
+        assertArrayEquals(expected(0, 5000), readFully(mReadAhead, 5000));
+        assertEquals(DATA_SIZE, mReadAhead.seek(0, AVSEEK_SIZE));
+        mReadAhead.close();
+
+        assertEquals(0, mReadAhead.open("memory:"));
+        assertEquals(2, mSource.mOpenCount);
+        assertArrayEquals(expected(0, 600), readFully(mReadAhead, 600));
+        awaitFilled();
+
+        // a position of the previous open, no longer in the ring
+        assertEquals(4800, mReadAhead.seek(4800, SEEK_SET));
+        assertEquals(1, mReadAhead.getSeekMissCount());
+        assertArrayEquals(expected(4800, 100), readFully(mReadAhead, 100));
+    }
+
+    @Test
+    public void reopenAfterTheEnd() throws Exception {
+        assertArrayEquals(mSource.mData, readFully(mReadAhead, DATA_SIZE + 1));
+        assertEquals(-1, mReadAhead.read(new byte[16], 16));
+        mReadAhead.close();
+
+        assertEquals(0, mReadAhead.open("memory:"));
+        assertArrayEquals(expected(0, 100), readFully(mReadAhead, 100));
+    }
+
+    @Test
+    public void seekAfterCloseFails() throws IOException {
+        mReadAhead.close();
+        int seeks = mSource.mSeekCount;
+        assertEquals(-1, mReadAhead.seek(8000, SEEK_SET));
+        assertEquals(-1, mReadAhead.seek(0, AVSEEK_SIZE));
+        assertEquals(seeks, mSource.mSeekCount);
+        assertEquals(1, mSource.mCloseCount);
+    }
+
+    @Test
+    public void readsOnlyAheadOfTheConsumer() throws Exception {
+        awaitFilled();
+        // the ring bounds how far the prefetch thread gets
+        assertTrue(mReadAhead.getBufferedBytes() <= CAPACITY);
+        assertTrue(mSource.mReadCount <= CAPACITY / CHUNK_SIZE + 1);
+    }
+}
@@ -33,6 +33,9 @@ jobject J4AC_java_nio_ByteBuffer__allocateDirect__asGlobalRef__catchAll(JNIEnv *
 jobject J4AC_java_nio_ByteBuffer__limit(JNIEnv *env, jobject thiz, jint newLimit);
 jobject J4AC_java_nio_ByteBuffer__limit__catchAll(JNIEnv *env, jobject thiz, jint newLimit);
 jobject J4AC_java_nio_ByteBuffer__limit__asGlobalRef__catchAll(JNIEnv *env, jobject thiz, jint newLimit);
+jobject J4AC_java_nio_ByteBuffer__position(JNIEnv *env, jobject thiz, jint newPosition);
+jobject J4AC_java_nio_ByteBuffer__position__catchAll(JNIEnv *env, jobject thiz, jint newPosition);
+jobject J4AC_java_nio_ByteBuffer__position__asGlobalRef__catchAll(JNIEnv *env, jobject thiz, jint newPosition);
 int J4A_loadClass__J4AC_java_nio_ByteBuffer(JNIEnv *env);
 
 #define J4A_HAVE_SIMPLE__J4AC_java_nio_ByteBuffer
@@ -46,6 +49,9 @@ int J4A_loadClass__J4AC_java_nio_ByteBuffer(JNIEnv *env);
 #define J4AC_ByteBuffer__limit J4AC_java_nio_ByteBuffer__limit
 #define J4AC_ByteBuffer__limit__asGlobalRef__catchAll J4AC_java_nio_ByteBuffer__limit__asGlobalRef__catchAll
 #define J4AC_ByteBuffer__limit__catchAll J4AC_java_nio_ByteBuffer__limit__catchAll
+#define J4AC_ByteBuffer__position J4AC_java_nio_ByteBuffer__position
+#define J4AC_ByteBuffer__position__asGlobalRef__catchAll J4AC_java_nio_ByteBuffer__position__asGlobalRef__catchAll
+#define J4AC_ByteBuffer__position__catchAll J4AC_java_nio_ByteBuffer__position__catchAll
 #define J4A_loadClass__J4AC_ByteBuffer J4A_loadClass__J4AC_java_nio_ByteBuffer
 
 #endif//J4A__java_nio_ByteBuffer__H
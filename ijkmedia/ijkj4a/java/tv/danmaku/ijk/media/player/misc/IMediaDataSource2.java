@@ -0,0 +1,10 @@
+package tv.danmaku.ijk.media.player.misc;
+
+import java.nio.ByteBuffer;
+
+@SimpleCClassName
+public interface IMediaDataSource2 {
+    int  readAt(long position, ByteBuffer buffer);
+    long getSize();
+    void close();
+}
@@ -33,10 +33,12 @@ enum media_event_type {
     MEDIA_NOP               = 0,        // interface test message
     MEDIA_PREPARED          = 1,
     MEDIA_PLAYBACK_COMPLETE = 2,
-    MEDIA_BUFFERING_UPDATE  = 3,        // arg1 = percentage, arg2 = cached duration
+    MEDIA_BUFFERING_UPDATE  = 3,        // arg1 = buffered position in milliseconds, arg2 = percentage of the duration
     MEDIA_SEEK_COMPLETE     = 4,
     MEDIA_SET_VIDEO_SIZE    = 5,        // arg1 = width, arg2 = height
     MEDIA_GET_IMG_STATE     = 6,        // arg1 = timestamp, arg2 = result code, obj = file name
+    MEDIA_FRAME_AVAILABLE   = 7,        // handled off the main thread, see IjkMediaPlayer.OnFrameAvailableListener
+    MEDIA_SOURCE_SWITCHED   = 8,        // arg1 = elapsed milliseconds, arg2 = error, 0 if the new source is playing
     MEDIA_TIMED_TEXT        = 99,       // not supported yet
     MEDIA_ERROR             = 100,      // arg1, arg2
     MEDIA_INFO              = 200,      // arg1, arg2
@@ -149,6 +151,33 @@ enum media_info_type {
     MEDIA_INFO_VIDEO_RECORD_COMPLETE = 10400,
 };
 
+/*
+ * layout of the long[] filled by IjkMediaPlayer._getFrameInto(),
+ * keep in sync with IjkMediaPlayer.java
+ */
+enum frame_info_index {
+    FRAME_INFO_WIDTH  = 0,
+    FRAME_INFO_HEIGHT = 1,
+    FRAME_INFO_STRIDE = 2,
+    FRAME_INFO_PTS    = 3,      // milliseconds
+    FRAME_INFO_SIZE   = 4,      // bytes
+    FRAME_INFO_FORMAT = 5,      // FFP_FRAME_FORMAT_*
+    FRAME_INFO_TRACKING_COUNT = 6,  // number of records written to the tracking array
+    FRAME_INFO_COUNT  = 7,
+};
+
+/* one record per tracked object in the int[] handed to java, see ObjectTrackingInfo.unpack() */
+enum tracking_record_index {
+    TRACKING_RECORD_X        = 0,
+    TRACKING_RECORD_Y        = 1,
+    TRACKING_RECORD_WIDTH    = 2,
+    TRACKING_RECORD_HEIGHT   = 3,
+    TRACKING_RECORD_ID       = 4,
+    TRACKING_RECORD_CATEGORY = 5,
+    TRACKING_RECORD_SCORE    = 6,   // raw bits of the float score
+    TRACKING_RECORD_SIZE     = 7,
+};
+
 typedef struct ijkmp_mediacodecinfo_context
 {
     char mime_type[128];    //< in
@@ -29,7 +29,7 @@
 #include "j4a/class/java/util/ArrayList.h"
 #include "j4a/class/android/os/Bundle.h"
 #include "j4a/class/tv/danmaku/ijk/media/player/IjkMediaPlayer.h"
-#include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource.h"
+#include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource2.h"
 #include "j4a/class/tv/danmaku/ijk/media/player/misc/IAndroidIO.h"
 #include "ijksdl/ijksdl_log.h"
 #include "../ff_ffplay.h"
@@ -102,7 +102,7 @@ static int64_t jni_set_media_data_source(JNIEnv* env, jobject thiz, jobject medi
 
     jobject old = (jobject) (intptr_t) J4AC_IjkMediaPlayer__mNativeMediaDataSource__get__catchAll(env, thiz);
     if (old) {
-        J4AC_IMediaDataSource__close__catchAll(env, old);
+        J4AC_IMediaDataSource2__close__catchAll(env, old);
         J4A_DeleteGlobalRef__p(env, &old);
         J4AC_IjkMediaPlayer__mNativeMediaDataSource__set__catchAll(env, thiz, 0);
     }
@@ -175,6 +175,29 @@ LABEL_RETURN:
     ijkmp_dec_ref_p(&mp);
 }
 
+static void
+IjkMediaPlayer_switchDataSource(JNIEnv *env, jobject thiz, jstring path)
+{
+    MPTRACE("%s\n", __func__);
+    int retval = 0;
+    const char *c_path = NULL;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(path, env, "java/lang/IllegalArgumentException", "mpjni: switchDataSource: null path", LABEL_RETURN);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: switchDataSource: null mp", LABEL_RETURN);
+
+    c_path = (*env)->GetStringUTFChars(env, path, NULL );
+    JNI_CHECK_GOTO(c_path, env, "java/lang/OutOfMemoryError", "mpjni: switchDataSource: path.string oom", LABEL_RETURN);
+
+    ALOGV("switchDataSource: path %s", c_path);
+    retval = ijkmp_switch_data_source(mp, c_path);
+    (*env)->ReleaseStringUTFChars(env, path, c_path);
+
+    IJK_CHECK_MPRET_GOTO(retval, env, LABEL_RETURN);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+}
+
 static void
 IjkMediaPlayer_setDataSourceFd(JNIEnv *env, jobject thiz, jint fd)
 {
@@ -496,6 +519,72 @@ LABEL_RETURN:
     return value;
 }
 
+/* layout of the arrays filled by _getStatistics(), keep in sync with PlayerStats.java */
+static const int g_stat_long_props[] = {
+    FFP_PROP_INT64_VIDEO_DECODER,
+    FFP_PROP_INT64_VIDEO_CACHED_DURATION,
+    FFP_PROP_INT64_AUDIO_CACHED_DURATION,
+    FFP_PROP_INT64_VIDEO_CACHED_BYTES,
+    FFP_PROP_INT64_AUDIO_CACHED_BYTES,
+    FFP_PROP_INT64_VIDEO_CACHED_PACKETS,
+    FFP_PROP_INT64_AUDIO_CACHED_PACKETS,
+    FFP_PROP_INT64_BIT_RATE,
+    FFP_PROP_INT64_TCP_SPEED,
+    FFP_PROP_INT64_LATEST_SEEK_LOAD_DURATION,
+    FFP_PROP_INT64_TRAFFIC_STATISTIC_BYTE_COUNT,
+    FFP_PROP_INT64_ASYNC_STATISTIC_BUF_BACKWARDS,
+    FFP_PROP_INT64_ASYNC_STATISTIC_BUF_FORWARDS,
+    FFP_PROP_INT64_ASYNC_STATISTIC_BUF_CAPACITY,
+    FFP_PROP_INT64_CACHE_STATISTIC_PHYSICAL_POS,
+    FFP_PROP_INT64_CACHE_STATISTIC_FILE_FORWARDS,
+    FFP_PROP_INT64_CACHE_STATISTIC_FILE_POS,
+    FFP_PROP_INT64_CACHE_STATISTIC_COUNT_BYTES,
+    FFP_PROP_INT64_LOGICAL_FILE_SIZE,
+    FFP_PROP_INT64_VIDEO_FRAME_TIMESTAMP,
+    FFP_PROP_INT64_META_QUEUE_COUNT,
+    FFP_PROP_INT64_META_QUEUE_OVERFLOW_COUNT,
+    FFP_PROP_INT64_META_QUEUE_STALE_COUNT,
+    FFP_PROP_INT64_REFRESH_LATE_AVG,
+    FFP_PROP_INT64_REFRESH_LATE_MAX,
+    FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES,
+    FFP_PROP_INT64_CACHE_STATISTIC_FILE_READ_BYTES,
+    FFP_PROP_INT64_CACHE_STATISTIC_HIT_COUNT,
+    FFP_PROP_INT64_CACHE_STATISTIC_MISS_COUNT,
+    FFP_PROP_INT64_CACHE_STATISTIC_EVICT_COUNT,
+    FFP_PROP_INT64_CACHE_STATISTIC_EVICT_BYTES,
+};
+
+static const int g_stat_float_props[] = {
+    FFP_PROP_FLOAT_VIDEO_DECODE_FRAMES_PER_SECOND,
+    FFP_PROP_FLOAT_VIDEO_OUTPUT_FRAMES_PER_SECOND,
+    FFP_PROP_FLOAT_PLAYBACK_RATE,
+    FFP_PROP_FLOAT_PLAYBACK_VOLUME,
+    FFP_PROP_FLOAT_AVDELAY,
+    FFP_PROP_FLOAT_AVDIFF,
+    FFP_PROP_FLOAT_DROP_FRAME_RATE,
+};
+
+#define NB_STAT_LONGS   ((int) NELEM(g_stat_long_props))
+#define NB_STAT_FLOATS  ((int) NELEM(g_stat_float_props))
+
+static void
+IjkMediaPlayer_getStatistics(JNIEnv *env, jobject thiz, jlongArray jlongs, jfloatArray jfloats)
+{
+    int64_t longs[NB_STAT_LONGS];
+    float floats[NB_STAT_FLOATS];
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: getStatistics: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(jlongs && (*env)->GetArrayLength(env, jlongs) >= NB_STAT_LONGS, env, "java/lang/IllegalArgumentException", "mpjni: getStatistics: invalid longs", LABEL_RETURN);
+    JNI_CHECK_GOTO(jfloats && (*env)->GetArrayLength(env, jfloats) >= NB_STAT_FLOATS, env, "java/lang/IllegalArgumentException", "mpjni: getStatistics: invalid floats", LABEL_RETURN);
+
+    ijkmp_get_properties(mp, g_stat_long_props, longs, NB_STAT_LONGS, g_stat_float_props, floats, NB_STAT_FLOATS);
+    (*env)->SetLongArrayRegion(env, jlongs, 0, NB_STAT_LONGS, (const jlong *) longs);
+    (*env)->SetFloatArrayRegion(env, jfloats, 0, NB_STAT_FLOATS, (const jfloat *) floats);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+}
+
 static void
 ijkMediaPlayer_setPropertyLong(JNIEnv *env, jobject thiz, jint id, jlong value)
 {
@@ -621,6 +710,82 @@ LABEL_RETURN:
     ijkmp_dec_ref_p(&mp);
 }
 
+static jlong
+IjkMediaPlayer_native_compileOptions(JNIEnv *env, jclass clazz, jintArray categories, jobjectArray names, jobjectArray values, jbooleanArray unknown)
+{
+    MPTRACE("%s\n", __func__);
+    FFOptionSet *set = NULL;
+    jint *c_categories = NULL;
+    jboolean *c_unknown = NULL;
+    jsize count = 0;
+    int failed = 1;
+    JNI_CHECK_GOTO(categories && names && values && unknown, env, "java/lang/IllegalArgumentException", "mpjni: compileOptions: null array", LABEL_RETURN);
+
+    count = (*env)->GetArrayLength(env, categories);
+    JNI_CHECK_GOTO((*env)->GetArrayLength(env, names) == count &&
+                   (*env)->GetArrayLength(env, values) == count &&
+                   (*env)->GetArrayLength(env, unknown) == count,
+                   env, "java/lang/IllegalArgumentException", "mpjni: compileOptions: array length mismatch", LABEL_RETURN);
+
+    set = ffp_option_set_create();
+    JNI_CHECK_GOTO(set, env, "java/lang/OutOfMemoryError", "mpjni: compileOptions: set oom", LABEL_RETURN);
+    c_categories = (*env)->GetIntArrayElements(env, categories, NULL);
+    JNI_CHECK_GOTO(c_categories, env, "java/lang/OutOfMemoryError", "mpjni: compileOptions: categories oom", LABEL_RETURN);
+    c_unknown = (*env)->GetBooleanArrayElements(env, unknown, NULL);
+    JNI_CHECK_GOTO(c_unknown, env, "java/lang/OutOfMemoryError", "mpjni: compileOptions: unknown oom", LABEL_RETURN);
+
+    for (jsize i = 0; i < count; i++) {
+        jstring name = (*env)->GetObjectArrayElement(env, names, i);
+        jstring value = (*env)->GetObjectArrayElement(env, values, i);
+        const char *c_name = name ? (*env)->GetStringUTFChars(env, name, NULL) : NULL;
+        const char *c_value = value ? (*env)->GetStringUTFChars(env, value, NULL) : NULL;
+        int ret = AVERROR(ENOMEM);
+
+        if (c_name && (c_value || !value))
+            ret = ffp_option_set_add(set, c_categories[i], c_name, c_value);
+        c_unknown[i] = ret == 1 ? JNI_TRUE : JNI_FALSE;
+
+        if (c_name)
+            (*env)->ReleaseStringUTFChars(env, name, c_name);
+        if (c_value)
+            (*env)->ReleaseStringUTFChars(env, value, c_value);
+        SDL_JNI_DeleteLocalRefP(env, &name);
+        SDL_JNI_DeleteLocalRefP(env, &value);
+        JNI_CHECK_GOTO(ret >= 0, env, "java/lang/IllegalArgumentException", "mpjni: compileOptions: invalid option", LABEL_RETURN);
+    }
+    failed = 0;
+
+LABEL_RETURN:
+    if (c_categories)
+        (*env)->ReleaseIntArrayElements(env, categories, c_categories, JNI_ABORT);
+    if (c_unknown)
+        (*env)->ReleaseBooleanArrayElements(env, unknown, c_unknown, 0);
+    if (failed)
+        ffp_option_set_free_p(&set);
+    return (jlong) (intptr_t) set;
+}
+
+static void
+IjkMediaPlayer_native_freeOptions(JNIEnv *env, jclass clazz, jlong handle)
+{
+    FFOptionSet *set = (FFOptionSet *) (intptr_t) handle;
+    ffp_option_set_free_p(&set);
+}
+
+static void
+IjkMediaPlayer_setOptions(JNIEnv *env, jobject thiz, jlong handle)
+{
+    MPTRACE("%s\n", __func__);
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: setOptions: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(handle, env, "java/lang/IllegalArgumentException", "mpjni: setOptions: null options", LABEL_RETURN);
+
+    ijkmp_set_option_set(mp, (const FFOptionSet *) (intptr_t) handle);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+}
+
 static jstring
 IjkMediaPlayer_getColorFormatName(JNIEnv *env, jclass clazz, jint mediaCodecColorFormat)
 {
@@ -937,6 +1102,43 @@ inline static void post_event2(JNIEnv *env, jobject weak_this, int what, int arg
     // MPTRACE("post_event2()=void");
 }
 
+// messages the client masked out are dropped here, before they cross JNI
+static int event_wanted(IjkMediaPlayer *mp, int what)
+{
+    int mask = mp->ffplayer->event_mask;
+
+    switch (what) {
+        case FFP_MSG_BUFFERING_UPDATE:
+            return mask & FFP_EVENT_MASK_BUFFERING_UPDATE;
+        case FFP_MSG_VIDEO_SIZE_CHANGED:
+        case FFP_MSG_SAR_CHANGED:
+            return mask & FFP_EVENT_MASK_VIDEO_SIZE;
+        case FFP_MSG_TIMED_TEXT:
+            return mask & FFP_EVENT_MASK_TIMED_TEXT;
+        case FFP_MSG_GET_IMG_STATE:
+            return mask & FFP_EVENT_MASK_GET_IMG_STATE;
+        case FFP_MSG_VIDEO_RENDERING_START:
+        case FFP_MSG_AUDIO_RENDERING_START:
+        case FFP_MSG_VIDEO_ROTATION_CHANGED:
+        case FFP_MSG_AUDIO_DECODED_START:
+        case FFP_MSG_VIDEO_DECODED_START:
+        case FFP_MSG_OPEN_INPUT:
+        case FFP_MSG_FIND_STREAM_INFO:
+        case FFP_MSG_COMPONENT_OPEN:
+        case FFP_MSG_BUFFERING_START:
+        case FFP_MSG_BUFFERING_END:
+        case FFP_MSG_ACCURATE_SEEK_COMPLETE:
+        case FFP_MSG_VIDEO_SEEK_RENDERING_START:
+        case FFP_MSG_AUDIO_SEEK_RENDERING_START:
+        case FFP_MSG_FRAME_DROPPED:
+        case FFP_MSG_FRAME_NOT_DROPPED:
+        case FFP_MSG_VIDEO_RECORD_COMPLETE:
+            return mask & FFP_EVENT_MASK_INFO;
+        default:
+            return 1;
+    }
+}
+
 static void message_loop_n(JNIEnv *env, IjkMediaPlayer *mp)
 {
     jobject weak_thiz = (jobject) ijkmp_get_weak_thiz(mp);
@@ -952,6 +1154,11 @@ static void message_loop_n(JNIEnv *env, IjkMediaPlayer *mp)
         // block-get should never return 0
         assert(retval > 0);
 
+        if (!event_wanted(mp, msg.what)) {
+            msg_free_res(&msg);
+            continue;
+        }
+
         switch (msg.what) {
         case FFP_MSG_FLUSH:
             MPTRACE("FFP_MSG_FLUSH:\n");
@@ -1017,10 +1224,14 @@ static void message_loop_n(JNIEnv *env, IjkMediaPlayer *mp)
             MPTRACE("FFP_MSG_BUFFERING_END:\n");
             post_event(env, weak_thiz, MEDIA_INFO, MEDIA_INFO_BUFFERING_END, msg.arg1);
             break;
-        case FFP_MSG_BUFFERING_UPDATE:
+        case FFP_MSG_BUFFERING_UPDATE: {
             // MPTRACE("FFP_MSG_BUFFERING_UPDATE: %d, %d", msg.arg1, msg.arg2);
-            post_event(env, weak_thiz, MEDIA_BUFFERING_UPDATE, msg.arg1, msg.arg2);
+            // percent of the duration, so that java does not need to call back for it
+            long duration = ijkmp_get_duration(mp);
+            int percent = duration > 0 ? (int) av_clip64((int64_t) FFMAX(msg.arg1, 0) * 100 / duration, 0, 100) : 0;
+            post_event(env, weak_thiz, MEDIA_BUFFERING_UPDATE, msg.arg1, percent);
             break;
+        }
         case FFP_MSG_BUFFERING_BYTES_UPDATE:
             break;
         case FFP_MSG_BUFFERING_TIME_UPDATE:
@@ -1072,6 +1283,13 @@ static void message_loop_n(JNIEnv *env, IjkMediaPlayer *mp)
         case FFP_MSG_VIDEO_RECORD_COMPLETE:
             post_event(env, weak_thiz, MEDIA_INFO, MEDIA_INFO_VIDEO_RECORD_COMPLETE, msg.arg1);
             break;
+        case FFP_MSG_VIDEO_FRAME_AVAILABLE:
+            post_event(env, weak_thiz, MEDIA_FRAME_AVAILABLE, 0, 0);
+            break;
+        case FFP_MSG_SOURCE_SWITCHED:
+            MPTRACE("FFP_MSG_SOURCE_SWITCHED: %d ms, %d\n", msg.arg1, msg.arg2);
+            post_event(env, weak_thiz, MEDIA_SOURCE_SWITCHED, msg.arg1, msg.arg2);
+            break;
 
         default:
             ALOGE("unknown FFP_MSG_xxx(%d)\n", msg.what);
@@ -1206,20 +1424,26 @@ IjkMediaPlayer_getRGBAFrame(JNIEnv *env, jobject thiz, jintArray jwidth, jintArr
     int size = w * h * 4;
 
     jframe = (*env)->NewByteArray( env, size );
-    jbyte *cframe = (*env)->GetByteArrayElements( env, jframe, NULL );
-    memcpy(cframe, frame, size);
+    if (jframe) {
+        jbyte *cframe = (*env)->GetByteArrayElements( env, jframe, NULL );
+        memcpy(cframe, frame, size);
+        (*env)->ReleaseByteArrayElements( env, jframe, cframe, 0 );
+    }
     free(frame);
 
     width[0] = w;
     height[0] = h;
 
+    // meta_str is a copy made under frame_mutex, it stays valid after the next frame
     if (meta_str) {
-        jmeta_str = (*env)->NewStringUTF(env, meta_str);
-        (*env)->SetObjectArrayElement(env, jmeta, 0, jmeta_str);
-	(*env)->DeleteLocalRef(env, jmeta_str);
+        if (jmeta && (*env)->GetArrayLength(env, jmeta) > 0) {
+            jmeta_str = (*env)->NewStringUTF(env, meta_str);
+            (*env)->SetObjectArrayElement(env, jmeta, 0, jmeta_str);
+            (*env)->DeleteLocalRef(env, jmeta_str);
+        }
+        free((void *)meta_str);
     }
 
-    (*env)->ReleaseByteArrayElements( env, jframe, cframe, 0 );
     (*env)->ReleaseIntArrayElements( env, jwidth, width, 0 );
     (*env)->ReleaseIntArrayElements( env, jheight, height, 0 );
 
@@ -1228,6 +1452,123 @@ LABEL_RETURN:
     return jframe;
 }
 
+/*
+ * write the objects of tracking as TRACKING_RECORD_SIZE ints each into jrecords
+ * return the number of records written
+ */
+static int
+pack_tracking_info(JNIEnv *env, const TrackingInfo *tracking, jintArray jrecords)
+{
+    jint records[FFP_TRACKING_MAX_OBJECTS * TRACKING_RECORD_SIZE];
+    int count = 0;
+
+    if (!jrecords || tracking->nb_objects <= 0)
+        return 0;
+
+    count = FFMIN(tracking->nb_objects, (*env)->GetArrayLength(env, jrecords) / TRACKING_RECORD_SIZE);
+    for (int i = 0; i < count; i++) {
+        const TrackingObject *obj = &tracking->objects[i];
+        jint *record = &records[i * TRACKING_RECORD_SIZE];
+        union { float f; jint i; } score = { .f = obj->score };
+
+        record[TRACKING_RECORD_X]        = obj->x;
+        record[TRACKING_RECORD_Y]        = obj->y;
+        record[TRACKING_RECORD_WIDTH]    = obj->width;
+        record[TRACKING_RECORD_HEIGHT]   = obj->height;
+        record[TRACKING_RECORD_ID]       = obj->id;
+        record[TRACKING_RECORD_CATEGORY] = obj->category;
+        record[TRACKING_RECORD_SCORE]    = score.i;
+    }
+    if (count > 0)
+        (*env)->SetIntArrayRegion(env, jrecords, 0, count * TRACKING_RECORD_SIZE, records);
+    return count;
+}
+
+static jint
+IjkMediaPlayer_getFrameInto(JNIEnv *env, jobject thiz, jobject jbuffer, jlongArray jinfo, jintArray jtracking)
+{
+    jlong retval = -1;
+    jlong info[FRAME_INFO_COUNT];
+    uint8_t *dst = NULL;
+    jlong capacity = 0;
+    int format = 0, w = 0, h = 0, stride = 0;
+    int64_t pts = 0;
+    TrackingInfo tracking;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, NULL, "mpjni: getFrameInto: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(jbuffer, env, "java/lang/IllegalArgumentException", "mpjni: getFrameInto: null buffer", LABEL_RETURN);
+    JNI_CHECK_GOTO(jinfo && (*env)->GetArrayLength(env, jinfo) >= FRAME_INFO_COUNT, env, "java/lang/IllegalArgumentException", "mpjni: getFrameInto: invalid info", LABEL_RETURN);
+
+    dst = (uint8_t *) (*env)->GetDirectBufferAddress(env, jbuffer);
+    capacity = (*env)->GetDirectBufferCapacity(env, jbuffer);
+    JNI_CHECK_GOTO(dst && capacity >= 0, env, "java/lang/IllegalArgumentException", "mpjni: getFrameInto: not a direct buffer", LABEL_RETURN);
+
+    tracking.nb_objects = 0;
+    retval = ijkmp_get_frame_into(mp, dst, (size_t) capacity, &format, &w, &h, &stride, &pts, &tracking);
+    if (retval < 0)
+        goto LABEL_RETURN;
+
+    info[FRAME_INFO_WIDTH]  = w;
+    info[FRAME_INFO_HEIGHT] = h;
+    info[FRAME_INFO_STRIDE] = stride;
+    info[FRAME_INFO_PTS]    = pts;
+    info[FRAME_INFO_SIZE]   = retval;
+    info[FRAME_INFO_FORMAT] = format;
+    info[FRAME_INFO_TRACKING_COUNT] = pack_tracking_info(env, &tracking, jtracking);
+    (*env)->SetLongArrayRegion(env, jinfo, 0, FRAME_INFO_COUNT, info);
+
+    retval = retval > capacity ? retval : 0;
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+    return (jint) retval;
+}
+
+static jint
+IjkMediaPlayer_getTrackingInfo(JNIEnv *env, jobject thiz, jintArray jrecords, jlongArray jpts)
+{
+    jint retval = -1;
+    TrackingInfo tracking;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, NULL, "mpjni: getTrackingInfo: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(jrecords, env, "java/lang/IllegalArgumentException", "mpjni: getTrackingInfo: null records", LABEL_RETURN);
+
+    if (ijkmp_get_tracking_info(mp, &tracking) < 0)
+        goto LABEL_RETURN;
+
+    retval = pack_tracking_info(env, &tracking, jrecords);
+    if (jpts && (*env)->GetArrayLength(env, jpts) > 0) {
+        jlong jpts_value = tracking.pts;
+        (*env)->SetLongArrayRegion(env, jpts, 0, 1, &jpts_value);
+    }
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+    return retval;
+}
+
+static void
+IjkMediaPlayer_setFrameOutput(JNIEnv *env, jobject thiz, jint format, jint width, jint height, jint crop_x, jint crop_y, jint crop_w, jint crop_h)
+{
+    FrameOutput output;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: setFrameOutput: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(format >= FFP_FRAME_FORMAT_RGBA && format <= FFP_FRAME_FORMAT_RGB24, env, "java/lang/IllegalArgumentException", "mpjni: setFrameOutput: invalid format", LABEL_RETURN);
+    JNI_CHECK_GOTO(width >= 0 && height >= 0 && crop_x >= 0 && crop_y >= 0 && crop_w >= 0 && crop_h >= 0, env, "java/lang/IllegalArgumentException", "mpjni: setFrameOutput: negative size", LABEL_RETURN);
+
+    output.format = format;
+    output.width  = width;
+    output.height = height;
+    output.crop_x = crop_x;
+    output.crop_y = crop_y;
+    output.crop_w = crop_w;
+    output.crop_h = crop_h;
+    ijkmp_set_frame_output(mp, &output);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+}
+
 
 
 // ----------------------------------------------------------------------------
@@ -1239,7 +1580,7 @@ static JNINativeMethod g_methods[] = {
         (void *) IjkMediaPlayer_setDataSourceAndHeaders
     },
     { "_setDataSourceFd",       "(I)V",     (void *) IjkMediaPlayer_setDataSourceFd },
-    { "_setDataSource",         "(Ltv/danmaku/ijk/media/player/misc/IMediaDataSource;)V", (void *)IjkMediaPlayer_setDataSourceCallback },
+    { "_setDataSource",         "(Ltv/danmaku/ijk/media/player/misc/IMediaDataSource2;)V", (void *)IjkMediaPlayer_setDataSourceCallback },
     { "_setAndroidIOCallback",  "(Ltv/danmaku/ijk/media/player/misc/IAndroidIO;)V", (void *)IjkMediaPlayer_setAndroidIOCallback },
 
     { "_setVideoSurface",       "(Landroid/view/Surface;)V", (void *) IjkMediaPlayer_setVideoSurface },
@@ -1247,6 +1588,7 @@ static JNINativeMethod g_methods[] = {
     { "_start",                 "()V",      (void *) IjkMediaPlayer_start },
     { "_stop",                  "()V",      (void *) IjkMediaPlayer_stop },
     { "seekTo",                 "(J)V",     (void *) IjkMediaPlayer_seekTo },
+    { "_switchDataSource",      "(Ljava/lang/String;)V", (void *) IjkMediaPlayer_switchDataSource },
     { "_pause",                 "()V",      (void *) IjkMediaPlayer_pause },
     { "isPlaying",              "()Z",      (void *) IjkMediaPlayer_isPlaying },
     { "getCurrentPosition",     "()J",      (void *) IjkMediaPlayer_getCurrentPosition },
@@ -1264,6 +1606,9 @@ static JNINativeMethod g_methods[] = {
 
     { "_setOption",             "(ILjava/lang/String;Ljava/lang/String;)V", (void *) IjkMediaPlayer_setOption },
     { "_setOption",             "(ILjava/lang/String;J)V",                  (void *) IjkMediaPlayer_setOptionLong },
+    { "_setOptions",            "(J)V",                                     (void *) IjkMediaPlayer_setOptions },
+    { "native_compileOptions",  "([I[Ljava/lang/String;[Ljava/lang/String;[Z)J", (void *) IjkMediaPlayer_native_compileOptions },
+    { "native_freeOptions",     "(J)V",                                     (void *) IjkMediaPlayer_native_freeOptions },
 
     { "_getColorFormatName",    "(I)Ljava/lang/String;",    (void *) IjkMediaPlayer_getColorFormatName },
     { "_getVideoCodecInfo",     "()Ljava/lang/String;",     (void *) IjkMediaPlayer_getVideoCodecInfo },
@@ -1275,6 +1620,7 @@ static JNINativeMethod g_methods[] = {
     { "_setPropertyFloat",      "(IF)V",                    (void *) ijkMediaPlayer_setPropertyFloat },
     { "_getPropertyLong",       "(IJ)J",                    (void *) ijkMediaPlayer_getPropertyLong },
     { "_setPropertyLong",       "(IJ)V",                    (void *) ijkMediaPlayer_setPropertyLong },
+    { "_getStatistics",         "([J[F)V",                  (void *) IjkMediaPlayer_getStatistics },
     { "_setStreamSelected",     "(IZ)V",                    (void *) ijkMediaPlayer_setStreamSelected },
 
     { "native_profileBegin",    "(Ljava/lang/String;)V",    (void *) IjkMediaPlayer_native_profileBegin },
@@ -1283,6 +1629,9 @@ static JNINativeMethod g_methods[] = {
     { "native_setLogLevel",     "(I)V",                     (void *) IjkMediaPlayer_native_setLogLevel },
     { "_setFrameAtTime",        "(Ljava/lang/String;JJII)V", (void *) IjkMediaPlayer_setFrameAtTime },
     { "getRGBAFrame",           "([I[I[Ljava/lang/String;)[B", (void *) IjkMediaPlayer_getRGBAFrame },
+    { "_getFrameInto",          "(Ljava/nio/ByteBuffer;[J[I)I", (void *) IjkMediaPlayer_getFrameInto },
+    { "_setFrameOutput",        "(IIIIIII)V",               (void *) IjkMediaPlayer_setFrameOutput },
+    { "_getTrackingInfo",       "([I[J)I",                  (void *) IjkMediaPlayer_getTrackingInfo },
 };
 
 JNIEXPORT jint JNI_OnLoad(JavaVM *vm, void *reserved)
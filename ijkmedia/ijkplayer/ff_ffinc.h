@@ -48,5 +48,6 @@ typedef int (*ijk_inject_callback)(void *opaque, int type, void *data, size_t da
 #define FFP_OPT_CATEGORY_SWS    3
 #define FFP_OPT_CATEGORY_PLAYER 4
 #define FFP_OPT_CATEGORY_SWR    5
+#define FFP_OPT_CATEGORY_NB     6
 
 #endif
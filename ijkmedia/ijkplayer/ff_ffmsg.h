@@ -55,6 +55,8 @@
 #define FFP_MSG_FRAME_DROPPED               1100
 #define FFP_MSG_FRAME_NOT_DROPPED           1200
 #define FFP_MSG_VIDEO_RECORD_COMPLETE       1300
+#define FFP_MSG_VIDEO_FRAME_AVAILABLE       1400    /* at most one pending, read the frame with getFrame() */
+#define FFP_MSG_SOURCE_SWITCHED             1500    /* arg1 = elapsed milliseconds, arg2 = error, the old source keeps playing on error */
 
 #define FFP_MSG_VIDEO_DECODER_OPEN          10001
 
@@ -108,7 +110,48 @@
 #define FFP_PROP_INT64_LOGICAL_FILE_SIZE                20209
 #define FFP_PROP_INT64_SHARE_CACHE_DATA                 20210
 #define FFP_PROP_INT64_IMMEDIATE_RECONNECT              20211
+#define FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES       20212
+#define FFP_PROP_INT64_CACHE_STATISTIC_FILE_READ_BYTES  20213
+#define FFP_PROP_INT64_CACHE_STATISTIC_HIT_COUNT        20214
+#define FFP_PROP_INT64_CACHE_STATISTIC_MISS_COUNT       20215
+#define FFP_PROP_INT64_CACHE_STATISTIC_EVICT_COUNT      20216
+#define FFP_PROP_INT64_CACHE_STATISTIC_EVICT_BYTES      20217
 
 #define FFP_PROP_INT64_VIDEO_FRAME_TIMESTAMP            20301
+#define FFP_PROP_INT64_FRAME_AVAILABLE_NOTIFY           20302
+#define FFP_PROP_INT64_META_QUEUE_COUNT                 20303
+#define FFP_PROP_INT64_META_QUEUE_OVERFLOW_COUNT        20304
+#define FFP_PROP_INT64_META_QUEUE_STALE_COUNT           20305
+#define FFP_PROP_INT64_EVENT_MASK                       20306
+
+/* groups of messages a client can opt out of with FFP_PROP_INT64_EVENT_MASK,
+ * state changes like prepared, completed, seek complete and errors are always sent */
+#define FFP_EVENT_MASK_BUFFERING_UPDATE     (1 << 0)
+#define FFP_EVENT_MASK_VIDEO_SIZE           (1 << 1)    /* FFP_MSG_VIDEO_SIZE_CHANGED and FFP_MSG_SAR_CHANGED */
+#define FFP_EVENT_MASK_INFO                 (1 << 2)
+#define FFP_EVENT_MASK_TIMED_TEXT           (1 << 3)
+#define FFP_EVENT_MASK_GET_IMG_STATE        (1 << 4)
+#define FFP_EVENT_MASK_ALL                  (~0)
+
+#define FFP_PROP_INT64_REFRESH_LATE_AVG                 20320   /* microseconds */
+#define FFP_PROP_INT64_REFRESH_LATE_MAX                 20321   /* microseconds */
+
+#define FFP_PROP_INT64_NATIVE_INVOKE_MASK               20307
+/* FFP_PROP_INT64_NATIVE_INVOKE_COUNT + FFP_INVOKE_*: times the event was raised, subscribed or not */
+#define FFP_PROP_INT64_NATIVE_INVOKE_COUNT              20310
+
+/* AVAPP_CTRL_* and AVAPP_EVENT_* forwarded to the inject callback,
+ * only those with (1 << FFP_INVOKE_*) set in FFP_PROP_INT64_NATIVE_INVOKE_MASK are */
+#define FFP_INVOKE_CTRL_WILL_TCP_OPEN           0
+#define FFP_INVOKE_CTRL_DID_TCP_OPEN            1
+#define FFP_INVOKE_CTRL_WILL_HTTP_OPEN          2
+#define FFP_INVOKE_CTRL_WILL_LIVE_OPEN          3
+#define FFP_INVOKE_CTRL_WILL_CONCAT_SEGMENT_OPEN 4
+#define FFP_INVOKE_EVENT_WILL_HTTP_OPEN         5
+#define FFP_INVOKE_EVENT_DID_HTTP_OPEN          6
+#define FFP_INVOKE_EVENT_WILL_HTTP_SEEK         7
+#define FFP_INVOKE_EVENT_DID_HTTP_SEEK          8
+#define FFP_INVOKE_NB                           9
+#define FFP_INVOKE_MASK_ALL                     (~0)
 
 #endif
@@ -144,6 +144,28 @@ inline static void msg_queue_put_simple3(MessageQueue *q, int what, uint64_t arg
     msg_queue_put(q, &msg);
 }
 
+/*
+ * Overwrites the arguments of the last message if it is a what as well,
+ * for messages which only carry the latest state. Messages keep their order.
+ */
+inline static void msg_queue_put_simple3_latest(MessageQueue *q, int what, uint64_t arg1, int arg2)
+{
+    AVMessage msg;
+
+    SDL_LockMutex(q->mutex);
+    if (q->last_msg && q->last_msg->what == what && !q->last_msg->obj) {
+        q->last_msg->arg1 = arg1;
+        q->last_msg->arg2 = arg2;
+    } else {
+        msg_init_msg(&msg);
+        msg.what = what;
+        msg.arg1 = arg1;
+        msg.arg2 = arg2;
+        msg_queue_put_private(q, &msg);
+    }
+    SDL_UnlockMutex(q->mutex);
+}
+
 inline static void msg_obj_free_l(void *obj)
 {
     av_free(obj);
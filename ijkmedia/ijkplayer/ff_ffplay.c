@@ -64,6 +64,7 @@
 #endif
 
 #include "ijksdl/ijksdl_log.h"
+#include "ijksdl/ffmpeg/ijksdl_image_convert.h"
 #include "ijkavformat/ijkavformat.h"
 #include "ff_cmdutils.h"
 #include "ff_fferror.h"
@@ -71,6 +72,7 @@
 #include "ff_ffpipenode.h"
 #include "ff_ffplay_debug.h"
 #include "ijkmeta.h"
+#include "ijkavutil/ijkthreadpool.h"
 #include "ijkversion.h"
 #include "ijkplayer.h"
 #include <stdatomic.h>
@@ -128,129 +130,579 @@ static AVPacket flush_pkt;
 #define IJKVERSION_GET_MINOR(x)     ((x >>  8) & 0xFF)
 #define IJKVERSION_GET_MICRO(x)     ((x      ) & 0xFF)
 
-#define META_QUEUE_SIZE 50
 #define STOP_RECORDING_TIMEOUT_MSEC 3000
 
-int meta_queue_init(MetaDataQueue *queue, int size)
+/*
+ * MetaDataQueue is a ring of MetaData kept in pts order, the oldest at head.
+ * Entries arrive in decode order from read_thread and are taken out in
+ * display order by update_frame_meta().
+ */
+#define META_QUEUE_AT(q, i) ((q)->data[((q)->head + (i)) % (q)->size])
+
+int meta_queue_init(MetaDataQueue *queue, int size, int overflow)
 {
+    memset(queue, 0, sizeof(MetaDataQueue));
+    queue->data = (MetaData **)calloc(size, sizeof(MetaData *));
+    if (!queue->data)
+        return AVERROR(ENOMEM);
     queue->mutex = SDL_CreateMutex();
-    queue->data = (MetaData **)malloc(size * sizeof(MetaData *));
+    if (!queue->mutex) {
+        free(queue->data);
+        queue->data = NULL;
+        return AVERROR(ENOMEM);
+    }
     queue->size = size;
-    queue->last = -1;
+    queue->overflow = overflow;
     return 0;
 }
 
+void meta_data_free(MetaData *data)
+{
+    if (!data)
+        return;
+    free(data->meta);
+    free(data->objects);
+    free(data);
+}
+
+// called with queue->mutex held
+static void meta_queue_drop_l(MetaDataQueue *queue, int n)
+{
+    for (int i = 0; i < n; i++) {
+        meta_data_free(META_QUEUE_AT(queue, 0));
+        META_QUEUE_AT(queue, 0) = NULL;
+        queue->head = (queue->head + 1) % queue->size;
+        queue->count--;
+    }
+}
+
+void meta_queue_flush(MetaDataQueue *queue)
+{
+    SDL_LockMutex(queue->mutex);
+    meta_queue_drop_l(queue, queue->count);
+    SDL_UnlockMutex(queue->mutex);
+}
+
 void meta_queue_destroy(MetaDataQueue *queue)
 {
+    if (!queue->data)
+        return;
+    meta_queue_flush(queue);
     SDL_DestroyMutex(queue->mutex);
     free(queue->data);
+    queue->data = NULL;
 }
 
-MetaData *meta_queue_get(MetaDataQueue *queue)
+/*
+ * Takes ownership of data. Usually data has the largest pts and is appended,
+ * reordered streams only move the few entries of a GOP.
+ */
+void meta_queue_put(MetaDataQueue *queue, MetaData *data)
 {
+    int i;
+
     SDL_LockMutex(queue->mutex);
-    if (queue->last < 0) {
-        SDL_UnlockMutex(queue->mutex);
-        return NULL;
+    if (queue->count >= queue->size) {
+        queue->overflow_count++;
+        if (queue->overflow == FFP_META_OVERFLOW_DROP_NEWEST ||
+            data->pts < META_QUEUE_AT(queue, 0)->pts) {
+            SDL_UnlockMutex(queue->mutex);
+            meta_data_free(data);
+            return;
+        }
+        meta_queue_drop_l(queue, 1);
     }
 
-    MetaData *data = queue->data[0];
+    for (i = queue->count; i > 0 && META_QUEUE_AT(queue, i - 1)->pts > data->pts; i--)
+        META_QUEUE_AT(queue, i) = META_QUEUE_AT(queue, i - 1);
+    META_QUEUE_AT(queue, i) = data;
+    queue->count++;
+    queue->put_count++;
     SDL_UnlockMutex(queue->mutex);
-    return data;
 }
 
-MetaData *meta_queue_pop(MetaDataQueue *queue)
+static int64_t meta_queue_get_stat(MetaDataQueue *queue, int id)
 {
-    SDL_LockMutex(queue->mutex);
-    if (queue->last < 0) {
-        SDL_UnlockMutex(queue->mutex);
-        return NULL;
-    }
+    int64_t value;
 
-    MetaData *data = queue->data[0];
-    for (int i = 0; i < queue->last; i++) {
-        queue->data[i] = queue->data[i+1];
+    SDL_LockMutex(queue->mutex);
+    switch (id) {
+        case FFP_PROP_INT64_META_QUEUE_OVERFLOW_COUNT:  value = queue->overflow_count;  break;
+        case FFP_PROP_INT64_META_QUEUE_STALE_COUNT:     value = queue->stale_count;     break;
+        case FFP_PROP_INT64_META_QUEUE_COUNT:
+        default:                                        value = queue->count;           break;
     }
-    queue->last--;
     SDL_UnlockMutex(queue->mutex);
-    return data;
+    return value;
 }
 
-void meta_queue_put(MetaDataQueue *queue, MetaData *data)
+/*
+ * Remove and return the entry of pts, to be freed by the caller, or NULL if
+ * there is none. Older entries belong to pictures that were never displayed
+ * and are dropped.
+ */
+MetaData *meta_queue_take_by_pts(MetaDataQueue *queue, int64_t pts)
 {
+    MetaData *data = NULL;
+    int lo = 0;
+    int hi;
+
     SDL_LockMutex(queue->mutex);
-    if (queue->last >= queue->size - 1) {
-        SDL_UnlockMutex(queue->mutex);
-        return;
+    hi = queue->count;
+    while (lo < hi) {
+        int mid = (lo + hi) / 2;
+        if (META_QUEUE_AT(queue, mid)->pts < pts)
+            lo = mid + 1;
+        else
+            hi = mid;
+    }
+    queue->stale_count += lo;
+    meta_queue_drop_l(queue, lo);
+
+    if (queue->count > 0 && META_QUEUE_AT(queue, 0)->pts == pts) {
+        data = META_QUEUE_AT(queue, 0);
+        META_QUEUE_AT(queue, 0) = NULL;
+        queue->head = (queue->head + 1) % queue->size;
+        queue->count--;
     }
-    queue->data[++queue->last] = data;
     SDL_UnlockMutex(queue->mutex);
+    return data;
 }
 
-MetaData *get_meta_by_pts(MetaDataQueue *queue, int64_t pts)
+/*
+ * Minimal JSON scanner for the tracking metadata. It walks the payload in
+ * place and only looks at the members it needs, nothing gets allocated.
+ */
+static const char *json_skip_ws(const char *p)
 {
-    MetaData *data = NULL;
-    while ((data = meta_queue_get(queue)) != NULL) {
-        if (data->pts == pts) {
-            break;
-        } else if (data->pts < pts) {
-            data = meta_queue_pop(queue);
-            free(data->meta);
-            free(data);
-        } else {
-            data = NULL;
-            break;
-        }
+    while (*p == ' ' || *p == '\t' || *p == '\r' || *p == '\n')
+        p++;
+    return p;
+}
+
+// return the end of the value starting at p, NULL if it is malformed
+static const char *json_skip_value(const char *p)
+{
+    int depth = 0;
+
+    p = json_skip_ws(p);
+    if (*p != '{' && *p != '[' && *p != '"') {
+        while (*p && *p != ',' && *p != '}' && *p != ']' && *p != ' ' && *p != '\t' && *p != '\r' && *p != '\n')
+            p++;
+        return p;
     }
-    return data;
+
+    do {
+        switch (*p) {
+            case '\0':
+                return NULL;
+            case '"':
+                for (p++; *p != '"'; p++) {
+                    if (*p == '\0')
+                        return NULL;
+                    if (*p == '\\' && p[1] != '\0')
+                        p++;
+                }
+                break;
+            case '{':
+            case '[':
+                depth++;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                break;
+        }
+        p++;
+    } while (depth > 0);
+    return p;
 }
 
-int SEI_user_data(AVPacket *pkt, enum AVCodecID codecId)
+// return the value of member key of the object at obj, NULL if there is none
+static const char *json_get_member(const char *obj, const char *key)
 {
-    if (codecId == AV_CODEC_ID_H264) {
-        return pkt->data[0] == 0x0 && pkt->data[1] == 0x0 && pkt->data[2] == 0x0 && 
-            pkt->data[3] == 0x1 && pkt->data[4] == 0x6 && pkt->data[5] == 0x5;
-    } else if (codecId == AV_CODEC_ID_HEVC) {
-        return pkt->data[0] == 0x0 && pkt->data[1] == 0x0 && pkt->data[2] == 0x0 && 
-            pkt->data[3] == 0x1 && (pkt->data[4] == 0x4E || pkt->data[4] == 0x50) && pkt->data[5] == 0x0 && pkt->data[6] == 0x5;
-    } else {
-        return 0;
+    size_t key_len = strlen(key);
+    const char *p;
+
+    if (!obj)
+        return NULL;
+    p = json_skip_ws(obj);
+    if (*p++ != '{')
+        return NULL;
+
+    for (;;) {
+        const char *name;
+        const char *value;
+        int match;
+
+        p = json_skip_ws(p);
+        if (*p != '"')
+            return NULL;
+        name = p + 1;
+        p = json_skip_value(p);
+        if (!p)
+            return NULL;
+        match = (size_t)(p - 1 - name) == key_len && !strncmp(name, key, key_len);
+
+        p = json_skip_ws(p);
+        if (*p != ':')
+            return NULL;
+        value = json_skip_ws(p + 1);
+        if (match)
+            return value;
+
+        p = json_skip_value(value);
+        if (!p)
+            return NULL;
+        p = json_skip_ws(p);
+        if (*p++ != ',')
+            return NULL;
     }
 }
 
-unsigned char *get_SEI_payload(AVPacket *pkt, enum AVCodecID codecId) {
-    unsigned char *data;
-    if (codecId == AV_CODEC_ID_H264) {
-        data = &pkt->data[6];
-    } else if (codecId == AV_CODEC_ID_HEVC) {
-        data = &pkt->data[7];
-    } else {
+// *it starts at the '[' of an array, return its next element or NULL at the end
+static const char *json_next_element(const char **it)
+{
+    const char *p;
+    const char *end;
+
+    if (!*it)
         return NULL;
+    p = json_skip_ws(*it);
+    if (*p != '[' && *p != ',')
+        return NULL;
+    p = json_skip_ws(p + 1);
+    if (*p == ']' || !(end = json_skip_value(p)))
+        return NULL;
+    *it = end;
+    return p;
+}
+
+static int json_get_number(const char *value, double *number)
+{
+    char *end;
+
+    if (!value)
+        return -1;
+    *number = strtod(value, &end);
+    return end == value ? -1 : 0;
+}
+
+static int tracking_category(const char *value)
+{
+    static const struct {
+        const char *name;
+        int category;
+    } categories[] = {
+        { "HUMAN",      FFP_TRACKING_CATEGORY_HUMAN },
+        { "PERSON",     FFP_TRACKING_CATEGORY_HUMAN },
+        { "PEDESTRIAN", FFP_TRACKING_CATEGORY_HUMAN },
+        { "VEHICLE",    FFP_TRACKING_CATEGORY_VEHICLE },
+        { "CAR",        FFP_TRACKING_CATEGORY_VEHICLE },
+        { "PET",        FFP_TRACKING_CATEGORY_PET },
+        { "ANIMAL",     FFP_TRACKING_CATEGORY_PET },
+    };
+    double number;
+
+    if (!value)
+        return FFP_TRACKING_CATEGORY_UNKNOWN;
+    if (*value != '"')
+        return json_get_number(value, &number) < 0 ? FFP_TRACKING_CATEGORY_UNKNOWN : (int)number;
+
+    for (int i = 0; i < FF_ARRAY_ELEMS(categories); i++) {
+        size_t len = strlen(categories[i].name);
+        if (!av_strncasecmp(value + 1, categories[i].name, len) && value[1 + len] == '"')
+            return categories[i].category;
+    }
+    return FFP_TRACKING_CATEGORY_UNKNOWN;
+}
+
+// fill obj from an od/aroi item, which holds its rect in "obj" or "roi"
+static int parse_tracking_object(const char *item, int category, TrackingObject *obj)
+{
+    const char *box = json_get_member(item, "obj");
+    const char *rect;
+    const char *value;
+    double coord[4];
+    double number;
+    int n = 0;
+
+    if (!box)
+        box = json_get_member(item, "roi");
+    rect = json_get_member(box, "rect");
+    while (n < 4 && (value = json_next_element(&rect)) != NULL) {
+        if (json_get_number(value, &coord[n]) < 0)
+            return -1;
+        n++;
+    }
+    if (n < 4)
+        return -1;
+
+    obj->x        = (int)coord[0];
+    obj->y        = (int)coord[1];
+    obj->width    = (int)(coord[2] - coord[0]);
+    obj->height   = (int)(coord[3] - coord[1]);
+    obj->id       = json_get_number(json_get_member(box, "id"), &number) < 0 ? -1 : (int)number;
+    obj->category = category;
+    if (category == FFP_TRACKING_CATEGORY_UNKNOWN)
+        obj->category = tracking_category(json_get_member(box, "cat"));
+
+    if (json_get_number(json_get_member(box, "conf"), &number) < 0 &&
+        json_get_number(json_get_member(box, "score"), &number) < 0)
+        number = -1;
+    obj->score = (float)number;
+    return 0;
+}
+
+/*
+ * Parse the SEI tracking metadata into objects, the detections of "od" or the
+ * region of "aroi" when there are none.
+ * return the number of objects, at most max_objects
+ */
+static int parse_tracking_meta(const char *meta, TrackingObject *objects, int max_objects)
+{
+    const char *iva;
+    const char *list;
+    const char *item;
+    int n = 0;
+
+    iva = json_get_member(meta, "AGTX");
+    if (!iva)
+        iva = json_get_member(meta, "agtx");
+    iva = json_get_member(iva, "iva");
+
+    list = json_get_member(iva, "od");
+    while (n < max_objects && (item = json_next_element(&list)) != NULL) {
+        if (parse_tracking_object(item, FFP_TRACKING_CATEGORY_UNKNOWN, &objects[n]) == 0)
+            n++;
+    }
+
+    if (n == 0) {
+        item = json_get_member(iva, "aroi");
+        if (item && parse_tracking_object(item, FFP_TRACKING_CATEGORY_ROI, &objects[n]) == 0)
+            n++;
     }
-    int payload_size = 0;
-    int payload_size_size = 1;
-    while (*data == 255) {
-        payload_size += 255;
-        payload_size_size++;
-        data++;
+    return n;
+}
+
+/*
+ * Add the SEI payload meta to *data, creating it for the first payload of an
+ * access unit. Takes ownership of meta, only the first payload is kept as text.
+ */
+static void meta_data_add(MetaData **data, unsigned char *meta)
+{
+    TrackingObject objects[FFP_TRACKING_MAX_OBJECTS];
+    MetaData *md = *data;
+    int nb_objects;
+
+    if (!md) {
+        md = (MetaData *)calloc(1, sizeof(MetaData));
+        if (!md) {
+            free(meta);
+            return;
+        }
+        *data = md;
+    }
+
+    nb_objects = parse_tracking_meta((const char *)meta, objects, FFP_TRACKING_MAX_OBJECTS - md->nb_objects);
+    if (nb_objects > 0) {
+        TrackingObject *all = (TrackingObject *)realloc(md->objects, (md->nb_objects + nb_objects) * sizeof(TrackingObject));
+        if (all) {
+            memcpy(&all[md->nb_objects], objects, nb_objects * sizeof(TrackingObject));
+            md->objects = all;
+            md->nb_objects += nb_objects;
+        }
+    }
+
+    if (!md->meta)
+        md->meta = meta;
+    else
+        free(meta);
+}
+
+/*
+ * NAL unit scanner for SEI user data unregistered, works in place on Annex B
+ * and length prefixed (avcC/hvcC) packets.
+ */
+#define H264_NAL_SEI            6
+#define H264_NAL_AUD            9
+#define H264_NAL_FILLER         12
+#define HEVC_NAL_AUD            35
+#define HEVC_NAL_FD             38
+#define HEVC_NAL_SEI_PREFIX     39
+#define HEVC_NAL_SEI_SUFFIX     40
+#define SEI_TYPE_USER_DATA_UNREGISTERED 5
+
+typedef struct NalReader {
+    const uint8_t *p;
+    const uint8_t *end;
+    int length_size;            // 0 for Annex B start codes
+} NalReader;
+
+// return the start of the next 00 00 01 at or after p, or end
+static const uint8_t *find_start_code(const uint8_t *p, const uint8_t *end)
+{
+    while (p + 2 < end) {
+        if (p[2] > 1)
+            p += 3;
+        else if (p[0] == 0 && p[1] == 0 && p[2] == 1)
+            return p;
+        else
+            p++;
     }
-    payload_size += *data;
-    data++;
-    data += 16;
-    payload_size -= 16;
-    
-    unsigned char *meta = (unsigned char *)malloc(payload_size + 1);
-    memcpy(meta, data, payload_size);
-    meta[payload_size] = 0;
+    return end;
+}
+
+static int next_nal(NalReader *r, const uint8_t **nal, int *nal_size)
+{
+    const uint8_t *start;
+    const uint8_t *end;
 
-    int meta_size = 23 + payload_size_size + payload_size;
-    int remain_size = pkt->size - meta_size;
-    if (remain_size > 0) {
-        memmove(pkt->data, &pkt->data[meta_size], remain_size);
-        av_shrink_packet(pkt, remain_size);
+    if (r->length_size) {
+        uint32_t size = 0;
+        if (r->end - r->p < r->length_size)
+            return 0;
+        for (int i = 0; i < r->length_size; i++)
+            size = (size << 8) | *r->p++;
+        if (size > r->end - r->p)
+            return 0;
+        *nal = r->p;
+        *nal_size = size;
+        r->p += size;
+        return 1;
     }
 
-    return meta;
+    start = find_start_code(r->p, r->end);
+    if (start == r->end)
+        return 0;
+    start += 3;
+    end = find_start_code(start, r->end);
+    r->p = end;
+    // leading zero of a 4 byte start code, or trailing_zero_8bits
+    while (end > start && end[-1] == 0)
+        end--;
+    *nal = start;
+    *nal_size = (int)(end - start);
+    return 1;
+}
+
+// reads the RBSP of a NAL unit, dropping emulation prevention bytes
+typedef struct RbspReader {
+    const uint8_t *p;
+    const uint8_t *end;
+    int zeros;
+} RbspReader;
+
+static int rbsp_byte(RbspReader *r)
+{
+    int b;
+
+    if (r->p < r->end && r->zeros >= 2 && *r->p == 3) {
+        r->p++;
+        r->zeros = 0;
+    }
+    if (r->p >= r->end)
+        return -1;
+    b = *r->p++;
+    r->zeros = b ? 0 : r->zeros + 1;
+    return b;
+}
+
+// payloadType and payloadSize are coded as a run of 0xFF plus a last byte
+static int rbsp_sei_value(RbspReader *r)
+{
+    int value = 0;
+    int b;
+
+    do {
+        if ((b = rbsp_byte(r)) < 0)
+            return -1;
+        value += b;
+    } while (b == 0xFF);
+    return value;
+}
+
+static void parse_sei_nal(const uint8_t *nal, int nal_size, int header_size, MetaData **data)
+{
+    RbspReader r = { nal + header_size, nal + nal_size, 0 };
+
+    // the rbsp ends with a stop bit in the last byte
+    while (r.end - r.p > 1 || (r.end - r.p == 1 && *r.p != 0x80)) {
+        int type = rbsp_sei_value(&r);
+        int size = rbsp_sei_value(&r);
+        if (type < 0 || size < 0 || size > r.end - r.p)
+            return;
+
+        if (type == SEI_TYPE_USER_DATA_UNREGISTERED && size > 16) {
+            unsigned char *meta = (unsigned char *)malloc(size - 16 + 1);
+            int i;
+            if (!meta)
+                return;
+            // uuid_iso_iec_11578
+            for (i = 0; i < 16; i++)
+                rbsp_byte(&r);
+            for (i = 0; i < size - 16; i++) {
+                int b = rbsp_byte(&r);
+                if (b < 0)
+                    break;
+                meta[i] = (unsigned char)b;
+            }
+            meta[i] = 0;
+            meta_data_add(data, meta);
+        } else {
+            for (int i = 0; i < size; i++)
+                rbsp_byte(&r);
+        }
+    }
+}
+
+static int nal_length_size(const AVCodecParameters *par)
+{
+    // avcC and hvcC start with configurationVersion 1, Annex B with a start code
+    if (!par->extradata || par->extradata_size < 7 || par->extradata[0] != 1)
+        return 0;
+    if (par->codec_id == AV_CODEC_ID_H264)
+        return (par->extradata[4] & 3) + 1;
+    if (par->codec_id == AV_CODEC_ID_HEVC && par->extradata_size >= 23)
+        return (par->extradata[21] & 3) + 1;
+    return 0;
+}
+
+/*
+ * Add the SEI user data unregistered payloads found anywhere in the access
+ * unit to *data. The packet is left untouched, decoders skip these SEI.
+ * return 1 if the packet only holds SEI, AUD or filler data, and so has no
+ * picture to decode
+ */
+static int scan_sei_user_data(const AVPacket *pkt, const AVCodecParameters *par, MetaData **data)
+{
+    NalReader r = { pkt->data, pkt->data + pkt->size, nal_length_size(par) };
+    const uint8_t *nal;
+    int nal_size;
+    int other = 0;
+
+    if (par->codec_id != AV_CODEC_ID_H264 && par->codec_id != AV_CODEC_ID_HEVC)
+        return 0;
+
+    while (next_nal(&r, &nal, &nal_size)) {
+        if (nal_size < 2)
+            continue;
+
+        if (par->codec_id == AV_CODEC_ID_H264) {
+            int type = nal[0] & 0x1F;
+            if (type == H264_NAL_SEI)
+                parse_sei_nal(nal, nal_size, 1, data);
+            else if (type != H264_NAL_AUD && type != H264_NAL_FILLER)
+                other = 1;
+        } else {
+            int type = (nal[0] >> 1) & 0x3F;
+            if (type == HEVC_NAL_SEI_PREFIX || type == HEVC_NAL_SEI_SUFFIX)
+                parse_sei_nal(nal, nal_size, 2, data);
+            else if (type != HEVC_NAL_AUD && type != HEVC_NAL_FD)
+                other = 1;
+        }
+    }
+    return pkt->size > 0 && !other;
 }
 
 #if CONFIG_AVFILTER
@@ -531,6 +983,9 @@ static int convert_image(FFPlayer *ffp, AVFrame *src_frame, int64_t src_frame_pt
     float dar = 0;
     AVRational display_aspect_ratio;
     int file_name_length = 0;
+    int scratch_bytes = 0;
+    int use_libyuv = ffp->enable_libyuv &&
+                     (src_frame->format == AV_PIX_FMT_YUV420P || src_frame->format == AV_PIX_FMT_YUVJ420P);
 
     if (!height || !width || !img_info->width || !img_info->height) {
         ret = -1;
@@ -572,7 +1027,7 @@ static int convert_image(FFPlayer *ffp, AVFrame *src_frame, int64_t src_frame_pt
     avpkt.size = 0;
     avpkt.data = NULL;
 
-    if (!img_info->frame_img_convert_ctx) {
+    if (!img_info->frame_img_convert_ctx && !use_libyuv) {
         img_info->frame_img_convert_ctx = sws_getContext(width,
 		    height,
 		    src_frame->format,
@@ -621,7 +1076,9 @@ static int convert_image(FFPlayer *ffp, AVFrame *src_frame, int64_t src_frame_pt
         goto fail0;
     }
     bytes = av_image_get_buffer_size(AV_PIX_FMT_RGB24, dst_width, dst_height, 1);
-	buffer = (uint8_t *) av_malloc(bytes * sizeof(uint8_t));
+    if (use_libyuv)
+        scratch_bytes = ijk_image_scale_convert_scratch_size(dst_width, dst_height);
+	buffer = (uint8_t *) av_malloc((bytes + scratch_bytes) * sizeof(uint8_t));
     if (!buffer) {
         ret = -1;
         av_log(NULL, AV_LOG_ERROR, "%s av_image_get_buffer_size failed\n", __func__);
@@ -646,13 +1103,43 @@ static int convert_image(FFPlayer *ffp, AVFrame *src_frame, int64_t src_frame_pt
         goto fail2;
     }
 
-    ret = sws_scale(img_info->frame_img_convert_ctx,
-            (const uint8_t * const *) src_frame->data,
-            src_frame->linesize,
-            0,
-            src_frame->height,
-            dst_frame->data,
-            dst_frame->linesize);
+    ret = -1;
+    if (use_libyuv) {
+        ret = ijk_image_scale_convert(width,
+                height,
+                (const uint8_t **) src_frame->data,
+                src_frame->linesize,
+                dst_width,
+                dst_height,
+                AV_PIX_FMT_RGB24,
+                dst_frame->data,
+                dst_frame->linesize,
+                (uint8_t *) buffer + bytes);
+        // libyuv returns 0 on success, sws_scale the output height
+        if (ret >= 0)
+            ret = dst_height;
+    }
+    if (ret < 0 && !img_info->frame_img_convert_ctx) {
+        img_info->frame_img_convert_ctx = sws_getContext(width,
+            height,
+            src_frame->format,
+            dst_width,
+            dst_height,
+            AV_PIX_FMT_RGB24,
+            SWS_BICUBIC,
+            NULL,
+            NULL,
+            NULL);
+    }
+    if (ret < 0 && img_info->frame_img_convert_ctx) {
+        ret = sws_scale(img_info->frame_img_convert_ctx,
+                (const uint8_t * const *) src_frame->data,
+                src_frame->linesize,
+                0,
+                src_frame->height,
+                dst_frame->data,
+                dst_frame->linesize);
+    }
 
     if (ret <= 0) {
         ret = -1;
@@ -1006,71 +1493,325 @@ static size_t parse_ass_subtitle(const char *ass, char *output)
     return 0;
 }
 
-long ffp_get_frame_l(FFPlayer *ffp, uint8_t **data, int *width, int *height, unsigned char **meta)
+/*
+ * Frame conversion is lazy: put_to_frame_buffer() only converts while a listener
+ * is registered or a consumer read a frame within FRAME_GRAB_KEEPALIVE_MS.
+ * Otherwise a reader asks the refresh thread for the picture on screen with
+ * ffp_request_frame_l(), then waits up to FRAME_GRAB_WAIT_MS for it with
+ * ffp_wait_for_frame(), without holding the lock of the player.
+ */
+#define FRAME_GRAB_KEEPALIVE_MS 1000
+#define FRAME_GRAB_WAIT_MS      100
+
+/*
+ * return -1 if the frame buffer is up to date, otherwise the grab count
+ * to pass to ffp_wait_for_frame()
+ */
+int ffp_request_frame_l(FFPlayer *ffp)
 {
     VideoState *is = ffp->is;
+    int count;
+
+    if (!is)
+        return -1;
 
-    if (is->rgba_data == NULL) {
+    SDL_LockMutex(is->frame_mutex);
+    if (is->frame_data && (ffp->frame_available_notify ||
+                           (int64_t)SDL_GetTickHR() - is->frame_grab_time < FRAME_GRAB_KEEPALIVE_MS)) {
+        SDL_UnlockMutex(is->frame_mutex);
         return -1;
     }
-    
+
+    SDL_LockMutex(ffp->frame_grab_mutex);
+    count = ffp->frame_grab_count;
+    SDL_UnlockMutex(ffp->frame_grab_mutex);
+    is->frame_grab_req = 1;
+    // also redisplays the last picture while paused
+    is->force_refresh = 1;
+    SDL_UnlockMutex(is->frame_mutex);
+    return count;
+}
+
+/*
+ * return 0 once a frame was grabbed after ffp_request_frame_l() returned count,
+ * -1 if none was within FRAME_GRAB_WAIT_MS
+ */
+int ffp_wait_for_frame(FFPlayer *ffp, int count)
+{
+    int64_t deadline = (int64_t)SDL_GetTickHR() + FRAME_GRAB_WAIT_MS;
+    int ret = 0;
+
+    SDL_LockMutex(ffp->frame_grab_mutex);
+    while (ffp->frame_grab_count == count) {
+        int64_t left = deadline - (int64_t)SDL_GetTickHR();
+        if (left <= 0) {
+            ret = -1;
+            break;
+        }
+        SDL_CondWaitTimeout(ffp->frame_grab_cond, ffp->frame_grab_mutex, (uint32_t)left);
+    }
+    SDL_UnlockMutex(ffp->frame_grab_mutex);
+    return ret;
+}
+
+// called with frame_mutex held
+static int frame_grab_wanted(FFPlayer *ffp)
+{
+    VideoState *is = ffp->is;
+
+    return ffp->frame_available_notify || is->frame_grab_req ||
+           (int64_t)SDL_GetTickHR() - is->frame_grab_time < FRAME_GRAB_KEEPALIVE_MS;
+}
+
+// *data and *meta are copies, to be freed by the caller
+long ffp_get_frame_l(FFPlayer *ffp, uint8_t **data, int *width, int *height, unsigned char **meta)
+{
+    VideoState *is = ffp->is;
+
+    if (!is)
+        return -1;
+
     SDL_LockMutex(is->frame_mutex);
+    if (is->frame_data == NULL || is->frame_format != FFP_FRAME_FORMAT_RGBA) {
+        SDL_UnlockMutex(is->frame_mutex);
+        return -1;
+    }
+
+    is->frame_grab_time = (int64_t)SDL_GetTickHR();
     *width = is->frame_width;
     *height = is->frame_height;
-    *data = (uint8_t *)malloc(*width * *height * 4);
-    memcpy(*data, is->rgba_data, *width * *height * 4);
-    *meta = is->meta ? is->meta->meta : NULL;
+    *data = (uint8_t *)malloc(is->frame_size);
+    memcpy(*data, is->frame_data, is->frame_size);
+    *meta = is->meta && is->meta->meta ? (unsigned char *)strdup((const char *)is->meta->meta) : NULL;
     SDL_UnlockMutex(is->frame_mutex);
     return 0;
 }
 
+static void copy_tracking_info(TrackingInfo *dst, const TrackingInfo *src)
+{
+    dst->pts = src->pts;
+    dst->nb_objects = src->nb_objects;
+    memcpy(dst->objects, src->objects, src->nb_objects * sizeof(TrackingObject));
+}
+
+/*
+ * Copy the latest grabbed frame into a caller-owned buffer.
+ * return < 0 if no frame is available, otherwise the byte size of the frame.
+ * Nothing is copied when the returned size is larger than capacity.
+ */
+long ffp_get_frame_into_l(FFPlayer *ffp, uint8_t *dst, size_t capacity, int *format, int *width, int *height, int *stride, int64_t *pts, TrackingInfo *tracking)
+{
+    VideoState *is = ffp->is;
+    long size;
+
+    if (!is || !dst) {
+        return -1;
+    }
+
+    SDL_LockMutex(is->frame_mutex);
+    if (is->frame_data == NULL) {
+        SDL_UnlockMutex(is->frame_mutex);
+        return -1;
+    }
+
+    is->frame_grab_time = (int64_t)SDL_GetTickHR();
+    *format = is->frame_format;
+    *width  = is->frame_width;
+    *height = is->frame_height;
+    *stride = is->frame_stride;
+    *pts    = is->frame_pts;
+    size    = (long)is->frame_size;
+    if (size <= capacity) {
+        memcpy(dst, is->frame_data, size);
+        if (tracking)
+            copy_tracking_info(tracking, &is->frame_tracking);
+    }
+    SDL_UnlockMutex(is->frame_mutex);
+    return size;
+}
+
+void ffp_set_frame_output(FFPlayer *ffp, const FrameOutput *output)
+{
+    VideoState *is = ffp->is;
+
+    if (is)
+        SDL_LockMutex(is->frame_mutex);
+    ffp->frame_output = *output;
+    if (is) {
+        // the buffer still holds the previous layout, make the next read wait for a new one
+        is->frame_grab_time = 0;
+        SDL_UnlockMutex(is->frame_mutex);
+    }
+}
+
+static enum AVPixelFormat frame_output_pix_fmt(int format)
+{
+    switch (format) {
+        case FFP_FRAME_FORMAT_I420:     return AV_PIX_FMT_YUV420P;
+        case FFP_FRAME_FORMAT_NV12:     return AV_PIX_FMT_NV12;
+        case FFP_FRAME_FORMAT_GRAY8:    return AV_PIX_FMT_GRAY8;
+        case FFP_FRAME_FORMAT_RGB24:    return AV_PIX_FMT_RGB24;
+        case FFP_FRAME_FORMAT_RGBA:
+        default:                        return AV_PIX_FMT_RGBA;
+    }
+}
+
+/*
+ * Look up the SEI metadata of the picture on screen. Done for every displayed
+ * frame, also without enable-get-frame, so that tracking info can be read
+ * without grabbing pixels and the queue keeps draining.
+ */
+static void update_frame_meta(VideoState *is, Frame *frame)
+{
+    if (!is->video_st || isnan(frame->pts))
+        return;
+
+    SDL_LockMutex(is->frame_mutex);
+    meta_data_free(is->meta);
+    is->meta = meta_queue_take_by_pts(&is->metaq, llrint(frame->pts / av_q2d(is->video_st->time_base)));
+    is->tracking.pts = (int64_t)(frame->pts * 1000);
+    is->tracking.nb_objects = is->meta ? is->meta->nb_objects : 0;
+    if (is->tracking.nb_objects > 0)
+        memcpy(is->tracking.objects, is->meta->objects, is->tracking.nb_objects * sizeof(TrackingObject));
+    SDL_UnlockMutex(is->frame_mutex);
+}
+
+/*
+ * Copy the tracked objects of the picture on screen.
+ * return the number of objects, or -1 if no picture has been displayed
+ */
+int ffp_get_tracking_info_l(FFPlayer *ffp, TrackingInfo *tracking)
+{
+    VideoState *is = ffp->is;
+    int ret = -1;
+
+    if (!is)
+        return -1;
+
+    SDL_LockMutex(is->frame_mutex);
+    if (is->tracking.pts != AV_NOPTS_VALUE) {
+        copy_tracking_info(tracking, &is->tracking);
+        ret = tracking->nb_objects;
+    }
+    SDL_UnlockMutex(is->frame_mutex);
+    return ret;
+}
+
 static int put_to_frame_buffer(FFPlayer *ffp, Frame* frame)
 {
     VideoState *is = ffp->is;
+    FrameOutput *out = &ffp->frame_output;
 
     if (frame == NULL) {
         return -1;
     }
+    // 8 bit 4:2:0 only, a 10 bit picture has an I444P10LE overlay
+    if (frame->bmp->format != SDL_FCC_YV12 && frame->bmp->format != SDL_FCC_I420) {
+        return -1;
+    }
 
-    is->meta = get_meta_by_pts(&is->metaq, (int64_t)(frame->pts / av_q2d(is->video_st->time_base)));
+    SDL_LockMutex(is->frame_mutex);
+    if (!frame_grab_wanted(ffp)) {
+        SDL_UnlockMutex(is->frame_mutex);
+        return 0;
+    }
 
-    int w = frame->bmp->w;
-    int h = frame->bmp->h;
-    int video_changed = 0;
+    // crop origin is kept even so that it lands on a chroma sample
+    int src_w  = frame->bmp->w;
+    int src_h  = frame->bmp->h;
+    int crop_x = av_clip(out->crop_x, 0, src_w - 2) & ~1;
+    int crop_y = av_clip(out->crop_y, 0, src_h - 2) & ~1;
+    int crop_w = out->crop_w > 0 ? FFMIN(out->crop_w, src_w - crop_x) : src_w - crop_x;
+    int crop_h = out->crop_h > 0 ? FFMIN(out->crop_h, src_h - crop_y) : src_h - crop_y;
+    int w = out->width  > 0 ? out->width  : crop_w;
+    int h = out->height > 0 ? out->height : crop_h;
+    int format = out->format;
+    enum AVPixelFormat dst_fmt = frame_output_pix_fmt(format);
 
-    if (w != is->frame_width || h != is->frame_height) {
-        is->frame_width = w;
-        is->frame_height = h;
-        video_changed = 1;
+    if (format == FFP_FRAME_FORMAT_I420 || format == FFP_FRAME_FORMAT_NV12) {
+        w = FFMAX(w & ~1, 2);
+        h = FFMAX(h & ~1, 2);
     }
 
-    SDL_LockMutex(is->frame_mutex);
-    if (!is->rgba_data || video_changed) {
-        if (is->rgba_data) {
-            free(is->rgba_data);
+    int size = av_image_get_buffer_size(dst_fmt, w, h, 1);
+    if (size <= 0) {
+        SDL_UnlockMutex(is->frame_mutex);
+        return -1;
+    }
+    if (!is->frame_data || is->frame_capacity < size) {
+        av_freep(&is->frame_data);
+        is->frame_capacity = 0;
+        is->frame_data = (uint8_t *)av_malloc(size);
+        if (!is->frame_data) {
+            SDL_UnlockMutex(is->frame_mutex);
+            return -1;
         }
-        is->rgba_data = (uint8_t *)malloc(is->frame_width * is->frame_height * 4);
+        is->frame_capacity = size;
+    }
+
+    // both converters take Y, U, V, the overlay of the GLES2 renderer is YV12 on Android
+    int u = frame->bmp->format == SDL_FCC_YV12 ? 2 : 1;
+    int v = 3 - u;
+    uint8_t *src[3]= {frame->bmp->pixels[0], frame->bmp->pixels[u], frame->bmp->pixels[v]};
+    int src_stride[3]={frame->bmp->pitches[0], frame->bmp->pitches[u], frame->bmp->pitches[v]};
+    src[0] += crop_y * src_stride[0] + crop_x;
+    src[1] += (crop_y >> 1) * src_stride[1] + (crop_x >> 1);
+    src[2] += (crop_y >> 1) * src_stride[2] + (crop_x >> 1);
+
+    uint8_t *dst[4];
+    int stride[4];
+    av_image_fill_arrays(dst, stride, is->frame_data, dst_fmt, w, h, 1);
+
+    int ret = -1;
+    if (ffp->enable_libyuv) {
+        int scratch_size = ijk_image_scale_convert_scratch_size(w, h);
+        if (is->frame_scratch_size < scratch_size) {
+            av_freep(&is->frame_scratch);
+            is->frame_scratch = av_malloc(scratch_size);
+            is->frame_scratch_size = is->frame_scratch ? scratch_size : 0;
+        }
+        ret = ijk_image_scale_convert(crop_w, crop_h, (const uint8_t **)src, src_stride,
+                                      w, h, dst_fmt, dst, stride, is->frame_scratch);
     }
-
-#if defined(__ANDROID__)
-    uint8_t *src[3]= {frame->bmp->pixels[0], frame->bmp->pixels[1], frame->bmp->pixels[2]};
-    int src_stride[3]={frame->bmp->pitches[0], frame->bmp->pitches[1], frame->bmp->pitches[2]};
-#else
-    uint8_t *src[3]= {frame->bmp->pixels[0], frame->bmp->pixels[2], frame->bmp->pixels[1]};
-    int src_stride[3]={frame->bmp->pitches[0], frame->bmp->pitches[2], frame->bmp->pitches[1]};
-#endif
-    uint8_t *dst[3]= {is->rgba_data, NULL, NULL};
-    int stride[3]={w*4, 0, 0};
-
-    if (!is->yuv_to_rgba_ctx || video_changed) {
-        if (is->yuv_to_rgba_ctx) {
-            sws_freeContext(is->yuv_to_rgba_ctx);         
+    if (ret < 0) {
+        // point sampling is only good enough when nothing gets scaled
+        is->yuv_to_rgba_ctx = sws_getCachedContext(is->yuv_to_rgba_ctx,
+                                                   crop_w, crop_h, AV_PIX_FMT_YUV420P, w, h, dst_fmt,
+                                                   (crop_w == w && crop_h == h) ? SWS_POINT : SWS_FAST_BILINEAR,
+                                                   NULL, NULL, NULL);
+        if (!is->yuv_to_rgba_ctx) {
+            SDL_UnlockMutex(is->frame_mutex);
+            return -1;
         }
-        is->yuv_to_rgba_ctx = sws_getContext(w, h, AV_PIX_FMT_YUV420P, w, h, AV_PIX_FMT_RGB32, SWS_POINT, NULL, NULL, NULL);
+        sws_scale(is->yuv_to_rgba_ctx, (const uint8_t * const *)src, src_stride, 0, crop_h, dst, stride);
+    }
+
+    is->frame_format = format;
+    is->frame_width  = w;
+    is->frame_height = h;
+    is->frame_stride = stride[0];
+    is->frame_size   = size;
+    is->frame_pts = isnan(frame->pts) ? 0 : (int64_t)(frame->pts * 1000);
+    // frame is the picture on screen, whose objects update_frame_meta() just looked up
+    copy_tracking_info(&is->frame_tracking, &is->tracking);
+    if (is->frame_grab_req) {
+        is->frame_grab_req = 0;
+        // the reader asked for this frame, keep converting until it reads it
+        is->frame_grab_time = (int64_t)SDL_GetTickHR();
+        SDL_LockMutex(ffp->frame_grab_mutex);
+        ffp->frame_grab_count++;
+        SDL_CondBroadcast(ffp->frame_grab_cond);
+        SDL_UnlockMutex(ffp->frame_grab_mutex);
     }
-    sws_scale(is->yuv_to_rgba_ctx, src, src_stride, 0, h, dst, stride);
     SDL_UnlockMutex(is->frame_mutex);
-    
+
+    if (ffp->frame_available_notify) {
+        // listeners always read the latest frame, so one pending message is enough
+        // and the queue can not grow when the consumer falls behind
+        ffp_remove_msg(ffp, FFP_MSG_VIDEO_FRAME_AVAILABLE);
+        ffp_notify_msg1(ffp, FFP_MSG_VIDEO_FRAME_AVAILABLE);
+    }
+
     return 0;
 }
 
@@ -1144,6 +1885,7 @@ static void video_image_display2(FFPlayer *ffp)
             }
         }
         SDL_VoutDisplayYUVOverlay(ffp->vout, vp->bmp);
+        update_frame_meta(is, vp);
 
         if (ffp->enable_get_frame) {
             if (ffp->videotoolbox) {
@@ -1249,6 +1991,7 @@ static void stream_component_close(FFPlayer *ffp, int stream_index)
     }
 }
 
+static void refresh_scheduler_remove(VideoState *is);
 static void stream_close(FFPlayer *ffp)
 {
     VideoState *is = ffp->is;
@@ -1258,6 +2001,11 @@ static void stream_close(FFPlayer *ffp)
     packet_queue_abort(&is->audioq);
     av_log(NULL, AV_LOG_DEBUG, "wait for read_tid\n");
     SDL_WaitThread(is->read_tid, NULL);
+    // abort_request interrupts the probe of a source switch
+    if (is->switch_tid)
+        SDL_WaitThread(is->switch_tid, NULL);
+    avformat_close_input(&is->switch_ic);
+    av_freep(&is->switch_probe_url);
 
     /* close each stream */
     if (is->audio_stream >= 0)
@@ -1268,9 +2016,14 @@ static void stream_close(FFPlayer *ffp)
         stream_component_close(ffp, is->subtitle_stream);
 
     avformat_close_input(&is->ic);
+    avformat_close_input(&is->prev_ic);
+    av_dict_free(&is->source_opts);
+    av_freep(&is->switch_url);
 
     av_log(NULL, AV_LOG_DEBUG, "wait for video_refresh_tid\n");
-    SDL_WaitThread(is->video_refresh_tid, NULL);
+    if (is->video_refresh_tid)
+        SDL_WaitThread(is->video_refresh_tid, NULL);
+    refresh_scheduler_remove(is);
 
     packet_queue_destroy(&is->videoq);
     packet_queue_destroy(&is->audioq);
@@ -1281,12 +2034,8 @@ static void stream_close(FFPlayer *ffp)
     frame_queue_destory(&is->sampq);
     frame_queue_destory(&is->subpq);
 
-    MetaData *data;
-    while((data = meta_queue_pop(&is->metaq)) != NULL) {
-        free(data->meta);
-        free(data);
-    }
     meta_queue_destroy(&is->metaq);
+    meta_data_free(is->meta);
 
     SDL_DestroyCond(is->audio_accurate_seek_cond);
     SDL_DestroyCond(is->video_accurate_seek_cond);
@@ -1321,9 +2070,8 @@ static void stream_close(FFPlayer *ffp)
         av_freep(&ffp->get_img_info->img_path);
         av_freep(&ffp->get_img_info);
     }
-    if (is->rgba_data) {
-        av_freep(&is->rgba_data);
-    }
+    av_freep(&is->frame_data);
+    av_freep(&is->frame_scratch);
     av_free(is->filename);
     av_free(is);
     ffp->is = NULL;
@@ -1910,7 +2658,7 @@ static int queue_picture(FFPlayer *ffp, AVFrame *src_frame, double pts, double d
         vp->format != src_frame->format) {
 
         if (vp->width != src_frame->width || vp->height != src_frame->height)
-            ffp_notify_msg3(ffp, FFP_MSG_VIDEO_SIZE_CHANGED, src_frame->width, src_frame->height);
+            ffp_notify_msg3_latest(ffp, FFP_MSG_VIDEO_SIZE_CHANGED, src_frame->width, src_frame->height);
 
         vp->allocated = 0;
         vp->width = src_frame->width;
@@ -3658,6 +4406,184 @@ int64_t load_and_encode(TranscodeContext *ctx, AVFormatContext *output_context)
 } 
 
 /* this thread gets the stream from the disk or the network */
+static int stream_compatible(AVStream *cur, AVStream *st)
+{
+    AVCodecParameters *a = cur->codecpar;
+    AVCodecParameters *b = st->codecpar;
+
+    if (a->codec_type != b->codec_type || a->codec_id != b->codec_id)
+        return 0;
+    // the decoder threads keep using the time base they started with
+    if (av_cmp_q(cur->time_base, st->time_base))
+        return 0;
+    if (a->extradata_size != b->extradata_size ||
+        (a->extradata_size && memcmp(a->extradata, b->extradata, a->extradata_size)))
+        return 0;
+
+    switch (a->codec_type) {
+        case AVMEDIA_TYPE_VIDEO:
+            return a->width == b->width && a->height == b->height && a->format == b->format;
+        case AVMEDIA_TYPE_AUDIO:
+            return a->sample_rate == b->sample_rate && a->channels == b->channels &&
+                   a->channel_layout == b->channel_layout && a->format == b->format;
+        default:
+            return 0;
+    }
+}
+
+static int switch_interrupt_cb(void *ctx)
+{
+    VideoState *is = ctx;
+    // a newer switch supersedes this one
+    return is->abort_request || is->switch_url;
+}
+
+/*
+ * Opens and probes the url of a source switch, which can take seconds on a
+ * network, while read_thread keeps feeding the decoders from the current source.
+ */
+static int switch_probe_thread(void *arg)
+{
+    FFPlayer *ffp = arg;
+    VideoState *is = ffp->is;
+    const char *url = is->switch_probe_url;
+    AVFormatContext *ic = NULL;
+    AVDictionary *opts = NULL;
+    int err, i;
+
+    ic = avformat_alloc_context();
+    if (!ic) {
+        err = AVERROR(ENOMEM);
+        goto end;
+    }
+    ic->interrupt_callback.callback = switch_interrupt_cb;
+    ic->interrupt_callback.opaque = is;
+
+    av_dict_copy(&opts, is->source_opts, 0);
+    err = avformat_open_input(&ic, url, is->iformat, &opts);
+    av_dict_free(&opts);
+    if (err < 0) {
+        print_error(url, err);
+        goto end;
+    }
+
+    if (ffp->genpts)
+        ic->flags |= AVFMT_FLAG_GENPTS;
+    av_format_inject_global_side_data(ic);
+
+    if (ffp->find_stream_info) {
+        AVDictionary **stream_opts = setup_find_stream_info_opts(ic, ffp->codec_opts);
+        int orig_nb_streams = ic->nb_streams;
+
+        err = avformat_find_stream_info(ic, stream_opts);
+        for (i = 0; i < orig_nb_streams; i++)
+            av_dict_free(&stream_opts[i]);
+        av_freep(&stream_opts);
+        if (err < 0) {
+            avformat_close_input(&ic);
+            goto end;
+        }
+    }
+    if (ic->pb)
+        ic->pb->eof_reached = 0;
+    // read by read_thread from now on
+    ic->interrupt_callback.callback = decode_interrupt_cb;
+    err = 0;
+
+end:
+    SDL_LockMutex(is->seek_mutex);
+    is->switch_ic = ic;
+    is->switch_err = err;
+    is->switch_done = 1;
+    SDL_UnlockMutex(is->seek_mutex);
+    SDL_CondSignal(is->continue_read_thread);
+    return 0;
+}
+
+/*
+ * Makes ic, opened by switch_probe_thread, the source of the running decoders
+ * if its streams can be decoded by them. Called by read_thread, which closes
+ * prev_ic first. ic is closed on failure.
+ */
+static int switch_source(FFPlayer *ffp, AVFormatContext *ic, const char *url)
+{
+    VideoState *is = ffp->is;
+    int video_index = -1;
+    int audio_index = -1;
+    int err = AVERROR(EINVAL);
+    int i;
+
+    if (is->video_stream >= 0) {
+        video_index = av_find_best_stream(ic, AVMEDIA_TYPE_VIDEO, -1, -1, NULL, 0);
+        if (video_index < 0 || !stream_compatible(is->video_st, ic->streams[video_index]))
+            goto fail;
+    }
+    if (is->audio_stream >= 0) {
+        audio_index = av_find_best_stream(ic, AVMEDIA_TYPE_AUDIO, -1, video_index, NULL, 0);
+        if (audio_index < 0 || !stream_compatible(is->audio_st, ic->streams[audio_index]))
+            goto fail;
+    }
+
+    for (i = 0; i < ic->nb_streams; i++)
+        ic->streams[i]->discard = (i == video_index || i == audio_index) ? AVDISCARD_DEFAULT : AVDISCARD_ALL;
+
+    /*
+     * Decoders, audio output and surface stay, only the queues are flushed.
+     * The stream is swapped under the queue mutex before the flush packet is
+     * queued, so a decoder that took the flush sees the new stream.
+     */
+    if (is->audio_stream >= 0) {
+        SDL_LockMutex(is->audioq.mutex);
+        is->audio_stream = is->last_audio_stream = audio_index;
+        is->audio_st = ic->streams[audio_index];
+        SDL_UnlockMutex(is->audioq.mutex);
+        packet_queue_flush(&is->audioq);
+        packet_queue_put(&is->audioq, &flush_pkt);
+    }
+    if (is->video_stream >= 0) {
+        if (ffp->node_vdec)
+            ffpipenode_flush(ffp->node_vdec);
+        SDL_LockMutex(is->videoq.mutex);
+        is->video_stream = is->last_video_stream = video_index;
+        is->video_st = ic->streams[video_index];
+        SDL_UnlockMutex(is->videoq.mutex);
+        packet_queue_flush(&is->videoq);
+        packet_queue_put(&is->videoq, &flush_pkt);
+        meta_queue_flush(&is->metaq);
+    }
+    set_clock(&is->extclk, NAN, 0);
+
+    // decoder threads may still look at the old streams until they take the flush
+    is->prev_ic = is->ic;
+    is->ic = ic;
+    is->realtime = is_realtime(ic);
+    is->eof = 0;
+    is->queue_attachments_req = 1;
+
+    char *filename = av_strdup(url);
+    if (filename) {
+        av_free(is->filename);
+        is->filename = filename;
+    }
+    // meta keeps describing the old streams, they match the new ones
+    ffp_toggle_buffering(ffp, 1);
+    return 0;
+fail:
+    avformat_close_input(&ic);
+    return err;
+}
+
+/*
+ * A decoder is done with the streams of prev_ic once it took the flush
+ * packet of the switch, or once it is aborted. A paused player is stepped
+ * by the switch, so its decoders take the flush as well.
+ */
+static int switch_source_flushed(VideoState *is)
+{
+    return (is->video_stream < 0 || is->videoq.abort_request || is->viddec.pkt_serial == is->videoq.serial) &&
+           (is->audio_stream < 0 || is->audioq.abort_request || is->auddec.pkt_serial == is->audioq.serial);
+}
+
 static int read_thread(void *arg)
 {
     FFPlayer *ffp = arg;
@@ -3723,6 +4649,8 @@ static int read_thread(void *arg)
 
     if (ffp->iformat_name)
         is->iformat = av_find_input_format(ffp->iformat_name);
+    // avformat_open_input() consumes the options it knows
+    av_dict_copy(&is->source_opts, ffp->format_opts, 0);
     err = avformat_open_input(&ic, is->filename, is->iformat, &ffp->format_opts);
     if (err < 0) {
         print_error(is->filename, err);
@@ -3930,8 +4858,8 @@ static int read_thread(void *arg)
         toggle_pause(ffp, 1);
     if (is->video_st && is->video_st->codecpar) {
         AVCodecParameters *codecpar = is->video_st->codecpar;
-        ffp_notify_msg3(ffp, FFP_MSG_VIDEO_SIZE_CHANGED, codecpar->width, codecpar->height);
-        ffp_notify_msg3(ffp, FFP_MSG_SAR_CHANGED, codecpar->sample_aspect_ratio.num, codecpar->sample_aspect_ratio.den);
+        ffp_notify_msg3_latest(ffp, FFP_MSG_VIDEO_SIZE_CHANGED, codecpar->width, codecpar->height);
+        ffp_notify_msg3_latest(ffp, FFP_MSG_SAR_CHANGED, codecpar->sample_aspect_ratio.num, codecpar->sample_aspect_ratio.den);
     }
     ffp->prepared = true;
     ffp_notify_msg1(ffp, FFP_MSG_PREPARED);
@@ -3966,6 +4894,68 @@ static int read_thread(void *arg)
     for (;;) {
         if (is->abort_request)
             break;
+        if (is->switch_url && !is->switch_tid) {
+            SDL_LockMutex(is->seek_mutex);
+            char *switch_url = is->switch_url;
+            int64_t switch_start = is->switch_start;
+            is->switch_url = NULL;
+            is->switch_done = 0;
+            SDL_UnlockMutex(is->seek_mutex);
+
+            // the recorder muxes the streams of the current source, subtitles would need their own check
+            int switch_ret = (oc || is->subtitle_stream >= 0) ? AVERROR(EBUSY) : 0;
+            if (switch_ret >= 0) {
+                is->switch_probe_url = switch_url;
+                is->switch_probe_start = switch_start;
+                is->switch_tid = SDL_CreateThreadEx(&is->_switch_tid, switch_probe_thread, ffp, "ff_switch");
+                if (!is->switch_tid) {
+                    is->switch_probe_url = NULL;
+                    switch_ret = AVERROR(ENOMEM);
+                }
+            }
+            if (switch_ret < 0) {
+                av_log(ffp, AV_LOG_INFO, "switch source to %s: %d\n", switch_url, switch_ret);
+                av_free(switch_url);
+                ffp_notify_msg3(ffp, FFP_MSG_SOURCE_SWITCHED,
+                                (int)((av_gettime_relative() - switch_start) / 1000), switch_ret);
+            }
+        }
+        if (is->prev_ic && switch_source_flushed(is))
+            avformat_close_input(&is->prev_ic);
+        // the decoders take one flush at a time, the previous switch has to be done
+        if (is->switch_tid && is->switch_done && !is->prev_ic) {
+            SDL_WaitThread(is->switch_tid, NULL);
+            is->switch_tid = NULL;
+
+            SDL_LockMutex(is->seek_mutex);
+            AVFormatContext *switch_ic = is->switch_ic;
+            int switch_ret = is->switch_err;
+            is->switch_ic = NULL;
+            SDL_UnlockMutex(is->seek_mutex);
+
+            if (switch_ret >= 0 && oc) {
+                avformat_close_input(&switch_ic);
+                switch_ret = AVERROR(EBUSY);
+            } else if (switch_ret >= 0) {
+                switch_ret = switch_source(ffp, switch_ic, is->switch_probe_url);
+            }
+            if (switch_ret >= 0) {
+                ic = is->ic;
+                meta_data_free(meta_data);
+                meta_data = NULL;
+                completed = 0;
+
+                // paused decoders only take the flush when stepped, which also shows the new source
+                SDL_LockMutex(ffp->is->play_mutex);
+                if (is->pause_req)
+                    step_to_next_frame_l(ffp);
+                SDL_UnlockMutex(ffp->is->play_mutex);
+            }
+            av_log(ffp, AV_LOG_INFO, "switch source to %s: %d\n", is->switch_probe_url, switch_ret);
+            av_freep(&is->switch_probe_url);
+            ffp_notify_msg3(ffp, FFP_MSG_SOURCE_SWITCHED,
+                            (int)((av_gettime_relative() - is->switch_probe_start) / 1000), FFMIN(switch_ret, 0));
+        }
 #ifdef FFP_MERGE
         if (is->paused != is->last_paused) {
             is->last_paused = is->paused;
@@ -4009,6 +4999,9 @@ static int read_thread(void *arg)
                     }
                     packet_queue_flush(&is->videoq);
                     packet_queue_put(&is->videoq, &flush_pkt);
+                    meta_queue_flush(&is->metaq);
+                    meta_data_free(meta_data);
+                    meta_data = NULL;
                 }
                 if (is->seek_flags & AVSEEK_FLAG_BYTE) {
                    set_clock(&is->extclk, NAN, 0);
@@ -4217,18 +5210,11 @@ static int read_thread(void *arg)
             total_size += pkt->size;
         }
             
-        if (is->video_st && SEI_user_data(pkt, is->video_st->codecpar->codec_id)) {
-            unsigned char *meta = get_SEI_payload(pkt, is->video_st->codecpar->codec_id);
-            meta_data = (MetaData *)malloc(sizeof(MetaData));
-            meta_data->meta = meta;
-
-            if (pkt->size == 0) {
-                continue;
-            }
-
-            meta_data->pts = pkt->pts;
-            meta_queue_put(&is->metaq, meta_data);
-            meta_data = NULL;
+        if (is->video_st && pkt->stream_index == is->video_stream &&
+            scan_sei_user_data(pkt, is->video_st->codecpar, &meta_data)) {
+            // nothing to decode, the metadata goes with the next picture
+            av_packet_unref(pkt);
+            continue;
         }
 
         if (pkt->stream_index == is->video_stream && meta_data) {
@@ -4422,6 +5408,7 @@ static int read_thread(void *arg)
 }
 
 static int video_refresh_thread(void *arg);
+static int refresh_scheduler_add(FFPlayer *ffp, VideoState *is);
 static VideoState *stream_open(FFPlayer *ffp, const char *filename, AVInputFormat *iformat)
 {
     assert(!ffp->is);
@@ -4450,7 +5437,8 @@ static VideoState *stream_open(FFPlayer *ffp, const char *filename, AVInputForma
     if (frame_queue_init(&is->sampq, &is->audioq, SAMPLE_QUEUE_SIZE, 1) < 0)
         goto fail;
 
-    meta_queue_init(&is->metaq, META_QUEUE_SIZE);
+    if (meta_queue_init(&is->metaq, ffp->meta_queue_size, ffp->meta_queue_overflow) < 0)
+        goto fail;
 
     if (packet_queue_init(&is->videoq) < 0 ||
         packet_queue_init(&is->audioq) < 0 ||
@@ -4490,13 +5478,16 @@ static VideoState *stream_open(FFPlayer *ffp, const char *filename, AVInputForma
     is->accurate_seek_mutex = SDL_CreateMutex();
     is->seek_mutex = SDL_CreateMutex();
     is->frame_mutex = SDL_CreateMutex();
+    is->tracking.pts = AV_NOPTS_VALUE;
     ffp->is = is;
     is->pause_req = !ffp->start_on_prepared;
 
-    is->video_refresh_tid = SDL_CreateThreadEx(&is->_video_refresh_tid, video_refresh_thread, ffp, "ff_vout");
-    if (!is->video_refresh_tid) {
-        av_freep(&ffp->is);
-        return NULL;
+    if (ffp->shared_refresh <= 0 || refresh_scheduler_add(ffp, is) < 0) {
+        is->video_refresh_tid = SDL_CreateThreadEx(&is->_video_refresh_tid, video_refresh_thread, ffp, "ff_vout");
+        if (!is->video_refresh_tid) {
+            av_freep(&ffp->is);
+            return NULL;
+        }
     }
 
     is->initialized_decoder = 0;
@@ -4521,6 +5512,7 @@ fail:
     is->abort_request = true;
     if (is->video_refresh_tid)
         SDL_WaitThread(is->video_refresh_tid, NULL);
+    refresh_scheduler_remove(is);
     stream_close(ffp);
     return NULL;
 }
@@ -4545,14 +5537,27 @@ fail:
 // FFP_MERGE: options
 // FFP_MERGE: show_usage
 // FFP_MERGE: show_help_default
+static void update_refresh_late(FFPlayer *ffp, int64_t deadline)
+{
+    int64_t late = FFMAX(av_gettime_relative() - deadline, 0);
+
+    ffp->stat.refresh_count++;
+    ffp->stat.refresh_late_total += late;
+    if (late > ffp->stat.refresh_late_max)
+        ffp->stat.refresh_late_max = late;
+}
+
 static int video_refresh_thread(void *arg)
 {
     FFPlayer *ffp = arg;
     VideoState *is = ffp->is;
     double remaining_time = 0.0;
     while (!is->abort_request) {
-        if (remaining_time > 0.0)
+        if (remaining_time > 0.0) {
+            int64_t deadline = av_gettime_relative() + (int64_t)(remaining_time * 1000000.0);
             av_usleep((int)(int64_t)(remaining_time * 1000000.0));
+            update_refresh_late(ffp, deadline);
+        }
         remaining_time = REFRESH_RATE;
         if (is->show_mode != SHOW_MODE_NONE && (!is->paused || is->force_refresh))
             video_refresh(ffp, &remaining_time);
@@ -4561,6 +5566,148 @@ static int video_refresh_thread(void *arg)
     return 0;
 }
 
+/*
+ * Shared refresh: instead of a ff_vout thread per player, a single timer
+ * thread hands the due refresh ticks of all players with "shared-refresh"
+ * to a small ijkthreadpool. A player has at most one tick queued or running,
+ * so its ticks never overlap. The mutex, cond and pool live as long as the
+ * process, the timer thread only while a player is registered.
+ */
+typedef struct RefreshScheduler {
+    SDL_mutex *mutex;
+    SDL_cond *cond;
+    IjkThreadPoolContext *pool;
+    SDL_Thread *timer_tid;      // last timer thread started, joined before the next one
+    SDL_Thread _timer_tid;
+    int timer_running;          // guarded by mutex, cleared by the timer thread when it exits
+    VideoState *list;
+} RefreshScheduler;
+
+static RefreshScheduler g_refresh;
+static pthread_mutex_t g_refresh_init_mutex = PTHREAD_MUTEX_INITIALIZER;
+
+static void refresh_tick(void *in_arg, void *out_arg)
+{
+    VideoState *is = in_arg;
+    FFPlayer *ffp = is->refresh_ffp;
+    double remaining_time = REFRESH_RATE;
+
+    update_refresh_late(ffp, is->refresh_deadline);
+    if (!is->abort_request && is->show_mode != SHOW_MODE_NONE && (!is->paused || is->force_refresh))
+        video_refresh(ffp, &remaining_time);
+
+    SDL_LockMutex(g_refresh.mutex);
+    is->refresh_deadline = av_gettime_relative() + (int64_t)(remaining_time * 1000000.0);
+    is->refresh_running = 0;
+    SDL_CondBroadcast(g_refresh.cond);
+    SDL_UnlockMutex(g_refresh.mutex);
+}
+
+static int refresh_timer_thread(void *arg)
+{
+    RefreshScheduler *s = arg;
+    const int64_t idle_wait = (int64_t)(REFRESH_RATE * 1000000.0) * 10;
+
+    SDL_LockMutex(s->mutex);
+    // the last player is gone, refresh_scheduler_add() starts a new thread
+    while (s->list) {
+        int64_t now = av_gettime_relative();
+        int64_t next = now + idle_wait;
+
+        for (VideoState *is = s->list; is; is = is->refresh_next) {
+            if (is->refresh_running)
+                continue;
+            if (is->refresh_deadline <= now) {
+                is->refresh_running = 1;
+                if (ijk_threadpool_add(s->pool, refresh_tick, is, NULL, 0) < 0) {
+                    is->refresh_running = 0;
+                    is->refresh_deadline = now + (int64_t)(REFRESH_RATE * 1000000.0);
+                }
+            } else if (is->refresh_deadline < next) {
+                next = is->refresh_deadline;
+            }
+        }
+        // finished ticks wake us up early to schedule their next deadline
+        SDL_CondWaitTimeout(s->cond, s->mutex, (uint32_t)FFMAX((next - now + 999) / 1000, 1));
+    }
+    s->timer_running = 0;
+    SDL_UnlockMutex(s->mutex);
+    return 0;
+}
+
+static int refresh_scheduler_init(int thread_count)
+{
+    RefreshScheduler *s = &g_refresh;
+    int ret = 0;
+
+    pthread_mutex_lock(&g_refresh_init_mutex);
+    if (s->pool)
+        goto end;
+
+    s->mutex = SDL_CreateMutex();
+    s->cond = SDL_CreateCond();
+    if (s->mutex && s->cond)
+        s->pool = ijk_threadpool_create(thread_count, MAX_QUEUE, 0);
+    if (!s->pool) {
+        av_log(NULL, AV_LOG_ERROR, "shared refresh scheduler: init failed\n");
+        SDL_DestroyCondP(&s->cond);
+        SDL_DestroyMutexP(&s->mutex);
+        ret = -1;
+    }
+end:
+    pthread_mutex_unlock(&g_refresh_init_mutex);
+    return ret;
+}
+
+static int refresh_scheduler_add(FFPlayer *ffp, VideoState *is)
+{
+    if (refresh_scheduler_init(ffp->shared_refresh) < 0)
+        return -1;
+
+    SDL_LockMutex(g_refresh.mutex);
+    if (!g_refresh.timer_running) {
+        // a previous timer thread found the list empty and is exiting, or has exited
+        if (g_refresh.timer_tid)
+            SDL_WaitThread(g_refresh.timer_tid, NULL);
+        g_refresh.timer_tid = SDL_CreateThreadEx(&g_refresh._timer_tid, refresh_timer_thread, &g_refresh, "ff_vout_timer");
+        if (!g_refresh.timer_tid) {
+            SDL_UnlockMutex(g_refresh.mutex);
+            av_log(NULL, AV_LOG_ERROR, "shared refresh scheduler: timer thread failed\n");
+            return -1;
+        }
+        g_refresh.timer_running = 1;
+    }
+    is->refresh_ffp = ffp;
+    is->refresh_running = 0;
+    is->refresh_deadline = av_gettime_relative();
+    is->refresh_next = g_refresh.list;
+    g_refresh.list = is;
+    is->refresh_shared = 1;
+    SDL_CondBroadcast(g_refresh.cond);
+    SDL_UnlockMutex(g_refresh.mutex);
+    return 0;
+}
+
+static void refresh_scheduler_remove(VideoState *is)
+{
+    if (!is->refresh_shared)
+        return;
+
+    SDL_LockMutex(g_refresh.mutex);
+    for (VideoState **p = &g_refresh.list; *p; p = &(*p)->refresh_next) {
+        if (*p == is) {
+            *p = is->refresh_next;
+            break;
+        }
+    }
+    // lets the timer thread exit right away when this was the last player
+    SDL_CondBroadcast(g_refresh.cond);
+    while (is->refresh_running)
+        SDL_CondWait(g_refresh.cond, g_refresh.mutex);
+    is->refresh_shared = 0;
+    SDL_UnlockMutex(g_refresh.mutex);
+}
+
 static int lockmgr(void **mtx, enum AVLockOp op)
 {
     switch (op) {
@@ -4777,6 +5924,8 @@ FFPlayer *ffp_create()
     msg_queue_init(&ffp->msg_queue);
     ffp->af_mutex = SDL_CreateMutex();
     ffp->vf_mutex = SDL_CreateMutex();
+    ffp->frame_grab_mutex = SDL_CreateMutex();
+    ffp->frame_grab_cond = SDL_CreateCond();
 
     ffp_reset_internal(ffp);
     ffp->av_class = &ffp_context_class;
@@ -4785,6 +5934,8 @@ FFPlayer *ffp_create()
     av_opt_set_defaults(ffp);
     ffp->frame_dropped = false;
     ffp->avg_fps = 0.0f;
+    ffp->event_mask = FFP_EVENT_MASK_ALL;
+    ffp->inject_mask = FFP_INVOKE_MASK_ALL;
 
     return ffp;
 }
@@ -4809,6 +5960,8 @@ void ffp_destroy(FFPlayer *ffp)
 
     SDL_DestroyMutexP(&ffp->af_mutex);
     SDL_DestroyMutexP(&ffp->vf_mutex);
+    SDL_DestroyMutexP(&ffp->frame_grab_mutex);
+    SDL_DestroyCondP(&ffp->frame_grab_cond);
 
     msg_queue_destroy(&ffp->msg_queue);
 
@@ -4841,6 +5994,22 @@ static AVDictionary **ffp_get_opt_dict(FFPlayer *ffp, int opt_category)
     }
 }
 
+static int inject_index(int message)
+{
+    switch (message) {
+        case AVAPP_CTRL_WILL_TCP_OPEN:              return FFP_INVOKE_CTRL_WILL_TCP_OPEN;
+        case AVAPP_CTRL_DID_TCP_OPEN:               return FFP_INVOKE_CTRL_DID_TCP_OPEN;
+        case AVAPP_CTRL_WILL_HTTP_OPEN:             return FFP_INVOKE_CTRL_WILL_HTTP_OPEN;
+        case AVAPP_CTRL_WILL_LIVE_OPEN:             return FFP_INVOKE_CTRL_WILL_LIVE_OPEN;
+        case AVAPP_CTRL_WILL_CONCAT_SEGMENT_OPEN:   return FFP_INVOKE_CTRL_WILL_CONCAT_SEGMENT_OPEN;
+        case AVAPP_EVENT_WILL_HTTP_OPEN:            return FFP_INVOKE_EVENT_WILL_HTTP_OPEN;
+        case AVAPP_EVENT_DID_HTTP_OPEN:             return FFP_INVOKE_EVENT_DID_HTTP_OPEN;
+        case AVAPP_EVENT_WILL_HTTP_SEEK:            return FFP_INVOKE_EVENT_WILL_HTTP_SEEK;
+        case AVAPP_EVENT_DID_HTTP_SEEK:             return FFP_INVOKE_EVENT_DID_HTTP_SEEK;
+        default:                                    return -1;
+    }
+}
+
 static int app_func_event(AVApplicationContext *h, int message ,void *data, size_t size)
 {
     if (!h || !h->opaque || !data)
@@ -4861,6 +6030,18 @@ static int app_func_event(AVApplicationContext *h, int message ,void *data, size
         ffp->stat.buf_forwards = statistic->buf_forwards;
         ffp->stat.buf_capacity = statistic->buf_capacity;
     }
+
+    int index = inject_index(message);
+    if (index >= 0) {
+        ffp->inject_count[index]++;
+        if (!(ffp->inject_mask & (1 << index))) {
+            // nobody listens, answer as an unhandled control would be
+            if (index >= FFP_INVOKE_CTRL_WILL_HTTP_OPEN && index <= FFP_INVOKE_CTRL_WILL_CONCAT_SEGMENT_OPEN &&
+                sizeof(AVAppIOControl) == size)
+                ((AVAppIOControl *)data)->is_handled = 0;
+            return 0;
+        }
+    }
     return inject_callback(ffp->inject_opaque, message , data, size);
 }
 
@@ -4880,6 +6061,12 @@ static int ijkio_app_func_event(IjkIOApplicationContext *h, int message ,void *d
         ffp->stat.cache_file_pos          = statistic->cache_file_pos;
         ffp->stat.cache_count_bytes       = statistic->cache_count_bytes;
         ffp->stat.logical_file_size       = statistic->logical_file_size;
+        ffp->stat.cache_read_bytes        = statistic->cache_read_bytes;
+        ffp->stat.cache_file_read_bytes   = statistic->cache_file_read_bytes;
+        ffp->stat.cache_hit_count         = statistic->cache_hit_count;
+        ffp->stat.cache_miss_count        = statistic->cache_miss_count;
+        ffp->stat.cache_evict_count       = statistic->cache_evict_count;
+        ffp->stat.cache_evict_bytes       = statistic->cache_evict_bytes;
     }
 
     return 0;
@@ -4966,6 +6153,75 @@ void ffp_set_option_int(FFPlayer *ffp, int opt_category, const char *name, int64
     av_opt_set_dict(ffp, &ffp->player_opts);
 }
 
+struct FFOptionSet {
+    AVDictionary *dicts[FFP_OPT_CATEGORY_NB];
+};
+
+FFOptionSet *ffp_option_set_create()
+{
+    return av_mallocz(sizeof(FFOptionSet));
+}
+
+void ffp_option_set_free_p(FFOptionSet **pset)
+{
+    if (!pset || !*pset)
+        return;
+
+    for (int i = 0; i < FFP_OPT_CATEGORY_NB; i++)
+        av_dict_free(&(*pset)->dicts[i]);
+    av_freep(pset);
+}
+
+static const AVClass *ffp_get_opt_class(int opt_category)
+{
+    switch (opt_category) {
+        case FFP_OPT_CATEGORY_FORMAT:   return avformat_get_class();
+        case FFP_OPT_CATEGORY_CODEC:    return avcodec_get_class();
+        case FFP_OPT_CATEGORY_SWS:      return sws_get_class();
+        case FFP_OPT_CATEGORY_PLAYER:   return &ffp_context_class;
+        case FFP_OPT_CATEGORY_SWR:      return swr_get_class();
+        default:                        return NULL;
+    }
+}
+
+/*
+ * @return 0 on success, 1 if no context of the category nor any of its
+ *         children (demuxers, protocols, decoders) knows name, the option is
+ *         kept anyway, or a negative AVERROR
+ */
+int ffp_option_set_add(FFOptionSet *set, int opt_category, const char *name, const char *value)
+{
+    const AVClass *opt_class = ffp_get_opt_class(opt_category);
+    int ret;
+
+    if (!set || !name || !opt_class)
+        return AVERROR(EINVAL);
+
+    ret = av_dict_set(&set->dicts[opt_category], name, value, 0);
+    if (ret < 0)
+        return ret;
+
+    if (!av_opt_find(&opt_class, name, NULL, 0, AV_OPT_SEARCH_CHILDREN | AV_OPT_SEARCH_FAKE_OBJ))
+        return 1;
+    return 0;
+}
+
+void ffp_set_option_set(FFPlayer *ffp, const FFOptionSet *set)
+{
+    if (!ffp || !set)
+        return;
+
+    for (int i = 0; i < FFP_OPT_CATEGORY_NB; i++) {
+        AVDictionary **dict;
+        if (!set->dicts[i])
+            continue;
+        dict = ffp_get_opt_dict(ffp, i);
+        if (dict)
+            av_dict_copy(dict, set->dicts[i], 0);
+    }
+    av_opt_set_dict(ffp, &ffp->player_opts);
+}
+
 void ffp_set_overlay_format(FFPlayer *ffp, int chroma_fourcc)
 {
     switch (chroma_fourcc) {
@@ -5182,6 +6438,31 @@ int ffp_wait_stop_l(FFPlayer *ffp)
     return 0;
 }
 
+int ffp_switch_source_l(FFPlayer *ffp, const char *url)
+{
+    assert(ffp);
+    VideoState *is = ffp->is;
+    if (!is || !is->ic)
+        return EIJK_INVALID_STATE;
+
+    char *switch_url = av_strdup(url);
+    if (!switch_url)
+        return EIJK_OUT_OF_MEMORY;
+
+    SDL_LockMutex(is->seek_mutex);
+    char *prev_url = is->switch_url;
+    is->switch_url = switch_url;
+    is->switch_start = av_gettime_relative();
+    SDL_UnlockMutex(is->seek_mutex);
+    SDL_CondSignal(is->continue_read_thread);
+
+    if (prev_url) {
+        av_free(prev_url);
+        ffp_notify_msg3(ffp, FFP_MSG_SOURCE_SWITCHED, 0, AVERROR(ECANCELED));
+    }
+    return 0;
+}
+
 int ffp_seek_to_l(FFPlayer *ffp, uint64_t msec)
 {
     assert(ffp);
@@ -5557,7 +6838,8 @@ void ffp_check_buffering_l(FFPlayer *ffp)
 #ifdef FFP_SHOW_BUF_POS
         av_log(ffp, AV_LOG_DEBUG, "buf pos=%"PRId64", %%%d\n", buf_time_position, buf_percent);
 #endif
-        ffp_notify_msg3(ffp, FFP_MSG_BUFFERING_UPDATE, (int)buf_time_position, buf_percent);
+        // only the latest position matters, do not let updates pile up behind a busy consumer
+        ffp_notify_msg3_latest(ffp, FFP_MSG_BUFFERING_UPDATE, (int)buf_time_position, buf_percent);
     }
 
     if (need_start_buffering) {
@@ -5832,11 +7114,41 @@ int64_t ffp_get_property_int64(FFPlayer *ffp, int id, int64_t default_value)
             if (!ffp)
                 return default_value;
             return ffp->stat.logical_file_size;
+        case FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES:
+            return ffp ? ffp->stat.cache_read_bytes : default_value;
+        case FFP_PROP_INT64_CACHE_STATISTIC_FILE_READ_BYTES:
+            return ffp ? ffp->stat.cache_file_read_bytes : default_value;
+        case FFP_PROP_INT64_CACHE_STATISTIC_HIT_COUNT:
+            return ffp ? ffp->stat.cache_hit_count : default_value;
+        case FFP_PROP_INT64_CACHE_STATISTIC_MISS_COUNT:
+            return ffp ? ffp->stat.cache_miss_count : default_value;
+        case FFP_PROP_INT64_CACHE_STATISTIC_EVICT_COUNT:
+            return ffp ? ffp->stat.cache_evict_count : default_value;
+        case FFP_PROP_INT64_CACHE_STATISTIC_EVICT_BYTES:
+            return ffp ? ffp->stat.cache_evict_bytes : default_value;
        case FFP_PROP_INT64_VIDEO_FRAME_TIMESTAMP:
             if (!ffp)
                 return default_value;
             return ffp->stat.video_frame_timestamp;
+        case FFP_PROP_INT64_EVENT_MASK:
+            return ffp ? ffp->event_mask : default_value;
+        case FFP_PROP_INT64_NATIVE_INVOKE_MASK:
+            return ffp ? ffp->inject_mask : default_value;
+        case FFP_PROP_INT64_REFRESH_LATE_AVG:
+            if (!ffp || !ffp->stat.refresh_count)
+                return default_value;
+            return ffp->stat.refresh_late_total / ffp->stat.refresh_count;
+        case FFP_PROP_INT64_REFRESH_LATE_MAX:
+            return ffp ? ffp->stat.refresh_late_max : default_value;
+        case FFP_PROP_INT64_META_QUEUE_COUNT:
+        case FFP_PROP_INT64_META_QUEUE_OVERFLOW_COUNT:
+        case FFP_PROP_INT64_META_QUEUE_STALE_COUNT:
+            if (!ffp || !ffp->is || !ffp->is->metaq.mutex)
+                return default_value;
+            return meta_queue_get_stat(&ffp->is->metaq, id);
         default:
+            if (id >= FFP_PROP_INT64_NATIVE_INVOKE_COUNT && id < FFP_PROP_INT64_NATIVE_INVOKE_COUNT + FFP_INVOKE_NB)
+                return ffp ? ffp->inject_count[id - FFP_PROP_INT64_NATIVE_INVOKE_COUNT] : default_value;
             return default_value;
     }
 }
@@ -5859,6 +7171,22 @@ void ffp_set_property_int64(FFPlayer *ffp, int id, int64_t value)
             if (ffp) {
                 ijkio_manager_immediate_reconnect(ffp->ijkio_manager_ctx);
             }
+            break;
+        case FFP_PROP_INT64_FRAME_AVAILABLE_NOTIFY:
+            if (ffp) {
+                ffp->frame_available_notify = value ? 1 : 0;
+                if (!value)
+                    ffp_remove_msg(ffp, FFP_MSG_VIDEO_FRAME_AVAILABLE);
+            }
+            break;
+        case FFP_PROP_INT64_EVENT_MASK:
+            if (ffp)
+                ffp->event_mask = (int)value;
+            break;
+        case FFP_PROP_INT64_NATIVE_INVOKE_MASK:
+            if (ffp)
+                ffp->inject_mask = (int)value;
+            break;
         default:
             break;
     }
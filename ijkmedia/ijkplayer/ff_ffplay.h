@@ -52,6 +52,13 @@ void     *ffp_set_ijkio_inject_opaque(FFPlayer *ffp, void *opaque);
 void      ffp_set_option(FFPlayer *ffp, int opt_category, const char *name, const char *value);
 void      ffp_set_option_int(FFPlayer *ffp, int opt_category, const char *name, int64_t value);
 
+/* options parsed once and applied to many players */
+typedef struct FFOptionSet FFOptionSet;
+FFOptionSet *ffp_option_set_create();
+int       ffp_option_set_add(FFOptionSet *set, int opt_category, const char *name, const char *value);
+void      ffp_option_set_free_p(FFOptionSet **pset);
+void      ffp_set_option_set(FFPlayer *ffp, const FFOptionSet *set);
+
 int       ffp_get_video_codec_info(FFPlayer *ffp, char **codec_info);
 int       ffp_get_audio_codec_info(FFPlayer *ffp, char **codec_info);
 
@@ -66,6 +73,7 @@ int       ffp_wait_stop_l(FFPlayer *ffp);
 
 /* all in milliseconds */
 int       ffp_seek_to_l(FFPlayer *ffp, uint64_t msec);
+int       ffp_switch_source_l(FFPlayer *ffp, const char *url);
 long      ffp_get_current_position_l(FFPlayer *ffp);
 uint32_t  ffp_get_real_time_l(FFPlayer *ffp);
 uint32_t  ffp_get_avtech_playback_status_l(FFPlayer *ffp);
@@ -120,6 +128,12 @@ void      ffp_set_property_int64(FFPlayer *ffp, int id, int64_t value);
 // must be freed with free();
 struct IjkMediaMeta *ffp_get_meta_l(FFPlayer *ffp);
 
+int  ffp_request_frame_l(FFPlayer *ffp);
+int  ffp_wait_for_frame(FFPlayer *ffp, int count);
+// copy out under frame_mutex, no pointer into VideoState is returned
 long ffp_get_frame_l(FFPlayer *ffp, uint8_t **data, int *width, int *height, unsigned char **meta);
+long ffp_get_frame_into_l(FFPlayer *ffp, uint8_t *dst, size_t capacity, int *format, int *width, int *height, int *stride, int64_t *pts, TrackingInfo *tracking);
+void ffp_set_frame_output(FFPlayer *ffp, const FrameOutput *output);
+int  ffp_get_tracking_info_l(FFPlayer *ffp, TrackingInfo *tracking);
 
 #endif
@@ -274,18 +274,71 @@ typedef struct Decoder {
     int    first_frame_decoded;
 } Decoder;
 
+/* object categories of the tracking metadata, keep in sync with ObjectTrackingInfo.CATEGORY_* */
+#define FFP_TRACKING_CATEGORY_UNKNOWN   0
+#define FFP_TRACKING_CATEGORY_HUMAN     1
+#define FFP_TRACKING_CATEGORY_VEHICLE   2
+#define FFP_TRACKING_CATEGORY_PET       3
+#define FFP_TRACKING_CATEGORY_ROI       4
+
+#define FFP_TRACKING_MAX_OBJECTS        32
+
+typedef struct TrackingObject {
+    int x;
+    int y;
+    int width;
+    int height;
+    int id;                     // -1 if the metadata has none
+    int category;               // FFP_TRACKING_CATEGORY_*, or the numeric class id of the metadata
+    float score;                // -1 if the metadata has none
+} TrackingObject;
+
+typedef struct TrackingInfo {
+    int64_t pts;                // milliseconds
+    int nb_objects;
+    TrackingObject objects[FFP_TRACKING_MAX_OBJECTS];
+} TrackingInfo;
+
 typedef struct MetaData {
     unsigned char *meta;
     int64_t pts;
+    int nb_objects;             // parsed from meta once, when it is queued
+    TrackingObject *objects;
 } MetaData;
 
+/* what meta_queue_put() does when the queue is full */
+#define FFP_META_OVERFLOW_DROP_OLDEST   0
+#define FFP_META_OVERFLOW_DROP_NEWEST   1
+
 typedef struct MetaDataQueue {
     SDL_mutex *mutex;
-    MetaData **data;
+    MetaData **data;            // ring of size entries, in pts order from head
     int size;
-    int last;
+    int head;
+    int count;
+    int overflow;               // FFP_META_OVERFLOW_*
+    int64_t put_count;
+    int64_t overflow_count;     // entries dropped because the queue was full
+    int64_t stale_count;        // entries whose picture was never displayed
 } MetaDataQueue;
 
+/* pixel formats of the grabbed frame, keep in sync with IjkFrame.PixelFormat */
+#define FFP_FRAME_FORMAT_RGBA   0
+#define FFP_FRAME_FORMAT_I420   1
+#define FFP_FRAME_FORMAT_NV12   2
+#define FFP_FRAME_FORMAT_GRAY8  3
+#define FFP_FRAME_FORMAT_RGB24  4
+
+typedef struct FrameOutput {
+    int format;                 // FFP_FRAME_FORMAT_*
+    int width;                  // 0 keeps the (cropped) source size
+    int height;
+    int crop_x;                 // crop_w or crop_h of 0 selects the whole picture
+    int crop_y;
+    int crop_w;
+    int crop_h;
+} FrameOutput;
+
 typedef struct VideoState {
     SDL_Thread *read_tid;
     SDL_Thread _read_tid;
@@ -305,6 +358,18 @@ typedef struct VideoState {
     int read_pause_return;
 #endif
     AVFormatContext *ic;
+    AVFormatContext *prev_ic;   // replaced by a source switch, closed once the decoders took the flush
+    AVDictionary *source_opts;  // format options ic was opened with, reused for a source switch
+    char *switch_url;           // pending source switch, guarded by seek_mutex
+    int64_t switch_start;
+    // source switch opened by switch_probe_thread while read_thread keeps reading ic
+    SDL_Thread *switch_tid;
+    SDL_Thread _switch_tid;
+    char *switch_probe_url;
+    int64_t switch_probe_start;
+    AVFormatContext *switch_ic; // the probed source, guarded by seek_mutex with the two below
+    int switch_err;
+    int switch_done;
     int realtime;
 
     Clock audclk;
@@ -410,6 +475,13 @@ typedef struct VideoState {
     SDL_Thread *video_refresh_tid;
     SDL_Thread _video_refresh_tid;
 
+    /* refresh ticks run on the shared scheduler instead of video_refresh_tid, see "shared-refresh" */
+    int refresh_shared;
+    int refresh_running;        // guarded by the scheduler mutex
+    int64_t refresh_deadline;   // av_gettime_relative() of the next tick
+    struct FFPlayer *refresh_ffp;
+    struct VideoState *refresh_next;
+
     int buffering_on;
     int pause_req;
 
@@ -435,15 +507,26 @@ typedef struct VideoState {
     SDL_cond  *audio_accurate_seek_cond;
     volatile int initialized_decoder;
     int seek_buffering;
-    uint8_t *rgba_data;
+    uint8_t *frame_data;
+    size_t frame_capacity;
+    size_t frame_size;
+    int frame_format;
     int frame_width;
     int frame_height;
+    int frame_stride;
+    uint8_t *frame_scratch;
+    int frame_scratch_size;
+    int64_t frame_pts;
     SDL_mutex *frame_mutex;
+    int frame_grab_req;
+    int64_t frame_grab_time;    // milliseconds, last time a consumer read the frame
     uint32_t avtech_timestamp;
     uint32_t avtech_start_timestamp;
     uint32_t avtech_playback_status;
     MetaDataQueue metaq;
     MetaData *meta;
+    TrackingInfo tracking;      // objects of the picture on screen
+    TrackingInfo frame_tracking;    // objects of the grabbed frame
 } VideoState;
 
 /* options specified by the user */
@@ -539,10 +622,19 @@ typedef struct FFStatistic
     int64_t cache_file_pos;
     int64_t cache_count_bytes;
     int64_t logical_file_size;
+    int64_t cache_read_bytes;
+    int64_t cache_file_read_bytes;
+    int64_t cache_hit_count;
+    int64_t cache_miss_count;
+    int64_t cache_evict_count;
+    int64_t cache_evict_bytes;
     int drop_frame_count;
     int decode_frame_count;
     float drop_frame_rate;
     int64_t video_frame_timestamp;
+    int64_t refresh_count;
+    int64_t refresh_late_total;     // microseconds refresh ticks ran after they were due
+    int64_t refresh_late_max;
 } FFStatistic;
 
 #define FFP_TCP_READ_SAMPLE_RANGE 2000
@@ -748,6 +840,7 @@ typedef struct FFPlayer {
     int ijkmeta_delay_init;
     int render_wait_start;
     int enable_get_frame;
+    int enable_libyuv;
     char *video_record_path;
     int video_record_duration;
     float avg_fps;
@@ -757,6 +850,18 @@ typedef struct FFPlayer {
     int video_seeking;
     int low_delay;
     int high_speed_playback;
+    int frame_available_notify;
+    // outlive VideoState, so that a reader can wait for a grab without the player lock
+    SDL_mutex *frame_grab_mutex;
+    SDL_cond  *frame_grab_cond;
+    int        frame_grab_count;    // requested grabs done
+    FrameOutput frame_output;
+    int meta_queue_size;
+    int shared_refresh;
+    int meta_queue_overflow;
+    int event_mask;             // FFP_EVENT_MASK_*, ALL after ffp_create(), IjkMediaPlayer sets it again after reset
+    int inject_mask;            // 1 << FFP_INVOKE_*, ALL after ffp_create(), IjkMediaPlayer sets it again after reset
+    int64_t inject_count[FFP_INVOKE_NB];
 } FFPlayer;
 
 #define fftime_to_milliseconds(ts) (av_rescale(ts, 1000, AV_TIME_BASE))
@@ -904,6 +1009,11 @@ inline static void ffp_notify_msg3(FFPlayer *ffp, int what, uint64_t arg1, int a
     msg_queue_put_simple3(&ffp->msg_queue, what, arg1, arg2);
 }
 
+// replaces a pending what which is the last message
+inline static void ffp_notify_msg3_latest(FFPlayer *ffp, int what, uint64_t arg1, int arg2) {
+    msg_queue_put_simple3_latest(&ffp->msg_queue, what, arg1, arg2);
+}
+
 inline static void ffp_notify_msg4(FFPlayer *ffp, int what, uint64_t arg1, int arg2, void *obj, int obj_len) {
     msg_queue_put_simple4(&ffp->msg_queue, what, arg1, arg2, obj, obj_len);
 }
@@ -166,6 +166,14 @@ static const AVOption ffp_context_options[] = {
         OPTION_OFFSET(video_mime_type),     OPTION_STR(NULL) },
     { "enable-get-frame",                    "enable get frame",
         OPTION_OFFSET(enable_get_frame),     OPTION_INT(0, 0, 1) },
+    { "enable-libyuv",                       "convert grabbed frames and thumbnails with libyuv, swscale otherwise",
+        OPTION_OFFSET(enable_libyuv),        OPTION_INT(1, 0, 1) },
+    { "meta-queue-size",                     "max number of SEI metadata waiting for their picture",
+        OPTION_OFFSET(meta_queue_size),      OPTION_INT(50, 1, 1024) },
+    { "meta-queue-overflow",                 "when the metadata queue is full, 0: drop the oldest, 1: drop the newest",
+        OPTION_OFFSET(meta_queue_overflow),  OPTION_INT(FFP_META_OVERFLOW_DROP_OLDEST, FFP_META_OVERFLOW_DROP_OLDEST, FFP_META_OVERFLOW_DROP_NEWEST) },
+    { "shared-refresh",                      "refresh video on a pool of this many threads shared by all players, 0: a thread per player",
+        OPTION_OFFSET(shared_refresh),       OPTION_INT(0, 0, 16) },
     { "enable-aec",                          "enable acoustic echo cancelling",
         OPTION_OFFSET(enable_aec),           OPTION_INT(0, 0, 1) },
     { "disable-multithread-delaying",                          "disable video decoder multithread delaying",
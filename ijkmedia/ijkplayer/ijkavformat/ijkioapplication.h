@@ -36,6 +36,12 @@ typedef struct IjkIOAppCacheStatistic {
     int64_t cache_file_pos;
     int64_t cache_count_bytes;
     int64_t logical_file_size;
+    int64_t cache_read_bytes;           // bytes handed to the player
+    int64_t cache_file_read_bytes;      // of which read from the cache file
+    int64_t cache_hit_count;            // reads served without waiting for the network
+    int64_t cache_miss_count;
+    int64_t cache_evict_count;          // times the full cache file was flushed
+    int64_t cache_evict_bytes;
 } IjkIOAppCacheStatistic;
 
 typedef struct IjkCacheEntry {
@@ -53,6 +59,12 @@ struct IjkIOApplicationContext {
     void *cache_info_map;
     void *opaque;
     int64_t cache_count_bytes;
+    int64_t cache_read_bytes;
+    int64_t cache_file_read_bytes;
+    int64_t cache_hit_count;
+    int64_t cache_miss_count;
+    int64_t cache_evict_count;
+    int64_t cache_evict_bytes;
     int fd;
     pthread_mutex_t mutex;
     int shared;
@@ -105,11 +105,17 @@ static void call_inject_statistic(IjkURLContext *h)
 
     if (c->ijkio_app_ctx) {
         IjkIOAppCacheStatistic statistic = {0};
-        statistic.cache_physical_pos  = c->cache_physical_pos;
-        statistic.cache_file_forwards = c->file_logical_pos - c->read_logical_pos;
-        statistic.cache_file_pos      = c->file_logical_pos;
-        statistic.cache_count_bytes   = *c->cache_count_bytes;
-        statistic.logical_file_size   = c->logical_size;
+        statistic.cache_physical_pos    = c->cache_physical_pos;
+        statistic.cache_file_forwards   = c->file_logical_pos - c->read_logical_pos;
+        statistic.cache_file_pos        = c->file_logical_pos;
+        statistic.cache_count_bytes     = *c->cache_count_bytes;
+        statistic.logical_file_size     = c->logical_size;
+        statistic.cache_read_bytes      = c->ijkio_app_ctx->cache_read_bytes;
+        statistic.cache_file_read_bytes = c->ijkio_app_ctx->cache_file_read_bytes;
+        statistic.cache_hit_count       = c->ijkio_app_ctx->cache_hit_count;
+        statistic.cache_miss_count      = c->ijkio_app_ctx->cache_miss_count;
+        statistic.cache_evict_count     = c->ijkio_app_ctx->cache_evict_count;
+        statistic.cache_evict_bytes     = c->ijkio_app_ctx->cache_evict_bytes;
         ijkio_application_on_cache_statistic(c->ijkio_app_ctx, &statistic);
     }
 }
@@ -207,6 +213,8 @@ static int64_t ijkio_cache_file_overrang(IjkURLContext *h, int64_t *cur_pos, int
     pthread_mutex_lock(&h->ijkio_app_ctx->mutex);
 
     if (!c->ijkio_app_ctx->shared) {
+        c->ijkio_app_ctx->cache_evict_count++;
+        c->ijkio_app_ctx->cache_evict_bytes += *c->last_physical_pos;
         ijk_map_remove(c->cache_info_map, (int64_t)c->cur_file_no);
         ijk_map_traversal_handle(c->cache_info_map, NULL, tree_destroy);
         ijk_map_clear(c->cache_info_map);
@@ -315,6 +323,22 @@ fail:
     return ret;
 }
 
+/* counts a read handed to the player, from_file bytes of it came from the cache file */
+static void account_read(IjkURLContext *h, int64_t size, int64_t from_file, int waited)
+{
+    IjkIOCacheContext *c = h->priv_data;
+
+    if (size <= 0)
+        return;
+
+    c->ijkio_app_ctx->cache_read_bytes      += size;
+    c->ijkio_app_ctx->cache_file_read_bytes += from_file;
+    if (waited)
+        c->ijkio_app_ctx->cache_miss_count++;
+    else
+        c->ijkio_app_ctx->cache_hit_count++;
+}
+
 static int wrapped_file_read(IjkURLContext *h, void *dst, int size)
 {
     IjkIOCacheContext *c   = h->priv_data;
@@ -556,11 +580,15 @@ static int ijkio_cache_open(IjkURLContext *h, const char *url, int flags, IjkAVD
     t = ijk_av_dict_get(*options, "cache_max_capacity", NULL, IJK_AV_DICT_MATCH_CASE);
     if (t) {
         c->cache_max_capacity = strtoll(t->value, NULL, 10);
+        if (c->cache_max_capacity <= 0)
+            c->cache_max_capacity = DEFAULT_CACHE_MAX_CAPACITY;
     }
 
     t = ijk_av_dict_get(*options, "cache_file_forwards_capacity", NULL, IJK_AV_DICT_MATCH_CASE);
     if (t) {
         c->cache_file_forwards_capacity = strtoll(t->value, NULL, 10);
+        if (c->cache_file_forwards_capacity < 0)
+            c->cache_file_forwards_capacity = DEFAULT_CACHE_FILE_FORWARDS_CAPACITY;
     }
 
     t = ijk_av_dict_get(*options, "cache_file_close", NULL, IJK_AV_DICT_MATCH_CASE);
@@ -889,6 +917,7 @@ static int ijkio_cache_sync_read(IjkURLContext *h, unsigned char *buf, int size)
                 ret = wrapped_file_read(h, buf, to_copy);
                 if (ret >= 0) {
                     c->cache_physical_pos += ret;
+                    account_read(h, ret, ret, 0);
                     return (int)ret;
                 }
             }
@@ -945,6 +974,7 @@ static int ijkio_cache_sync_read(IjkURLContext *h, unsigned char *buf, int size)
         return (int)ret;
 
     c->read_inner_pos   += ret;
+    account_read(h, ret, 0, 1);
 
     if (c->fd >= 0 && c->tree_info && !c->only_read_file) {
         sync_add_entry(h, buf, (int)ret);
@@ -959,12 +989,16 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
     int          to_read = size;
     unsigned char  *dest = buf;
     int          to_copy = 0;
+    int        from_file = 0;
+    int           waited = 0;
 
     if (!c || !c->inner || !c->inner->prot)
         return IJKAVERROR(ENOSYS);
 
     if (c->cache_file_close) {
-        return wrapped_url_read(h, dest, to_read);
+        ret = wrapped_url_read(h, dest, to_read);
+        account_read(h, ret, 0, 1);
+        return (int)ret;
     }
 
     if (!c->cache_file_forwards_capacity) {
@@ -993,6 +1027,7 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
             to_copy  = wrapped_url_read(h, dest, to_read);
             to_read -= to_copy;
             ret      = size - to_read;
+            account_read(h, ret, from_file, 1);
             pthread_mutex_unlock(&c->file_mutex);
             return (int)ret;
         }
@@ -1002,6 +1037,7 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
             to_read             -= to_copy;
             ret                  = size - to_read;
             dest                += to_copy;
+            from_file           += to_copy;
             c->read_logical_pos += to_copy;
             if (to_read <= 0)
                 break;
@@ -1014,9 +1050,11 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
             }
             break;
         }
+        waited = 1;
         pthread_cond_signal(&c->cond_wakeup_file_background);
         pthread_cond_wait(&c->cond_wakeup_main, &c->file_mutex);
     }
+    account_read(h, ret, from_file, waited);
 
     if (ret != size || (!c->io_eof_reached && (c->file_logical_pos - c->read_logical_pos) <= c->cache_file_forwards_capacity)) {
         pthread_cond_signal(&c->cond_wakeup_file_background);
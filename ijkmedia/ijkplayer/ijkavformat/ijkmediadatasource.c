@@ -31,7 +31,8 @@
 #include "ijkavformat/ijkavformat.h"
 #include "ijkplayer/ijkavutil/opt.h"
 
-#include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource.h"
+#include "j4a/class/java/nio/ByteBuffer.h"
+#include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource2.h"
 #include "ijksdl/android/ijksdl_android_jni.h"
 
 typedef struct Context {
@@ -43,8 +44,12 @@ typedef struct Context {
 
     int64_t         media_data_source_ptr;
     jobject         media_data_source;
-    jbyteArray      jbuffer;
-    int             jbuffer_capacity;
+    uint8_t         probe_buf[1];
+
+    /* direct ByteBuffer over [read_buf, read_buf + read_buf_size), a global ref */
+    jobject         read_buffer;
+    uint8_t        *read_buf;
+    int             read_buf_size;
 } Context;
 
 static int ijkmds_open(URLContext *h, const char *arg, int flags, AVDictionary **options)
@@ -65,7 +70,7 @@ static int ijkmds_open(URLContext *h, const char *arg, int flags, AVDictionary *
         return AVERROR(EINVAL);
     }
 
-    c->logical_size = J4AC_IMediaDataSource__getSize(env, media_data_source);
+    c->logical_size = J4AC_IMediaDataSource2__getSize(env, media_data_source);
     if (J4A_ExceptionCheck__catchAll(env)) {
         return AVERROR(EINVAL);
     } else if (c->logical_size < 0) {
@@ -91,44 +96,92 @@ static int ijkmds_close(URLContext *h)
         return AVERROR(EINVAL);
     }
 
-    J4A_DeleteGlobalRef__p(env, &c->jbuffer);
-
     if (c->media_data_source) {
-        J4AC_IMediaDataSource__close__catchAll(env, c->media_data_source);
+        J4AC_IMediaDataSource2__close__catchAll(env, c->media_data_source);
         J4A_DeleteGlobalRef__p(env, &c->media_data_source);
     }
+    J4A_DeleteGlobalRef__p(env, &c->read_buffer);
     c->media_data_source_ptr = 0;
 
     return 0;
 }
 
-static jobject jbuffer_grow(JNIEnv *env, URLContext *h, int new_capacity) {
-    Context *c = h->priv_data;
+/*
+ * Returns a direct ByteBuffer whose position and limit frame [buf, buf + size).
+ * It is created once per native read buffer and kept as a global ref. Later
+ * reads into the same buffer, at any offset, only move its position and limit.
+ */
+static jobject ijkmds_get_read_buffer(JNIEnv *env, Context *c, uint8_t *buf, int size)
+{
+    jobject jbuffer = NULL;
+    int     offset  = 0;
+
+    if (c->read_buffer && size == 0) {
+        // an empty read only needs an empty buffer, probe_buf is not worth one
+        offset = 0;
+    } else if (c->read_buffer && buf >= c->read_buf && buf + size <= c->read_buf + c->read_buf_size) {
+        offset = (int)(buf - c->read_buf);
+    } else {
+        // first read, or avio reallocated its buffer
+        J4A_DeleteGlobalRef__p(env, &c->read_buffer);
+        jbuffer = (*env)->NewDirectByteBuffer(env, buf, size);
+        if (J4A_ExceptionCheck__catchAll(env) || !jbuffer)
+            return NULL;
+
+        c->read_buffer = J4A_NewGlobalRef__catchAll(env, jbuffer);
+        SDL_JNI_DeleteLocalRefP(env, &jbuffer);
+        if (!c->read_buffer)
+            return NULL;
+
+        c->read_buf      = buf;
+        c->read_buf_size = size;
+        return c->read_buffer;
+    }
 
-    if (c->jbuffer && c->jbuffer_capacity >= new_capacity)
-        return c->jbuffer;
+    // the limit first, the position may not exceed it
+    jbuffer = J4AC_ByteBuffer__limit__catchAll(env, c->read_buffer, offset + size);
+    if (!jbuffer)
+        return NULL;
+    SDL_JNI_DeleteLocalRefP(env, &jbuffer);
 
-    new_capacity = FFMAX(new_capacity, c->jbuffer_capacity * 2);
+    jbuffer = J4AC_ByteBuffer__position__catchAll(env, c->read_buffer, offset);
+    if (!jbuffer)
+        return NULL;
+    SDL_JNI_DeleteLocalRefP(env, &jbuffer);
 
-    J4A_DeleteGlobalRef__p(env, &c->jbuffer);
-    c->jbuffer_capacity = 0;
+    return c->read_buffer;
+}
 
-    c->jbuffer = J4A_NewByteArray__asGlobalRef__catchAll(env, new_capacity);
-    if (J4A_ExceptionCheck__catchAll(env) || !c->jbuffer) {
-        c->jbuffer = NULL;
-        return NULL;
-    }
+/*
+ * Lets the data source write straight into buf through a direct ByteBuffer,
+ * no Java array is pinned or copied. The buffer is only valid during the call.
+ */
+static int ijkmds_read_at(JNIEnv *env, URLContext *h, int64_t position, uint8_t *buf, int size, jint *nread)
+{
+    Context *c = h->priv_data;
+    jobject  jbuffer = NULL;
+    jint     ret = 0;
 
-    c->jbuffer_capacity = new_capacity;
-    return c->jbuffer;
+    jbuffer = ijkmds_get_read_buffer(env, c, buf, size);
+    if (!jbuffer)
+        return AVERROR(ENOMEM);
+
+    ret = J4AC_IMediaDataSource2__readAt(env, c->media_data_source, position, jbuffer);
+    if (J4A_ExceptionCheck__catchAll(env))
+        return AVERROR(EIO);
+    else if (ret > size)
+        return AVERROR(EIO);
+
+    *nread = ret;
+    return 0;
 }
 
 static int ijkmds_read(URLContext *h, unsigned char *buf, int size)
 {
     Context    *c = h->priv_data;
     JNIEnv     *env = NULL;
-    jbyteArray  jbuffer = NULL;
     jint        ret = 0;
+    int         err = 0;
 
     if (!c->media_data_source) 
         return AVERROR(EINVAL);
@@ -138,22 +191,14 @@ static int ijkmds_read(URLContext *h, unsigned char *buf, int size)
         return AVERROR(EINVAL);
     }
 
-    jbuffer = jbuffer_grow(env, h, size);
-    if (!jbuffer)
-        return AVERROR(ENOMEM);
-
-    ret = J4AC_IMediaDataSource__readAt(env, c->media_data_source, c->logical_pos, jbuffer, 0, size);
-    if (J4A_ExceptionCheck__catchAll(env))
-        return AVERROR(EIO);
+    err = ijkmds_read_at(env, h, c->logical_pos, buf, size, &ret);
+    if (err < 0)
+        return err;
     else if (ret < 0)
         return AVERROR_EOF;
     else if (ret == 0)
         return AVERROR(EAGAIN);
 
-    (*env)->GetByteArrayRegion(env, jbuffer, 0, ret, (jbyte*)buf);
-    if (J4A_ExceptionCheck__catchAll(env))
-        return AVERROR(EIO);
-
     c->logical_pos += ret;
     return ret;
 }
@@ -161,10 +206,10 @@ static int ijkmds_read(URLContext *h, unsigned char *buf, int size)
 static int64_t ijkmds_seek(URLContext *h, int64_t pos, int whence)
 {
     Context *c = h->priv_data;
-    int64_t  ret;
     int64_t  new_logical_pos;
     JNIEnv  *env = NULL;
-    jobject  jbuffer = NULL;
+    jint     nread = 0;
+    int      err = 0;
 
     if (!c->media_data_source) 
         return AVERROR(EINVAL);
@@ -189,14 +234,11 @@ static int64_t ijkmds_seek(URLContext *h, int64_t pos, int whence)
     if (new_logical_pos < 0)
         return AVERROR(EINVAL);
 
-    jbuffer = jbuffer_grow(env, h, 0);
-    if (!jbuffer)
-        return AVERROR(ENOMEM);
-
-    ret = J4AC_IMediaDataSource__readAt(env, c->media_data_source, new_logical_pos, jbuffer, 0, 0);
-    if (J4A_ExceptionCheck__catchAll(env))
-        return AVERROR(EIO);
-    else if (ret < 0)
+    // an empty read lets the data source check the new position
+    err = ijkmds_read_at(env, h, new_logical_pos, c->probe_buf, 0, &nread);
+    if (err < 0)
+        return err;
+    else if (nread < 0)
         return AVERROR_EOF;
 
     c->logical_pos = new_logical_pos;
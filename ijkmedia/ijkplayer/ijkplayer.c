@@ -188,6 +188,15 @@ void ijkmp_set_option_int(IjkMediaPlayer *mp, int opt_category, const char *name
     // MPTRACE("%s()=void\n", __func__);
 }
 
+void ijkmp_set_option_set(IjkMediaPlayer *mp, const struct FFOptionSet *set)
+{
+    assert(mp);
+
+    pthread_mutex_lock(&mp->mutex);
+    ffp_set_option_set(mp->ffplayer, set);
+    pthread_mutex_unlock(&mp->mutex);
+}
+
 int ijkmp_get_video_codec_info(IjkMediaPlayer *mp, char **codec_info)
 {
     assert(mp);
@@ -275,6 +284,23 @@ int64_t ijkmp_get_property_int64(IjkMediaPlayer *mp, int id, int64_t default_val
     return ret;
 }
 
+/*
+ * Read several properties under one lock, so that they describe the same
+ * moment of playback.
+ */
+void ijkmp_get_properties(IjkMediaPlayer *mp, const int *int64_ids, int64_t *int64_values, int nb_int64,
+                          const int *float_ids, float *float_values, int nb_float)
+{
+    assert(mp);
+
+    pthread_mutex_lock(&mp->mutex);
+    for (int i = 0; i < nb_int64; i++)
+        int64_values[i] = ffp_get_property_int64(mp->ffplayer, int64_ids[i], 0);
+    for (int i = 0; i < nb_float; i++)
+        float_values[i] = ffp_get_property_float(mp->ffplayer, float_ids[i], 0.0f);
+    pthread_mutex_unlock(&mp->mutex);
+}
+
 void ijkmp_set_property_int64(IjkMediaPlayer *mp, int id, int64_t value)
 {
     assert(mp);
@@ -608,6 +634,29 @@ int ijkmp_seek_to(IjkMediaPlayer *mp, uint64_t msec)
     return retval;
 }
 
+static int ijkmp_switch_data_source_l(IjkMediaPlayer *mp, const char *url)
+{
+    assert(mp);
+
+    // same states as seeking, the source has to be prepared
+    MP_RET_IF_FAILED(ikjmp_chkst_seek_l(mp->mp_state));
+
+    return ffp_switch_source_l(mp->ffplayer, url);
+}
+
+int ijkmp_switch_data_source(IjkMediaPlayer *mp, const char *url)
+{
+    assert(mp);
+    assert(url);
+    MPTRACE("ijkmp_switch_data_source(url=\"%s\")\n", url);
+    pthread_mutex_lock(&mp->mutex);
+    int retval = ijkmp_switch_data_source_l(mp, url);
+    pthread_mutex_unlock(&mp->mutex);
+    MPTRACE("ijkmp_switch_data_source(url=\"%s\")=%d\n", url, retval);
+
+    return retval;
+}
+
 int ijkmp_get_state(IjkMediaPlayer *mp)
 {
     return mp->mp_state;
@@ -829,6 +878,33 @@ int ijkmp_get_msg(IjkMediaPlayer *mp, AVMessage *msg, int block)
     return -1;
 }
 
+static int ijkmp_request_frame_l(IjkMediaPlayer *mp)
+{
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_IDLE);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_INITIALIZED);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_ASYNC_PREPARING);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_STOPPED);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_ERROR);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_END);
+    return ffp_request_frame_l(mp->ffplayer);
+}
+
+/*
+ * Wait for a grab if the frame buffer is stale. The wait happens without
+ * mp->mutex, the reference the caller holds keeps mp->ffplayer alive.
+ * return 0 if the frame buffer can be read, < 0 on timeout
+ */
+static int ijkmp_grab_frame(IjkMediaPlayer *mp)
+{
+    pthread_mutex_lock(&mp->mutex);
+    int count = ijkmp_request_frame_l(mp);
+    pthread_mutex_unlock(&mp->mutex);
+
+    if (count < 0)
+        return 0;
+    return ffp_wait_for_frame(mp->ffplayer, count);
+}
+
 static long ijkmp_get_frame_l(IjkMediaPlayer *mp, uint8_t **data, int *w, int *h, unsigned char **meta)
 {
     MPST_RET_IF_EQ(mp->mp_state, MP_STATE_IDLE);
@@ -843,8 +919,51 @@ static long ijkmp_get_frame_l(IjkMediaPlayer *mp, uint8_t **data, int *w, int *h
 long ijkmp_get_frame(IjkMediaPlayer *mp, uint8_t **data, int *w, int *h, unsigned char **meta)
 {
     assert(mp);
+    if (ijkmp_grab_frame(mp) < 0)
+        return -1;
+
     pthread_mutex_lock(&mp->mutex);
     long retval = ijkmp_get_frame_l(mp, data, w, h, meta);
     pthread_mutex_unlock(&mp->mutex);
     return retval;
 }
+
+static long ijkmp_get_frame_into_l(IjkMediaPlayer *mp, uint8_t *dst, size_t capacity, int *format, int *w, int *h, int *stride, int64_t *pts, TrackingInfo *tracking)
+{
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_IDLE);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_INITIALIZED);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_ASYNC_PREPARING);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_STOPPED);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_ERROR);
+    MPST_RET_IF_EQ(mp->mp_state, MP_STATE_END);
+    return ffp_get_frame_into_l(mp->ffplayer, dst, capacity, format, w, h, stride, pts, tracking);
+}
+
+long ijkmp_get_frame_into(IjkMediaPlayer *mp, uint8_t *dst, size_t capacity, int *format, int *w, int *h, int *stride, int64_t *pts, TrackingInfo *tracking)
+{
+    assert(mp);
+    if (ijkmp_grab_frame(mp) < 0)
+        return -1;
+
+    pthread_mutex_lock(&mp->mutex);
+    long retval = ijkmp_get_frame_into_l(mp, dst, capacity, format, w, h, stride, pts, tracking);
+    pthread_mutex_unlock(&mp->mutex);
+    return retval;
+}
+
+int ijkmp_get_tracking_info(IjkMediaPlayer *mp, TrackingInfo *tracking)
+{
+    assert(mp);
+    pthread_mutex_lock(&mp->mutex);
+    int retval = ffp_get_tracking_info_l(mp->ffplayer, tracking);
+    pthread_mutex_unlock(&mp->mutex);
+    return retval;
+}
+
+void ijkmp_set_frame_output(IjkMediaPlayer *mp, const struct FrameOutput *output)
+{
+    assert(mp);
+    pthread_mutex_lock(&mp->mutex);
+    ffp_set_frame_output(mp->ffplayer, output);
+    pthread_mutex_unlock(&mp->mutex);
+}
@@ -36,6 +36,9 @@
 typedef struct IjkMediaPlayer IjkMediaPlayer;
 struct FFPlayer;
 struct SDL_Vout;
+struct FrameOutput;
+struct TrackingInfo;
+struct FFOptionSet;
 
 /*-
  MPST_CHECK_NOT_RET(mp->mp_state, MP_STATE_IDLE);
@@ -169,6 +172,7 @@ void*            ijkmp_set_ijkio_inject_opaque(IjkMediaPlayer *mp, void *opaque)
 
 void            ijkmp_set_option(IjkMediaPlayer *mp, int opt_category, const char *name, const char *value);
 void            ijkmp_set_option_int(IjkMediaPlayer *mp, int opt_category, const char *name, int64_t value);
+void            ijkmp_set_option_set(IjkMediaPlayer *mp, const struct FFOptionSet *set);
 
 int             ijkmp_get_video_codec_info(IjkMediaPlayer *mp, char **codec_info);
 int             ijkmp_get_audio_codec_info(IjkMediaPlayer *mp, char **codec_info);
@@ -181,6 +185,8 @@ float           ijkmp_get_property_float(IjkMediaPlayer *mp, int id, float defau
 void            ijkmp_set_property_float(IjkMediaPlayer *mp, int id, float value);
 int64_t         ijkmp_get_property_int64(IjkMediaPlayer *mp, int id, int64_t default_value);
 void            ijkmp_set_property_int64(IjkMediaPlayer *mp, int id, int64_t value);
+void            ijkmp_get_properties(IjkMediaPlayer *mp, const int *int64_ids, int64_t *int64_values, int nb_int64,
+                                     const int *float_ids, float *float_values, int nb_float);
 
 // must be freed with free();
 IjkMediaMeta   *ijkmp_get_meta_l(IjkMediaPlayer *mp);
@@ -203,6 +209,7 @@ int             ijkmp_start(IjkMediaPlayer *mp);
 int             ijkmp_pause(IjkMediaPlayer *mp);
 int             ijkmp_stop(IjkMediaPlayer *mp);
 int             ijkmp_seek_to(IjkMediaPlayer *mp, uint64_t msec);
+int             ijkmp_switch_data_source(IjkMediaPlayer *mp, const char *url);
 int             ijkmp_get_state(IjkMediaPlayer *mp);
 bool            ijkmp_is_playing(IjkMediaPlayer *mp);
 long            ijkmp_get_current_position(IjkMediaPlayer *mp);
@@ -221,5 +228,8 @@ void           *ijkmp_set_weak_thiz(IjkMediaPlayer *mp, void *weak_thiz);
 int             ijkmp_get_msg(IjkMediaPlayer *mp, AVMessage *msg, int block);
 void            ijkmp_set_frame_at_time(IjkMediaPlayer *mp, const char *path, int64_t start_time, int64_t end_time, int num, int definition);
 long            ijkmp_get_frame(IjkMediaPlayer *mp, uint8_t **data, int *w, int *h, unsigned char **meta);
+long            ijkmp_get_frame_into(IjkMediaPlayer *mp, uint8_t *dst, size_t capacity, int *format, int *w, int *h, int *stride, int64_t *pts, struct TrackingInfo *tracking);
+void            ijkmp_set_frame_output(IjkMediaPlayer *mp, const struct FrameOutput *output);
+int             ijkmp_get_tracking_info(IjkMediaPlayer *mp, struct TrackingInfo *tracking);
 
 #endif
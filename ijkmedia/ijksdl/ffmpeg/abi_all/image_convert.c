@@ -60,3 +60,130 @@ int ijk_image_convert(int width, int height,
     return -1;
 }
 
+#if defined(__ANDROID__)
+// libyuv "ARGB" is B, G, R, A in memory and "ABGR" is R, G, B, A
+static int i420_convert(int width, int height,
+    enum AVPixelFormat dst_format, uint8_t **dst_data, int *dst_linesize,
+    const uint8_t **src_data, const int *src_linesize)
+{
+    switch (dst_format) {
+        case AV_PIX_FMT_YUV420P:
+            return I420Copy(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                dst_data[0], dst_linesize[0],
+                dst_data[1], dst_linesize[1],
+                dst_data[2], dst_linesize[2],
+                width, height);
+        case AV_PIX_FMT_NV12:
+            return I420ToNV12(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                dst_data[0], dst_linesize[0],
+                dst_data[1], dst_linesize[1],
+                width, height);
+        case AV_PIX_FMT_GRAY8:
+            CopyPlane(
+                src_data[0], src_linesize[0],
+                dst_data[0], dst_linesize[0],
+                width, height);
+            return 0;
+        case AV_PIX_FMT_BGRA:
+            return I420ToARGB(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                dst_data[0], dst_linesize[0],
+                width, height);
+        case AV_PIX_FMT_RGBA:
+            return I420ToABGR(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                dst_data[0], dst_linesize[0],
+                width, height);
+        case AV_PIX_FMT_RGB24:
+            return I420ToRAW(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                dst_data[0], dst_linesize[0],
+                width, height);
+        case AV_PIX_FMT_BGR24:
+            return I420ToRGB24(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                dst_data[0], dst_linesize[0],
+                width, height);
+        default:
+            return -1;
+    }
+}
+#endif
+
+int ijk_image_scale_convert_scratch_size(int dst_width, int dst_height)
+{
+    return av_image_get_buffer_size(AV_PIX_FMT_YUV420P, dst_width, dst_height, 1);
+}
+
+int ijk_image_scale_convert(int src_width, int src_height, const uint8_t **src_data, const int *src_linesize,
+    int dst_width, int dst_height, enum AVPixelFormat dst_format, uint8_t **dst_data, int *dst_linesize,
+    uint8_t *scratch)
+{
+#if defined(__ANDROID__)
+    uint8_t *tmp_data[4];
+    int      tmp_linesize[4];
+
+    if (src_width == dst_width && src_height == dst_height)
+        return i420_convert(dst_width, dst_height, dst_format, dst_data, dst_linesize, src_data, src_linesize);
+
+    switch (dst_format) {
+        case AV_PIX_FMT_YUV420P:
+            return I420Scale(
+                src_data[0], src_linesize[0],
+                src_data[1], src_linesize[1],
+                src_data[2], src_linesize[2],
+                src_width, src_height,
+                dst_data[0], dst_linesize[0],
+                dst_data[1], dst_linesize[1],
+                dst_data[2], dst_linesize[2],
+                dst_width, dst_height,
+                kFilterBilinear);
+        case AV_PIX_FMT_GRAY8:
+            ScalePlane(
+                src_data[0], src_linesize[0],
+                src_width, src_height,
+                dst_data[0], dst_linesize[0],
+                dst_width, dst_height,
+                kFilterBilinear);
+            return 0;
+        default:
+            break;
+    }
+
+    if (!scratch)
+        return -1;
+
+    // scale first so the color conversion runs on the smaller picture
+    if (av_image_fill_arrays(tmp_data, tmp_linesize, scratch, AV_PIX_FMT_YUV420P, dst_width, dst_height, 1) < 0)
+        return -1;
+    if (I420Scale(
+            src_data[0], src_linesize[0],
+            src_data[1], src_linesize[1],
+            src_data[2], src_linesize[2],
+            src_width, src_height,
+            tmp_data[0], tmp_linesize[0],
+            tmp_data[1], tmp_linesize[1],
+            tmp_data[2], tmp_linesize[2],
+            dst_width, dst_height,
+            kFilterBilinear) != 0)
+        return -1;
+
+    return i420_convert(dst_width, dst_height, dst_format, dst_data, dst_linesize, (const uint8_t **)tmp_data, tmp_linesize);
+#else
+    return -1;
+#endif
+}
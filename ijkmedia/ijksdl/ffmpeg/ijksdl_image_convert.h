@@ -32,4 +32,15 @@ int ijk_image_convert(int width, int height,
     enum AVPixelFormat dst_format, uint8_t **dst_data, int *dst_linesize,
     enum AVPixelFormat src_format, const uint8_t **src_data, const int *src_linesize);
 
+/*
+ * Scale a YUV420P picture and convert it to dst_format with libyuv.
+ * scratch holds the scaled YUV420P picture when both the size and the format
+ * change, see ijk_image_scale_convert_scratch_size().
+ * return < 0 if libyuv can not do it, callers fall back to swscale
+ */
+int ijk_image_scale_convert(int src_width, int src_height, const uint8_t **src_data, const int *src_linesize,
+    int dst_width, int dst_height, enum AVPixelFormat dst_format, uint8_t **dst_data, int *dst_linesize,
+    uint8_t *scratch);
+int ijk_image_scale_convert_scratch_size(int dst_width, int dst_height);
+
 #endif
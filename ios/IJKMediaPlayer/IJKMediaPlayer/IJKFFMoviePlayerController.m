@@ -2139,6 +2139,7 @@ static int ijkff_inject_callback(void *opaque, int message, void *data, size_t d
     Frame *frame = [[Frame alloc] initFrame: nsData withWidth:w andHeight:h andROI:r];
 
     free(data);
+    free(meta);
     return frame;
 }
 